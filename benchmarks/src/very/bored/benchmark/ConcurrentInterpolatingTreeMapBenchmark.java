@@ -0,0 +1,103 @@
+package very.bored.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import very.bored.interpolatingtreemap.ConcurrentInterpolatingTreeMap;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JMH benchmarks of one {@link ConcurrentInterpolatingTreeMap} shared by every benchmark thread, one per available
+ * processor unless overridden with {@code -t}. Each thread cycles through the keys from its own offset.
+ *
+ * @see InterpolatingTreeMapBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ConcurrentInterpolatingTreeMapBenchmark {
+
+    @Param({"10", "1000", "100000", "10000000"})
+    int size;
+
+    @Param({"lin", "quad"})
+    String factory;
+
+    @Param({"sequential", "random"})
+    String order;
+
+    private ConcurrentInterpolatingTreeMap map;
+    private double[] keys;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = ConcurrentInterpolatingTreeMap.copyOf(InterpolatingTreeMapBenchmark.map(factory, size));
+        keys = InterpolatingTreeMapBenchmark.keys(size, order);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private double[] keys;
+        private double[] ys;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentInterpolatingTreeMapBenchmark benchmark) {
+            keys = benchmark.keys;
+            ys = new double[keys.length];
+            next = (int) ((long) benchmark.threads.getAndIncrement() * 7919 % keys.length);
+        }
+
+        double nextKey() {
+            double key = keys[next];
+            next = next + 1 == keys.length ? 0 : next + 1;
+            return key;
+        }
+    }
+
+    @Benchmark
+    public int put(Cursor cursor) {
+        double x = cursor.nextKey();
+        map.put(x, 2 * x + (cursor.next & 1023));
+        return map.datasetSize();
+    }
+
+    @Benchmark
+    public int putAll(Cursor cursor) {
+        Arrays.fill(cursor.ys, cursor.nextKey());
+        map.putAll(keys, cursor.ys);
+        return map.datasetSize();
+    }
+
+    /**
+     * Removes a point and puts it back in the same update, so that concurrent removals cannot shrink the dataset
+     * below its minimum size.
+     */
+    @Benchmark
+    public int remove(Cursor cursor) {
+        double x = cursor.nextKey();
+        map.update(changes -> changes.remove(x).put(x, 2 * x));
+        return map.datasetSize();
+    }
+
+    @Benchmark
+    public double get(Cursor cursor) {
+        return map.getAsDouble(cursor.nextKey() + 0.5);
+    }
+
+    @Benchmark
+    public double getCoefficientOfDetermination() {
+        return map.getCoefficientOfDetermination();
+    }
+
+    @Benchmark
+    public String getEquationAsString() {
+        return map.getEquationAsString();
+    }
+}
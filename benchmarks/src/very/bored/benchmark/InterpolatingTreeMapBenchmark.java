@@ -0,0 +1,162 @@
+package very.bored.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.RegressionEquationFactory;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of a single-threaded {@link InterpolatingTreeMap}, for every factory, dataset size and key order.
+ * Keys are accessed either in ascending order or in a fixed random permutation, cycling through the dataset.
+ * <p>
+ * Build and run them from the root of the project with, for example:
+ * <pre>{@code
+ *  mvn -B package -DskipTests
+ *  java -jar benchmarks/target/benchmarks.jar InterpolatingTreeMapBenchmark -p size=10,100000 -prof gc
+ * }</pre>
+ * {@code -prof gc} reports the bytes allocated per operation as {@code gc.alloc.rate.norm}, and
+ * {@code -rf csv -rff results.csv} keeps the results to compare against later runs.
+ *
+ * @see ConcurrentInterpolatingTreeMapBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class InterpolatingTreeMapBenchmark {
+
+    @Param({"10", "1000", "100000", "10000000"})
+    int size;
+
+    @Param({"lin", "quad"})
+    String factory;
+
+    @Param({"sequential", "random"})
+    String order;
+
+    private InterpolatingTreeMap map;
+    private double[] keys;
+    private double[] ys;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = map(factory, size);
+        keys = keys(size, order);
+        ys = new double[size];
+    }
+
+    /**
+     * Returns the next key, cycling through the keys in their order.
+     */
+    private double nextKey() {
+        double key = keys[next];
+        next = next + 1 == keys.length ? 0 : next + 1;
+        return key;
+    }
+
+    @Benchmark
+    public int put() {
+        double x = nextKey();
+        map.put(x, 2 * x + (next & 1023));
+        return map.datasetSize();
+    }
+
+    @Benchmark
+    public int putAll() {
+        Arrays.fill(ys, nextKey());
+        map.putAll(keys, ys);
+        return map.datasetSize();
+    }
+
+    /**
+     * Removes a point and puts it straight back, so that the dataset keeps its size.
+     */
+    @Benchmark
+    public int remove() {
+        double x = nextKey();
+        map.remove(x);
+        map.put(x, 2 * x);
+        return map.datasetSize();
+    }
+
+    @Benchmark
+    public double get() {
+        return map.getAsDouble(nextKey() + 0.5);
+    }
+
+    @Benchmark
+    public InterpolatingTreeMap with() {
+        return map.with(map.getRegressionEquationFactory());
+    }
+
+    @Benchmark
+    public double getCoefficientOfDetermination() {
+        return map.getCoefficientOfDetermination();
+    }
+
+    @Benchmark
+    public String getEquationAsString() {
+        return map.getEquationAsString();
+    }
+
+    /**
+     * Predicts the whole dataset at once, through the vectorized evaluation of polynomials.
+     */
+    @Benchmark
+    public void getAll(Blackhole blackhole) {
+        map.get(keys, ys);
+        blackhole.consume(ys);
+    }
+
+    static RegressionEquationFactory factory(String factory) {
+        return switch (factory) {
+            case "lin" -> new LinRegEquationFactory();
+            case "quad" -> new QuadRegEquationFactory();
+            default -> throw new IllegalArgumentException("Unknown factory " + factory);
+        };
+    }
+
+    /**
+     * Returns a map of size points on a noisy line, with a fixed seed.
+     */
+    static InterpolatingTreeMap map(String factory, int size) {
+        Random random = new Random(size);
+        return InterpolatingTreeMap.bulkLoad(factory(factory), load -> {
+            for (int i = 0; i < size; i++) {
+                load.put(i, 3 + 2 * i + random.nextGaussian());
+            }
+        });
+    }
+
+    /**
+     * Returns the x values 0 to size - 1, in ascending order or shuffled with a fixed seed.
+     */
+    static double[] keys(int size, String order) {
+        double[] keys = new double[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i;
+        }
+
+        if (order.equals("random")) {
+            Random random = new Random(42);
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                double swap = keys[i];
+                keys[i] = keys[j];
+                keys[j] = swap;
+            }
+        } else if (!order.equals("sequential")) {
+            throw new IllegalArgumentException("Unknown order " + order);
+        }
+        return keys;
+    }
+}
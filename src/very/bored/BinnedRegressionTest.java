@@ -0,0 +1,105 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.BinnedRegression;
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.PolyRegEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.util.Random;
+
+/**
+ * Checks of {@link BinnedRegression}, whose regression is a weighted fit over the mean y of each bin, against an
+ * unweighted fit over every raw point with its x value moved to the center of its bin.
+ * <p>
+ * Points first arrive in ascending x, opening each bin after the last, then anywhere, including below the origin
+ * and exactly on the edges of bins, so that bins are inserted between others and the arrays grow. The predictions
+ * must match those of the raw fit, and so must the coefficient of determination, which adds the spread of y within
+ * each bin to both the residual and the total sum of squares. Fewer bins than the minimum of the factory must
+ * refuse to predict.
+ * <p>
+ * Any failure is thrown as an {@link AssertionError}.
+ */
+class BinnedRegressionTest {
+    private static final int POINTS = 5_000;
+    private static final double ORIGIN = 0.7;
+    private static final double BIN_WIDTH = 2.5;
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        var factories = new IncrementalRegressionEquationFactory[]{
+                new LinRegEquationFactory(), new QuadRegEquationFactory(), new PolyRegEquationFactory(2)
+        };
+
+        for (IncrementalRegressionEquationFactory factory : factories) {
+            var random = new Random(3);
+            var binned = new BinnedRegression(factory, ORIGIN, BIN_WIDTH);
+            RegressionStatistics raw = factory.newStatistics();
+            String name = factory.getClass().getSimpleName();
+
+            // Every point falls into a single bin, too few to fit.
+            binned.put(ORIGIN + 0.1, 1);
+            binned.put(ORIGIN + 0.2, 2);
+            raw.add(center(ORIGIN + 0.1), 1);
+            raw.add(center(ORIGIN + 0.2), 2);
+            try {
+                binned.getAsDouble(0);
+                throw new AssertionError(name + ": predicted from " + binned.binCount() + " bin");
+            } catch (IllegalStateException expectedFailure) {
+                // expected
+            }
+
+            for (int i = 0; i < POINTS; i++) {
+                double x;
+                if (i < POINTS / 5) {
+                    x = ORIGIN + i * 0.1;
+                } else if (i % 10 == 0) {
+                    x = ORIGIN + BIN_WIDTH * (random.nextInt(100) - 30);
+                } else {
+                    x = -80 + 250 * random.nextDouble();
+                }
+                double y = 1 + 0.3 * x - 0.002 * x * x + 3 * random.nextGaussian();
+
+                binned.put(x, y);
+                raw.add(center(x), y);
+
+                if (i % 250 == 249) {
+                    check(binned, raw, name + " after " + (i + 1) + " points");
+                }
+            }
+
+            try {
+                binned.put(Double.NaN, 1);
+                throw new AssertionError(name + ": put a NaN x");
+            } catch (IllegalArgumentException expectedFailure) {
+                // expected
+            }
+            check(binned, raw, name + " after a rejected point");
+        }
+
+        System.out.println("Passed");
+    }
+
+    /**
+     * Returns the center of the bin of the inputted x value.
+     */
+    private static double center(double x) {
+        return ORIGIN + (Math.floor((x - ORIGIN) / BIN_WIDTH) + 0.5) * BIN_WIDTH;
+    }
+
+    private static void check(BinnedRegression binned, RegressionStatistics raw, String description) {
+        if (binned.pointCount() != raw.size())
+            throw new AssertionError(description + ": counted " + binned.pointCount() + " points, expected " + raw.size());
+
+        assertClose(description + ", R²", raw.getCoefficientOfDetermination(), binned.getCoefficientOfDetermination());
+        for (double x = -100; x <= 200; x += 12.5) {
+            assertClose(description + ", y at " + x, raw.equation().applyAsDouble(x), binned.getAsDouble(x));
+        }
+    }
+
+    private static void assertClose(String description, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected))))
+            throw new AssertionError(description + " was " + actual + ", expected " + expected);
+    }
+}
@@ -0,0 +1,278 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.ConcurrentInterpolatingTreeMap;
+import very.bored.interpolatingtreemap.FitResult;
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.Polynomial;
+import very.bored.interpolatingtreemap.RegressionSnapshot;
+import very.bored.regressionfactories.LinRegEquationFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Linearizability checks for {@link ConcurrentInterpolatingTreeMap} under contention.
+ * <p>
+ * Writers repeatedly replace the two points of the map so that after the n-th write the regression line is
+ * exactly ŷ = n + nx. Readers concurrently check that every snapshot they observe is internally consistent
+ * (never a mix of two writes), that the snapshots they observe never go back in time, and that they never
+ * observe a state older than the latest write that had completed before their read started. The equation
+ * string, read alongside the snapshots, must describe exactly one of the writes between the snapshot read before
+ * it and the one read after, and so must the {@link FitResult}, which is of the dataset rather than the snapshot.
+ * <p>
+ * The same checks are run against a map which refits asynchronously, except that its snapshots may lag behind
+ * the completed writes, until {@link ConcurrentInterpolatingTreeMap#caughtUp()} completes. Its coalescing,
+ * staleness bound and fallback on a rejecting executor are then checked deterministically, with an executor that
+ * only queues the refits.
+ * <p>
+ * Any failure is thrown as an {@link AssertionError}.
+ */
+class ConcurrentInterpolatingTreeMapTest {
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int WRITES_PER_WRITER = 10_000;
+
+    private static final LinRegEquationFactory FACTORY = new LinRegEquationFactory();
+
+    public static void main(String[] args) throws Exception {
+        contend("synchronous", new ConcurrentInterpolatingTreeMap(
+                FACTORY,
+                Map.entry(0.0, 0.0), Map.entry(1.0, 0.0)
+        ), false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            contend("asynchronous", ConcurrentInterpolatingTreeMap.copyOf(initial(), executor, Duration.ofMillis(1)), true);
+        } finally {
+            executor.shutdown();
+        }
+
+        coalescing();
+        stalenessBound();
+        rejectedRefit();
+
+        System.out.println("Passed");
+    }
+
+    private static InterpolatingTreeMap initial() {
+        return new InterpolatingTreeMap(FACTORY, Map.entry(0.0, 0.0), Map.entry(1.0, 0.0));
+    }
+
+    private static void contend(String mode, ConcurrentInterpolatingTreeMap map, boolean async)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        var writeCount = new AtomicLong();
+        var lastCompletedWrite = new AtomicLong();
+        var failure = new AtomicReference<String>();
+        var start = new CountDownLatch(1);
+        var writersDone = new CountDownLatch(WRITERS);
+
+        for (int w = 0; w < WRITERS; w++) {
+            new Thread(() -> {
+                await(start);
+                for (int i = 0; i < WRITES_PER_WRITER; i++) {
+                    long[] written = new long[1];
+                    map.update(transaction -> {
+                        long n = writeCount.incrementAndGet();
+                        transaction.put(0.0, n).put(1.0, 2.0 * n);
+                        written[0] = n;
+                    });
+                    lastCompletedWrite.accumulateAndGet(written[0], Math::max);
+                }
+                writersDone.countDown();
+            }).start();
+        }
+
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; r++) {
+            readers[r] = new Thread(() -> {
+                await(start);
+                long lastSeen = 0;
+                long lastVersion = -1;
+                while (writersDone.getCount() > 0) {
+                    long completedBefore = lastCompletedWrite.get();
+                    RegressionSnapshot snapshot = map.snapshot();
+
+                    long n = written(snapshot);
+                    if (n < 0) {
+                        failure.compareAndSet(null, "Torn snapshot: " + snapshot);
+                    }
+                    if (n < lastSeen || snapshot.version() < lastVersion) {
+                        failure.compareAndSet(null, "Snapshot went back in time: " + n + " after " + lastSeen);
+                    }
+                    if (!async && n < completedBefore) {
+                        failure.compareAndSet(null, "Stale read: " + n + " after write " + completedBefore + " completed");
+                    }
+
+                    String equation = map.getEquationAsString();
+                    FitResult fit = map.getFitResult();
+                    long after = written(map.snapshot());
+                    long writtenAfter = writeCount.get();
+
+                    if (!describesWrite(equation, n, after)) {
+                        failure.compareAndSet(null, "Equation " + equation + " is not that of a write from " + n + " to " + after);
+                    }
+
+                    // The fit result is of the dataset, which is only ahead of the snapshots in asynchronous mode.
+                    double fitIntercept = fit.getCoefficients()[0], fitSlope = fit.getCoefficients()[1];
+                    long m = Math.round(fitIntercept);
+                    long first = async ? completedBefore : n, last = async ? writtenAfter : after;
+                    if (Math.abs(fitSlope - m) > 1e-6 || Math.abs(fitIntercept - m) > 1e-6 || m < first || m > last
+                            || fit.getDatasetSize() != 2 || !fit.getEquationAsString().equals(format(m))) {
+                        failure.compareAndSet(null, "Fit result " + fit + " is not that of a write from " + first + " to " + last);
+                    }
+
+                    lastSeen = n;
+                    lastVersion = snapshot.version();
+                    Thread.yield();
+                }
+            });
+            readers[r].start();
+        }
+
+        start.countDown();
+        if (!writersDone.await(2, TimeUnit.MINUTES)) {
+            failure.compareAndSet(null, "Writers did not finish in time");
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        long expected = (long) WRITERS * WRITES_PER_WRITER;
+        RegressionSnapshot last = map.caughtUp().get(1, TimeUnit.MINUTES);
+        if (written(last) != expected || last.version() != expected) {
+            failure.compareAndSet(null, "Lost updates: expected " + expected + " writes, saw " + written(last)
+                    + " at version " + last.version());
+        }
+
+        if (failure.get() != null)
+            throw new AssertionError(mode + ": " + failure.get());
+    }
+
+    /**
+     * Checks that writes made while a refit is queued are coalesced into that one refit, and that
+     * {@link ConcurrentInterpolatingTreeMap#caughtUp()} completes exactly when it is published.
+     */
+    private static void coalescing() {
+        var queued = new ArrayDeque<Runnable>();
+        var map = ConcurrentInterpolatingTreeMap.copyOf(initial(), queued::add, Duration.ofHours(1));
+
+        for (int n = 1; n <= 3; n++) {
+            map.put(0.0, n);
+            map.put(1.0, 2.0 * n);
+        }
+
+        check(map.snapshot().version() == 0 && written(map.snapshot()) == 0,
+                "Writes were published before the refit ran: " + map.snapshot());
+        check(map.getEquationAsString().equals(format(0)),
+                "Equation " + map.getEquationAsString() + " is not that of the published snapshot");
+        check(queued.size() == 1, queued.size() + " refits were scheduled for one burst of writes");
+
+        CompletableFuture<RegressionSnapshot> caughtUp = map.caughtUp();
+        check(!caughtUp.isDone(), "Caught up before the refit ran");
+
+        queued.poll().run();
+        check(caughtUp.isDone(), "Not caught up after the refit ran");
+
+        RegressionSnapshot snapshot = caughtUp.join();
+        check(snapshot.version() == 6 && written(snapshot) == 3, "Refit did not publish every write: " + snapshot);
+        check(map.snapshot() == snapshot, "Caught up with a snapshot other than the published one");
+        check(map.getEquationAsString().equals(format(3)),
+                "Equation " + map.getEquationAsString() + " is not that of the published snapshot");
+        check(queued.isEmpty(), "Refit was rescheduled with no writes left to publish");
+        check(map.caughtUp().isDone(), "Not caught up with no writes left to publish");
+    }
+
+    /**
+     * Checks that a write made once the oldest unpublished write is older than the staleness bound refits
+     * synchronously, and that a bound of zero publishes every write as it is made.
+     */
+    private static void stalenessBound() throws InterruptedException {
+        var queued = new ArrayDeque<Runnable>();
+        var map = ConcurrentInterpolatingTreeMap.copyOf(initial(), queued::add, Duration.ofMillis(20));
+
+        map.put(0.0, 1.0);
+        check(map.snapshot().version() == 0, "Write within the staleness bound was published synchronously");
+
+        Thread.sleep(30);
+        map.put(1.0, 2.0);
+        check(map.snapshot().version() == 2 && written(map.snapshot()) == 1,
+                "Write beyond the staleness bound was not published synchronously: " + map.snapshot());
+        check(map.caughtUp().isDone(), "Not caught up after a synchronous refit");
+
+        RegressionSnapshot published = map.snapshot();
+        while (!queued.isEmpty()) {
+            queued.poll().run();
+        }
+        check(map.snapshot() == published, "Queued refit replaced an up to date snapshot");
+
+        var eager = ConcurrentInterpolatingTreeMap.copyOf(initial(), queued::add, Duration.ZERO);
+        eager.put(0.0, 1.0);
+        eager.put(1.0, 2.0);
+        check(eager.snapshot().version() == 2 && written(eager.snapshot()) == 1,
+                "Write with a staleness bound of zero was not published synchronously: " + eager.snapshot());
+    }
+
+    /**
+     * Checks that a refit rejected by the executor is run by the writer instead.
+     */
+    private static void rejectedRefit() {
+        var map = ConcurrentInterpolatingTreeMap.copyOf(initial(), task -> {
+            throw new RejectedExecutionException();
+        }, Duration.ofHours(1));
+
+        map.update(transaction -> transaction.put(0.0, 1.0).put(1.0, 2.0));
+        check(map.snapshot().version() == 1 && written(map.snapshot()) == 1,
+                "Rejected refit was not run by the writer: " + map.snapshot());
+        check(map.caughtUp().isDone(), "Not caught up after a rejected refit");
+    }
+
+    /**
+     * Returns n if the snapshot is that of the n-th write, ŷ = n + nx, or -1 if it is not that of any write.
+     */
+    private static long written(RegressionSnapshot snapshot) {
+        double intercept = snapshot.getAsDouble(0.0);
+        double slope = snapshot.getAsDouble(1.0) - intercept;
+        long n = Math.round(intercept);
+        return Math.abs(slope - n) > 1e-6 || Math.abs(intercept - n) > 1e-6 ? -1 : n;
+    }
+
+    /**
+     * Returns whether the equation is formatted as that of the n-th write for some n from first to last.
+     */
+    private static boolean describesWrite(String equation, long first, long last) {
+        for (long n = first; n <= last; n++) {
+            if (equation.equals(format(n))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String format(long n) {
+        return FACTORY.format(new Polynomial(n, n));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.PolyRegEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Checks of {@link InterpolatingTreeMap#fitRange(double, double)}, which answers range queries from an index of
+ * the statistics of blocks of 64 consecutive points, against a brute-force fit of the same points.
+ * <p>
+ * Ranges are queried which start and end inside a block, span exactly whole blocks, fall within a single block,
+ * cover every point, or hold too few points. Between queries, the map is changed in every way the index handles:
+ * points are replaced, which updates their block in place; appended after the greatest x, which extends the last
+ * block or opens a new one, and outgrows the tree; and inserted or removed elsewhere, which invalidates the index.
+ * <p>
+ * Any failure is thrown as an {@link AssertionError}.
+ */
+class FitRangeTest {
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * Enough points for 30 blocks, in a tree with room for 32, so that appends soon outgrow it.
+     */
+    private static final int INITIAL_POINTS = 1_900;
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        var factories = new IncrementalRegressionEquationFactory[]{
+                new LinRegEquationFactory(), new QuadRegEquationFactory(), new PolyRegEquationFactory(2)
+        };
+
+        for (IncrementalRegressionEquationFactory factory : factories) {
+            var random = new Random(7);
+            var expected = new TreeMap<Double, Double>();
+            double[] xs = new double[INITIAL_POINTS], ys = new double[INITIAL_POINTS];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = i;
+                ys[i] = y(i, random);
+                expected.put(xs[i], ys[i]);
+            }
+            var map = new InterpolatingTreeMap(factory, xs, ys);
+            String name = factory.getClass().getSimpleName();
+
+            // Ranges of the initial points: within a block, exactly whole blocks, across partial blocks, and all.
+            check(factory, map, expected, 3, 40, name + " within a block");
+            check(factory, map, expected, BLOCK_SIZE, 4 * BLOCK_SIZE - 1, name + " of whole blocks");
+            check(factory, map, expected, BLOCK_SIZE - 1, 2 * BLOCK_SIZE, name + " of a block and its neighbours' edges");
+            check(factory, map, expected, 10.5, 900.25, name + " across partial blocks");
+            check(factory, map, expected, -100, 10_000, name + " of every point");
+            check(factory, map, expected, 2000, 3000, name + " beyond every point");
+            check(factory, map, expected, 500.1, 500.9, name + " between two points");
+
+            // Only replacements and appends at first, which update the index until it outgrows its tree.
+            for (int change = 0; change < 800; change++) {
+                double choice = random.nextDouble() * (change < 400 ? 0.8 : 1.0);
+                String description;
+                if (choice < 0.4) {
+                    double x = random.nextInt((int) (double) expected.lastKey() + 1);
+                    if (!expected.containsKey(x)) {
+                        continue;
+                    }
+                    double y = y(x, random);
+                    map.put(x, y);
+                    expected.put(x, y);
+                    description = "replacing " + x;
+                } else if (choice < 0.8) {
+                    double x = expected.lastKey() + 1 + random.nextInt(3);
+                    double y = y(x, random);
+                    map.put(x, y);
+                    expected.put(x, y);
+                    description = "appending " + x;
+                } else if (choice < 0.9) {
+                    double x = random.nextInt((int) (double) expected.lastKey()) + 0.5;
+                    double y = y(x, random);
+                    map.put(x, y);
+                    expected.put(x, y);
+                    description = "inserting " + x;
+                } else {
+                    Map.Entry<Double, Double> entry = expected.ceilingEntry((double) random.nextInt((int) (double) expected.lastKey()));
+                    map.remove(entry.getKey());
+                    expected.remove(entry.getKey());
+                    description = "removing " + entry.getKey();
+                }
+
+                double fromX = random.nextDouble() * expected.lastKey();
+                double toX = fromX + random.nextDouble() * (expected.lastKey() - fromX + 10);
+                check(factory, map, expected, fromX, toX, name + " after " + description + " (change " + change + ")");
+                if (change % 50 == 0) {
+                    check(factory, map, expected, expected.firstKey(), expected.lastKey(), name + " of every point after change " + change);
+                }
+            }
+        }
+
+        System.out.println("Passed");
+    }
+
+    private static double y(double x, Random random) {
+        return 2 + 0.3 * x - 1e-4 * x * x + random.nextGaussian();
+    }
+
+    private static void check(IncrementalRegressionEquationFactory factory, InterpolatingTreeMap map,
+                              TreeMap<Double, Double> expected, double fromX, double toX, String description) {
+        RegressionStatistics fresh = factory.newStatistics();
+        expected.subMap(fromX, true, toX, true).forEach(fresh::add);
+
+        RegressionStatistics range;
+        try {
+            range = map.fitRange(fromX, toX);
+        } catch (IllegalArgumentException e) {
+            if (fresh.size() >= factory.getMinEntries())
+                throw new AssertionError(description + ": rejected [" + fromX + ", " + toX + "] of " + fresh.size() + " points", e);
+            return;
+        }
+
+        if (range.size() != fresh.size())
+            throw new AssertionError(description + ": [" + fromX + ", " + toX + "] holds " + range.size()
+                    + " points, expected " + fresh.size());
+
+        assertClose(description + ", R²", fresh.getCoefficientOfDetermination(), range.getCoefficientOfDetermination());
+        for (double x : new double[]{fromX, (fromX + toX) / 2, toX}) {
+            assertClose(description + ", y at " + x, fresh.equation().applyAsDouble(x), range.equation().applyAsDouble(x));
+        }
+    }
+
+    private static void assertClose(String description, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected))))
+            throw new AssertionError(description + " was " + actual + ", expected " + expected);
+    }
+}
@@ -0,0 +1,182 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.InterpolatingTreeMapFile;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Crash recovery checks for {@link InterpolatingTreeMapFile}.
+ * <p>
+ * Changes made through an open file must survive closing and reopening it, by replaying the journal, and a
+ * checkpoint must fold them into the snapshot and empty the journal. A journal with a torn tail, as a crash
+ * mid-append leaves it, or with a record that fails its checksum, must be replayed up to the last valid record
+ * and truncated there, and must then accept new records. A change the map rejects must leave no record behind,
+ * and a snapshot must not be opened with a factory of another type.
+ * <p>
+ * After every reopen, the points must be exactly those expected, and the coefficient of determination must
+ * match that of a map built from them directly. Any failure is thrown as an {@link AssertionError}.
+ */
+class InterpolatingTreeMapFileTest {
+
+    /**
+     * The length of a journal record: an operation byte, x and y, and a CRC32C checksum.
+     */
+    private static final int RECORD_BYTES = 1 + 2 * Double.BYTES + Integer.BYTES;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("InterpolatingTreeMapFileTest");
+        try {
+            Path file = directory.resolve("map.itm");
+            Path journal = directory.resolve("map.itm.journal");
+            var expected = new TreeMap<Double, Double>();
+
+            // Created from a map, then changed through the file.
+            double[] xs = new double[10], ys = new double[10];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = i;
+                ys[i] = 3 + 2 * i + (i % 3);
+                expected.put(xs[i], ys[i]);
+            }
+            try (var opened = InterpolatingTreeMapFile.create(file, new InterpolatingTreeMap(new LinRegEquationFactory(), xs, ys))) {
+                opened.put(20, 45);
+                opened.put(3, 10);
+                opened.remove(7);
+                opened.remove(100);
+            }
+            expected.put(20.0, 45.0);
+            expected.put(3.0, 10.0);
+            expected.remove(7.0);
+            check(Files.size(journal) == 4L * RECORD_BYTES, "Journal holds " + Files.size(journal) + " bytes after 4 changes");
+            checkReopened(file, expected, "replayed journal");
+            check(Files.size(journal) == 4L * RECORD_BYTES, "Replaying a valid journal changed its length");
+
+            // A checkpoint folds the journal into the snapshot.
+            try (var opened = InterpolatingTreeMapFile.open(file, new LinRegEquationFactory())) {
+                opened.put(21, 47);
+                opened.checkpoint();
+                check(Files.size(journal) == 0, "Journal holds " + Files.size(journal) + " bytes after a checkpoint");
+                opened.put(22, 50);
+            }
+            expected.put(21.0, 47.0);
+            expected.put(22.0, 50.0);
+            checkPoints(InterpolatingTreeMapFile.load(file, new LinRegEquationFactory()), headMap(expected, 22.0), "checkpointed snapshot");
+            checkReopened(file, expected, "journal after a checkpoint");
+
+            // A torn record at the end of the journal is discarded, and new records are appended in its place.
+            long valid = Files.size(journal);
+            try (FileChannel channel = FileChannel.open(journal, WRITE, APPEND)) {
+                channel.write(ByteBuffer.wrap(new byte[]{1, 0, 0, 0, 0, 0, 0, 0, 36, 64}));
+            }
+            checkReopened(file, expected, "torn journal");
+            check(Files.size(journal) == valid, "Torn record was not truncated from the journal");
+
+            try (var opened = InterpolatingTreeMapFile.open(file, new LinRegEquationFactory())) {
+                opened.put(23, 51);
+            }
+            expected.put(23.0, 51.0);
+            checkReopened(file, expected, "journal appended to after a torn record");
+
+            // A record which fails its checksum is discarded, along with every record after it.
+            try (var opened = InterpolatingTreeMapFile.open(file, new LinRegEquationFactory())) {
+                opened.checkpoint();
+                opened.put(24, 55);
+                opened.put(25, 57);
+                opened.put(26, 59);
+            }
+            try (FileChannel channel = FileChannel.open(journal, READ, WRITE)) {
+                ByteBuffer x = ByteBuffer.allocate(1);
+                channel.read(x, RECORD_BYTES + 3);
+                channel.write(x.put(0, (byte) (x.get(0) ^ 0x10)).rewind(), RECORD_BYTES + 3);
+            }
+            expected.put(24.0, 55.0);
+            checkReopened(file, expected, "journal with a corrupt record");
+            check(Files.size(journal) == RECORD_BYTES, "Corrupt record and its successors were not truncated from the journal");
+
+            // A removal the map rejects leaves no record behind.
+            Path small = directory.resolve("small.itm");
+            Path smallJournal = directory.resolve("small.itm.journal");
+            var two = new InterpolatingTreeMap(new LinRegEquationFactory(), new double[]{0, 1}, new double[]{0, 2});
+            try (var opened = InterpolatingTreeMapFile.create(small, two)) {
+                try {
+                    opened.remove(0);
+                    throw new AssertionError("Removed a point from a map at its minimum size");
+                } catch (IllegalStateException expectedFailure) {
+                    // expected
+                }
+                check(Files.size(smallJournal) == 0, "Rejected removal was left in the journal");
+            }
+            var smallExpected = new TreeMap<>(two.getDataPoints());
+            checkReopened(small, smallExpected, "journal after a rejected removal");
+
+            // A snapshot is not opened with a factory of another type.
+            try (var opened = InterpolatingTreeMapFile.open(file, new QuadRegEquationFactory())) {
+                throw new AssertionError("Opened a snapshot of LinRegEquationFactory with " + opened.map().getRegressionEquationFactory());
+            } catch (IOException expectedFailure) {
+                // expected
+            }
+            checkReopened(file, expected, "journal after opening with another factory");
+
+            // Nor is a file which is not a snapshot.
+            Path garbage = directory.resolve("garbage.itm");
+            Files.write(garbage, new byte[64]);
+            try {
+                InterpolatingTreeMapFile.load(garbage, new LinRegEquationFactory());
+                throw new AssertionError("Loaded a file which is not a snapshot");
+            } catch (IOException expectedFailure) {
+                // expected
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+
+        System.out.println("Passed");
+    }
+
+    /**
+     * Reopens the file, replaying its journal, and checks the restored map against the expected points.
+     */
+    private static void checkReopened(Path file, NavigableMap<Double, Double> expected, String description) throws IOException {
+        try (var opened = InterpolatingTreeMapFile.open(file, new LinRegEquationFactory())) {
+            checkPoints(opened.map(), expected, description);
+        }
+    }
+
+    private static void checkPoints(InterpolatingTreeMap map, NavigableMap<Double, Double> expected, String description) {
+        check(map.getDataPoints().equals(expected),
+                description + ": restored points " + map.getDataPoints() + ", expected " + expected);
+
+        double[] xs = expected.keySet().stream().mapToDouble(Double::doubleValue).toArray();
+        double[] ys = expected.values().stream().mapToDouble(Double::doubleValue).toArray();
+        double r2 = new InterpolatingTreeMap(new LinRegEquationFactory(), xs, ys).getCoefficientOfDetermination();
+        check(Math.abs(map.getCoefficientOfDetermination() - r2) <= 1e-12,
+                description + ": restored R² " + map.getCoefficientOfDetermination() + ", expected " + r2);
+    }
+
+    private static NavigableMap<Double, Double> headMap(NavigableMap<Double, Double> map, double toKey) {
+        return new TreeMap<>(map.headMap(toKey, false));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,297 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.regressionfactories.LoessEquationFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Checks of {@link LoessEquationFactory} against a direct weighted least-squares fit at every x: the k points
+ * nearest to x are found by sorting every point by its distance, weighted by the tricube kernel of their distance,
+ * and the line or quadratic through them is solved by Gaussian elimination. If the points of positive weight do not
+ * determine it, as the determinant of the normal equations relative to the total weight shows, their weighted mean
+ * is expected instead.
+ * <p>
+ * Equations of degree 1 and 2, with and without a grid, are evaluated at every knot, between knots, and at and
+ * beyond both ends, where the neighbourhood is against the first or last knot. Small sets of knots, as the
+ * factory's statistics hold before they reach the minimum, check the weighted mean. Equations must also be left
+ * unchanged by later changes to the map they came from, and the coefficient of determination must match that of
+ * the direct fits at every knot.
+ * <p>
+ * Any failure is thrown as an {@link AssertionError}.
+ */
+class LocalRegressionTest {
+    private static final double TOLERANCE = 1e-6;
+
+    public static void main(String[] args) {
+        var random = new Random(9);
+        double[] xs = new double[200], ys = new double[200];
+        var points = new TreeMap<Double, Double>();
+        while (points.size() < xs.length) {
+            double x = Math.round(100 * random.nextDouble() * 1e3) / 1e3;
+            points.put(x, 5 * Math.sin(x / 10) + 0.02 * x * x / 10 + random.nextGaussian());
+        }
+        int i = 0;
+        for (var entry : points.entrySet()) {
+            xs[i] = entry.getKey();
+            ys[i++] = entry.getValue();
+        }
+
+        for (int degree = 1; degree <= 2; degree++) {
+            for (int neighbors : new int[]{degree + 3, 15, 60}) {
+                for (int gridSize : new int[]{0, 2, 37}) {
+                    var factory = new LoessEquationFactory(neighbors, degree, gridSize);
+                    String name = "LOESS of degree " + degree + " over " + neighbors + " neighbours with a grid of " + gridSize;
+                    check(factory, xs, ys, name);
+                    checkDetermination(factory, xs, ys, name);
+                }
+            }
+
+            // Knots too few, or too unevenly spread, for the points of positive weight to determine a fit.
+            var factory = new LoessEquationFactory(degree + 3, degree);
+            check(factory, new double[]{4, 6}, new double[]{7, 1}, "LOESS of degree " + degree + " over two knots");
+            check(factory, new double[]{0, 1, 5}, new double[]{3, -2, 8}, "LOESS of degree " + degree + " over three knots");
+            check(factory, new double[]{5, 8, 10, 15}, new double[]{2, 4, 9, -1}, "LOESS of degree " + degree + " over four knots");
+
+            checkDetached(new LoessEquationFactory(15, degree, 20), xs, ys, "LOESS of degree " + degree);
+        }
+
+        System.out.println("Passed");
+    }
+
+    /**
+     * Checks the equation of the factory over the knots against direct fits, at and between every knot and beyond
+     * both ends.
+     */
+    private static void check(LoessEquationFactory factory, double[] xs, double[] ys, String description) {
+        DoubleUnaryOperator equation = factory.equationFrom(view(xs, ys));
+        DoubleUnaryOperator expected = expected(factory, xs, ys);
+
+        double first = xs[0], last = xs[xs.length - 1];
+        for (double x : new double[]{first - 2, first - 1e-3, last + 1e-3, last + 2}) {
+            assertClose(description + ", y at " + x, expected.applyAsDouble(x), equation.applyAsDouble(x));
+        }
+        for (int i = 0; i < xs.length; i++) {
+            assertClose(description + ", y at knot " + xs[i], expected.applyAsDouble(xs[i]), equation.applyAsDouble(xs[i]));
+            if (i + 1 < xs.length) {
+                double x = xs[i] + 0.3 * (xs[i + 1] - xs[i]);
+                assertClose(description + ", y at " + x, expected.applyAsDouble(x), equation.applyAsDouble(x));
+            }
+        }
+    }
+
+    /**
+     * Returns the expected equation: direct fits, or with a grid, linear interpolation between direct fits at the
+     * nodes of the grid between the first and last knots.
+     */
+    private static DoubleUnaryOperator expected(LoessEquationFactory factory, double[] xs, double[] ys) {
+        int gridSize = factory.getGridSize();
+        double first = xs[0], last = xs[xs.length - 1];
+        if (gridSize < 2 || xs.length < 2) {
+            return x -> fit(xs, ys, factory.getNeighbors(), factory.getDegree(), x);
+        }
+
+        double step = (last - first) / (gridSize - 1);
+        double[] nodes = new double[gridSize];
+        for (int i = 0; i < gridSize; i++) {
+            nodes[i] = fit(xs, ys, factory.getNeighbors(), factory.getDegree(), i == gridSize - 1 ? last : first + i * step);
+        }
+        return x -> {
+            if (x < first || x > last) {
+                return fit(xs, ys, factory.getNeighbors(), factory.getDegree(), x);
+            }
+            int node = Math.min((int) ((x - first) / step), gridSize - 2);
+            double t = (x - first) / step - node;
+            return nodes[node] + t * (nodes[node + 1] - nodes[node]);
+        };
+    }
+
+    /**
+     * Returns the value at x of the weighted least-squares fit to the k points nearest to x.
+     */
+    private static double fit(double[] xs, double[] ys, int neighbors, int degree, double x) {
+        int k = Math.min(neighbors, xs.length);
+        double[] distances = new double[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            distances[i] = Math.abs(xs[i] - x);
+        }
+        double[] sorted = distances.clone();
+        Arrays.sort(sorted);
+        double h = sorted[k - 1];
+
+        // The normal equations in u = (x' - x) / h, whose first unknown is the value at x.
+        int terms = degree + 1;
+        double[][] matrix = new double[terms][terms + 1];
+        double sumW = 0, sumWY = 0, nearest = Double.POSITIVE_INFINITY, nearestY = 0;
+        for (int i = 0; i < xs.length; i++) {
+            if (distances[i] < nearest) {
+                nearest = distances[i];
+                nearestY = ys[i];
+            }
+            if (!(h > 0) || distances[i] >= h) {
+                continue;
+            }
+
+            double u = (xs[i] - x) / h;
+            double w = Math.pow(1 - Math.pow(Math.abs(u), 3), 3);
+            sumW += w;
+            sumWY += w * ys[i];
+            for (int row = 0; row < terms; row++) {
+                for (int column = 0; column < terms; column++) {
+                    matrix[row][column] += w * Math.pow(u, row + column);
+                }
+                matrix[row][terms] += w * Math.pow(u, row) * ys[i];
+            }
+        }
+
+        if (!(h > 0)) {
+            return nearestY;
+        }
+        if (determinant(matrix) <= 1e-12 * Math.pow(sumW, terms)) {
+            return sumWY / sumW;
+        }
+        return solve(matrix)[0];
+    }
+
+    /**
+     * Returns the determinant of the square part of an augmented matrix, as the product of its pivots.
+     */
+    private static double determinant(double[][] matrix) {
+        int n = matrix.length;
+        double[][] copy = new double[n][];
+        for (int row = 0; row < n; row++) {
+            copy[row] = matrix[row].clone();
+        }
+
+        double determinant = 1;
+        for (int column = 0; column < n; column++) {
+            int pivot = column;
+            for (int row = column + 1; row < n; row++) {
+                if (Math.abs(copy[row][column]) > Math.abs(copy[pivot][column])) {
+                    pivot = row;
+                }
+            }
+            if (copy[pivot][column] == 0) {
+                return 0;
+            }
+            if (pivot != column) {
+                double[] swap = copy[column];
+                copy[column] = copy[pivot];
+                copy[pivot] = swap;
+                determinant = -determinant;
+            }
+
+            determinant *= copy[column][column];
+            for (int row = column + 1; row < n; row++) {
+                double factor = copy[row][column] / copy[column][column];
+                for (int k = column; k < n; k++) {
+                    copy[row][k] -= factor * copy[column][k];
+                }
+            }
+        }
+        return determinant;
+    }
+
+    /**
+     * Solves an augmented matrix by Gaussian elimination with partial pivoting.
+     */
+    private static double[] solve(double[][] matrix) {
+        int n = matrix.length;
+        for (int column = 0; column < n; column++) {
+            int pivot = column;
+            for (int row = column + 1; row < n; row++) {
+                if (Math.abs(matrix[row][column]) > Math.abs(matrix[pivot][column])) {
+                    pivot = row;
+                }
+            }
+            double[] swap = matrix[column];
+            matrix[column] = matrix[pivot];
+            matrix[pivot] = swap;
+
+            for (int row = column + 1; row < n; row++) {
+                double factor = matrix[row][column] / matrix[column][column];
+                for (int k = column; k <= n; k++) {
+                    matrix[row][k] -= factor * matrix[column][k];
+                }
+            }
+        }
+
+        double[] solution = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = matrix[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= matrix[row][k] * solution[k];
+            }
+            solution[row] = sum / matrix[row][row];
+        }
+        return solution;
+    }
+
+    /**
+     * Checks the coefficient of determination against that of the expected equation at every knot.
+     */
+    private static void checkDetermination(LoessEquationFactory factory, double[] xs, double[] ys, String description) {
+        DoubleUnaryOperator expected = expected(factory, xs, ys);
+        double meanY = Arrays.stream(ys).average().orElseThrow();
+        double SSE = 0, SST = 0;
+        for (int i = 0; i < xs.length; i++) {
+            double residual = ys[i] - expected.applyAsDouble(xs[i]);
+            SSE += residual * residual;
+            SST += (ys[i] - meanY) * (ys[i] - meanY);
+        }
+        assertClose(description + ", R²", 1 - SSE / SST, factory.getCoefficientOfDetermination(view(xs, ys)));
+    }
+
+    /**
+     * Checks that an equation of a map is unaffected by later puts and removes, which copy the shared knots.
+     */
+    private static void checkDetached(LoessEquationFactory factory, double[] xs, double[] ys, String description) {
+        var map = new InterpolatingTreeMap(factory, xs, ys);
+        DoubleUnaryOperator before = map.getRegressionOperator();
+        double[] probes = {xs[0] - 5, xs[3], (xs[50] + xs[51]) / 2, xs[xs.length - 1] + 5};
+        double[] values = Arrays.stream(probes).map(before).toArray();
+
+        map.put(xs[3], ys[3] + 100);
+        map.put((xs[50] + xs[51]) / 2, -100);
+        map.remove(xs[xs.length - 1]);
+        for (int i = 0; i < probes.length; i++) {
+            if (before.applyAsDouble(probes[i]) != values[i])
+                throw new AssertionError(description + ": equation changed at " + probes[i] + " after the map changed");
+        }
+
+        double[] changedXs = map.getDataPoints().keySet().stream().mapToDouble(Double::doubleValue).toArray();
+        double[] changedYs = map.getDataPoints().values().stream().mapToDouble(Double::doubleValue).toArray();
+        DoubleUnaryOperator expected = expected(factory, changedXs, changedYs);
+        for (double x : probes) {
+            assertClose(description + " after the map changed, y at " + x, expected.applyAsDouble(x), map.getAsDouble(x));
+        }
+    }
+
+    private static PointView view(double[] xs, double[] ys) {
+        return new PointView() {
+            @Override
+            public int size() {
+                return xs.length;
+            }
+
+            @Override
+            public double xAt(int index) {
+                return xs[index];
+            }
+
+            @Override
+            public double yAt(int index) {
+                return ys[index];
+            }
+        };
+    }
+
+    private static void assertClose(String description, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected))))
+            throw new AssertionError(description + " was " + actual + ", expected " + expected);
+    }
+}
@@ -0,0 +1,168 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.MultiSeriesRegression;
+import very.bored.regressionfactories.BestFitEquationFactory;
+import very.bored.regressionfactories.BestFitEquationFactory.Criterion;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.PolyRegEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Checks of {@link MultiSeriesRegression} against a standalone {@link InterpolatingTreeMap} of the points of each
+ * series.
+ * <p>
+ * Points are put in batches across series ids in no particular order, with repeated x values within a series
+ * and batch, of which the last must be kept, and one at a time. Points are removed, some series down to fewer
+ * points than the minimum of the factory, which must then refuse to predict until points are put again. After
+ * every round, every series must hold exactly the expected points, and its predictions and coefficient of
+ * determination must match those of a map built from them.
+ * <p>
+ * Every round dirties more series than {@link MultiSeriesRegression#refit()} fits sequentially, so that it fits
+ * them in parallel; on alternate rounds, series are instead refitted one at a time as they are read. With
+ * {@link BestFitEquationFactory} racing a line against a quadratic, the coefficients of every series are widened
+ * once the first quadratic wins, and series fitted before then must keep their coefficients.
+ * <p>
+ * Any failure is thrown as an {@link AssertionError}.
+ */
+class MultiSeriesRegressionTest {
+    private static final int SERIES = 600;
+    private static final int ROUNDS = 30;
+    private static final double TOLERANCE = 1e-7;
+
+    public static void main(String[] args) {
+        var factories = new IncrementalRegressionEquationFactory[]{
+                new LinRegEquationFactory(),
+                new PolyRegEquationFactory(2),
+                new BestFitEquationFactory(Criterion.ADJUSTED_R_SQUARED, new LinRegEquationFactory(), new QuadRegEquationFactory())
+        };
+
+        for (IncrementalRegressionEquationFactory factory : factories) {
+            var random = new Random(5);
+            var multi = new MultiSeriesRegression(factory);
+            var expected = new ArrayList<TreeMap<Double, Double>>();
+            for (int s = 0; s < SERIES; s++) {
+                expected.add(new TreeMap<>());
+            }
+            String name = factory.getClass().getSimpleName();
+
+            for (int round = 0; round < ROUNDS; round++) {
+                // A batch across series in no particular order, touching most of them. The first gives every
+                // series two points, too few for a quadratic to win, so that the coefficients of every series are
+                // only widened once they have been fitted.
+                int length = 2 * SERIES;
+                int[] series = new int[length];
+                double[] xs = new double[length], ys = new double[length];
+                for (int i = 0; i < length; i++) {
+                    series[i] = round == 0 ? 7 * i % SERIES : random.nextInt(SERIES);
+                    xs[i] = round == 0 ? i / SERIES : random.nextInt(40);
+                    ys[i] = y(series[i], xs[i], random);
+                    expected.get(series[i]).put(xs[i], ys[i]);
+                }
+                multi.putAll(series, xs, ys);
+
+                for (int i = 0; i < 50; i++) {
+                    int s = random.nextInt(SERIES);
+                    double x = random.nextInt(40);
+                    double y = y(s, x, random);
+                    multi.put(s, x, y);
+                    expected.get(s).put(x, y);
+                }
+
+                for (int i = 0; i < 50; i++) {
+                    int s = random.nextInt(SERIES);
+                    double x = random.nextInt(40);
+                    multi.remove(s, x);
+                    expected.get(s).remove(x);
+                }
+                multi.remove(SERIES + 10, 1);
+
+                // Some series lose all but one of their points.
+                for (int i = 0; i < 5; i++) {
+                    int s = random.nextInt(SERIES);
+                    TreeMap<Double, Double> points = expected.get(s);
+                    while (points.size() > 1) {
+                        multi.remove(s, points.pollLastEntry().getKey());
+                    }
+                }
+
+                if (round % 2 == 0) {
+                    multi.refit();
+                }
+                check(factory, multi, expected, name + " after round " + round);
+            }
+        }
+
+        System.out.println("Passed");
+    }
+
+    /**
+     * Returns a noisy y value of a series, along a line for most series and a parabola for every third.
+     */
+    private static double y(int series, double x, Random random) {
+        double curvature = series % 3 == 0 ? 0.05 : 0;
+        return series + 0.5 * x + curvature * x * x + random.nextGaussian();
+    }
+
+    private static void check(IncrementalRegressionEquationFactory factory, MultiSeriesRegression multi,
+                              List<TreeMap<Double, Double>> expected, String description) {
+        if (multi.seriesCount() != SERIES)
+            throw new AssertionError(description + ": " + multi.seriesCount() + " series, expected " + SERIES);
+
+        List<Integer> fitted = new ArrayList<>();
+        List<InterpolatingTreeMap> standalone = new ArrayList<>();
+        for (int s = 0; s < SERIES; s++) {
+            TreeMap<Double, Double> points = expected.get(s);
+            String series = description + ", series " + s;
+            if (multi.size(s) != points.size() || !multi.getDataPoints(s).equals(points))
+                throw new AssertionError(series + ": holds " + multi.getDataPoints(s) + ", expected " + points);
+
+            if (points.size() < factory.getMinEntries()) {
+                try {
+                    multi.getAsDouble(s, 0);
+                    throw new AssertionError(series + ": predicted from " + points.size() + " points");
+                } catch (IllegalStateException expectedFailure) {
+                    // expected
+                }
+                continue;
+            }
+
+            double[] xs = points.keySet().stream().mapToDouble(Double::doubleValue).toArray();
+            double[] ys = points.values().stream().mapToDouble(Double::doubleValue).toArray();
+            var map = new InterpolatingTreeMap(factory, xs, ys);
+            fitted.add(s);
+            standalone.add(map);
+
+            assertClose(series + ", R²", map.getCoefficientOfDetermination(), multi.getCoefficientOfDetermination(s));
+            for (double x : new double[]{-5, xs[0], 17.5, xs[xs.length - 1], 45}) {
+                assertClose(series + ", y at " + x, map.getAsDouble(x), multi.getAsDouble(s, x));
+                assertClose(series + ", operator at " + x, map.getAsDouble(x), multi.getRegressionOperator(s).applyAsDouble(x));
+            }
+        }
+
+        // Predictions of every fitted series at once, in reverse order of id.
+        int[] series = new int[fitted.size()];
+        double[] xs = new double[fitted.size()], out = new double[fitted.size()];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = fitted.get(series.length - 1 - i);
+            xs[i] = series[i] % 40;
+        }
+        multi.getAll(series, xs, out);
+        for (int i = 0; i < series.length; i++) {
+            assertClose(description + ", getAll of series " + series[i] + " at " + xs[i],
+                    standalone.get(series.length - 1 - i).getAsDouble(xs[i]), out[i]);
+        }
+    }
+
+    private static void assertClose(String description, double expected, double actual) {
+        if (Double.compare(expected, actual) != 0
+                && !(Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected))))
+            throw new AssertionError(description + " was " + actual + ", expected " + expected);
+    }
+}
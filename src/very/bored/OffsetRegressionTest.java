@@ -0,0 +1,239 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.FitResult;
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.InterpolatingTreeMapFile;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.interpolatingtreemap.RegressionSummary;
+import very.bored.regressionfactories.BestFitEquationFactory;
+import very.bored.regressionfactories.BestFitEquationFactory.Criterion;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.PolyRegEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Regression checks for the coefficient of determination on data with a large y offset relative to its spread,
+ * where sums of squares computed from raw power sums cancel catastrophically.
+ * <p>
+ * For y = 1e7 + 1e-3·x + noise, the R² computed incrementally from the running statistics of every polynomial
+ * factory must agree with the R² of a {@link FitResult}, which evaluates the residuals point by point. This is
+ * checked for points added one at a time, accumulated in parallel and merged, removed, and restored from a
+ * {@link RegressionSummary}.
+ * <p>
+ * A cubic offset in x instead, at x = 10000 upwards, must be fitted exactly by a {@link PolyRegEquationFactory}
+ * without an explicit center, whether its points are added one at a time, accumulated in parallel, or summarized
+ * in halves and merged.
+ * <p>
+ * A {@link BestFitEquationFactory} over such factories must then select the candidate with the best score by
+ * the R² of each candidate's {@link FitResult}, and format its equations with the candidate that won, even
+ * among candidates of the same degree, and even once saved and loaded by another instance of the factory.
+ */
+class OffsetRegressionTest {
+    private static final double OFFSET = 1e7;
+    private static final double TOLERANCE = 1e-6;
+
+    public static void main(String[] args) throws IOException {
+        var factories = new IncrementalRegressionEquationFactory[]{
+                new LinRegEquationFactory(), new QuadRegEquationFactory(),
+                new PolyRegEquationFactory(1), new PolyRegEquationFactory(2), new PolyRegEquationFactory(3)
+        };
+
+        for (IncrementalRegressionEquationFactory factory : factories) {
+            // Sequential accumulation, then removals.
+            double[][] points = data(1_000, 1);
+            var map = new InterpolatingTreeMap(factory, points[0], points[1]);
+            check(factory, "1000 points", map);
+            for (int x = 0; x < 500; x += 2) {
+                map.remove(x);
+            }
+            check(factory, "after removals", map);
+
+            // Above the parallel threshold, so the statistics are accumulated in chunks and merged.
+            double[][] many = data(100_000, 2);
+            var large = new InterpolatingTreeMap(factory, many[0], many[1]);
+            check(factory, "100000 points", large);
+
+            // Summaries of two halves, shifted apart in y, merged into the summary of the whole.
+            double[][] first = slice(many, 0, 50_000, 0), second = slice(many, 50_000, 100_000, 5.0);
+            var low = new InterpolatingTreeMap(factory, first[0], first[1]);
+            var high = new InterpolatingTreeMap(factory, second[0], second[1]);
+            var whole = new InterpolatingTreeMap(factory, first[0], first[1]);
+            whole.putAll(second[0], second[1]);
+
+            var merged = RegressionSummary.merge(factory, low.summary(), high.summary());
+            var restored = factory.statisticsFrom(RegressionSummary.fromByteArray(merged.toByteArray()));
+            assertClose(factory, "merged summary", whole.getFitResult().getCoefficientOfDetermination(),
+                    restored.getCoefficientOfDetermination());
+        }
+
+        checkOffsetX(200, 1.0);
+        checkOffsetX(100_000, 0.002);
+
+        double[][] points = data(1_000, 3);
+        var bestFit = new BestFitEquationFactory(Criterion.ADJUSTED_R_SQUARED,
+                new LinRegEquationFactory(), new PolyRegEquationFactory(2), new PolyRegEquationFactory(3));
+        checkSelection(bestFit, points);
+
+        // Both orders of two candidates of degree 1, so that the winner is not always the first of its degree.
+        checkSelection(new BestFitEquationFactory(Criterion.R_SQUARED,
+                new LinRegEquationFactory(), new PolyRegEquationFactory(1)), points);
+        checkSelection(new BestFitEquationFactory(Criterion.R_SQUARED,
+                new PolyRegEquationFactory(1), new LinRegEquationFactory()), points);
+
+        // Saved, then loaded by another instance of the factory, which never saw the equations it formats.
+        checkRoundTrip(new BestFitEquationFactory(Criterion.R_SQUARED, new LinRegEquationFactory(), new QuadRegEquationFactory()),
+                new BestFitEquationFactory(Criterion.R_SQUARED, new LinRegEquationFactory(), new QuadRegEquationFactory()),
+                points);
+
+        System.out.println("Passed");
+    }
+
+    /**
+     * Checks the fit of size points of the cubic y = 5 + u - 2u² + 0.5u³ + noise, with u = (x - 10100) / 10,
+     * spaced step apart in x from 10000.
+     */
+    private static void checkOffsetX(int size, double step) {
+        var factory = new PolyRegEquationFactory(3);
+        var random = new Random(size);
+        double[] xs = new double[size], ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            xs[i] = 10_000 + i * step;
+            ys[i] = cubic(xs[i]) + random.nextGaussian() * 1e-3;
+        }
+
+        var map = new InterpolatingTreeMap(factory, xs, ys);
+        String description = size + " points offset in x";
+        check(factory, description, map);
+        assertClose(factory, description, 1.0, map.getCoefficientOfDetermination());
+
+        double x = 10_000 + size * step / 4 + 0.5;
+        if (!(Math.abs(map.getAsDouble(x) - cubic(x)) <= 1e-3))
+            throw new AssertionError("PolyRegEquationFactory (" + description + "): predicted " + map.getAsDouble(x)
+                    + " at " + x + ", expected " + cubic(x));
+
+        // Halves whose statistics are centered on different first points, merged onto one center.
+        int half = size / 2;
+        var low = new InterpolatingTreeMap(factory, Arrays.copyOfRange(xs, 0, half), Arrays.copyOfRange(ys, 0, half));
+        var high = new InterpolatingTreeMap(factory, Arrays.copyOfRange(xs, half, size), Arrays.copyOfRange(ys, half, size));
+        var merged = factory.statisticsFrom(RegressionSummary.merge(factory, high.summary(), low.summary()));
+        assertClose(factory, description + ", merged summary", map.getFitResult().getCoefficientOfDetermination(),
+                merged.getCoefficientOfDetermination());
+        if (!(Math.abs(merged.equation().applyAsDouble(x) - cubic(x)) <= 1e-3))
+            throw new AssertionError("PolyRegEquationFactory (" + description + ", merged summary): predicted "
+                    + merged.equation().applyAsDouble(x) + " at " + x + ", expected " + cubic(x));
+    }
+
+    private static double cubic(double x) {
+        double u = (x - 10_100) / 10;
+        return 5 + u - 2 * u * u + 0.5 * u * u * u;
+    }
+
+    private static void checkSelection(BestFitEquationFactory factory, double[][] points) {
+        var map = new InterpolatingTreeMap(factory, points[0], points[1]);
+        check(factory, "best fit", map);
+
+        // The score of every candidate from the R² of its FitResult, with the parameters counted as BestFit does.
+        int n = points[0].length;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (IncrementalRegressionEquationFactory candidate : factory.getCandidates()) {
+            bestScore = Math.max(bestScore, score(factory.getCriterion(), candidate, points));
+        }
+
+        IncrementalRegressionEquationFactory winner = factory.select(view(points));
+        double winnerScore = score(factory.getCriterion(), winner, points);
+        if (!(bestScore - winnerScore <= TOLERANCE / n))
+            throw new AssertionError("Best fit selected " + winner + " with score " + winnerScore
+                    + ", but the best score was " + bestScore);
+
+        String expected = winner.format(map.getRegressionOperator());
+        if (!expected.equals(map.getEquationAsString()) || !expected.equals(map.getFitResult().getEquationAsString()))
+            throw new AssertionError("Best fit formatted its equation as " + map.getEquationAsString() + " and "
+                    + map.getFitResult().getEquationAsString() + ", but the winner formats it as " + expected);
+    }
+
+    private static void checkRoundTrip(BestFitEquationFactory saved, BestFitEquationFactory loaded, double[][] points)
+            throws IOException {
+        var map = new InterpolatingTreeMap(saved, points[0], points[1]);
+        String expected = saved.select(view(points)).format(map.getRegressionOperator());
+
+        Path directory = Files.createTempDirectory("OffsetRegressionTest");
+        Path file = directory.resolve("best-fit.itm");
+        try {
+            InterpolatingTreeMapFile.save(map, file);
+            var restored = InterpolatingTreeMapFile.load(file, loaded);
+            if (!expected.equals(restored.getEquationAsString()) || !expected.equals(restored.getFitResult().getEquationAsString()))
+                throw new AssertionError("Best fit formatted its loaded equation as " + restored.getEquationAsString()
+                        + " and " + restored.getFitResult().getEquationAsString() + ", but saved it as " + expected);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static double score(Criterion criterion, IncrementalRegressionEquationFactory candidate, double[][] points) {
+        double r2 = new InterpolatingTreeMap(candidate, points[0], points[1]).getFitResult().getCoefficientOfDetermination();
+        int n = points[0].length, parameters = candidate.getMinEntries();
+        return criterion == Criterion.ADJUSTED_R_SQUARED
+                ? 1 - (1 - r2) * (n - 1) / (n - parameters - 1)
+                : r2;
+    }
+
+    private static PointView view(double[][] points) {
+        return new PointView() {
+            @Override
+            public int size() {
+                return points[0].length;
+            }
+
+            @Override
+            public double xAt(int index) {
+                return points[0][index];
+            }
+
+            @Override
+            public double yAt(int index) {
+                return points[1][index];
+            }
+        };
+    }
+
+    private static double[][] data(int size, long seed) {
+        var random = new Random(seed);
+        double[] xs = new double[size], ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            xs[i] = i;
+            ys[i] = OFFSET + 1e-3 * i + random.nextGaussian() * 1e-3;
+        }
+        return new double[][]{xs, ys};
+    }
+
+    private static double[][] slice(double[][] points, int from, int to, double shift) {
+        double[] xs = Arrays.copyOfRange(points[0], from, to);
+        double[] ys = Arrays.copyOfRange(points[1], from, to);
+        for (int i = 0; i < ys.length; i++) {
+            ys[i] += shift;
+        }
+        return new double[][]{xs, ys};
+    }
+
+    private static void check(IncrementalRegressionEquationFactory factory, String description, InterpolatingTreeMap map) {
+        double r2 = map.getCoefficientOfDetermination();
+        if (!(r2 >= 0 && r2 <= 1))
+            throw new AssertionError(factory.getClass().getSimpleName() + " (" + description + "): R² " + r2 + " is outside [0, 1]");
+
+        assertClose(factory, description, map.getFitResult().getCoefficientOfDetermination(), r2);
+    }
+
+    private static void assertClose(IncrementalRegressionEquationFactory factory, String description, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= TOLERANCE))
+            throw new AssertionError(factory.getClass().getSimpleName() + " (" + description + "): R² was " + actual
+                    + ", expected " + expected);
+    }
+}
@@ -0,0 +1,135 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.RegressionEquationFactory;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.LinearInterpolationEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.nio.DoubleBuffer;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Checks of {@link InterpolatingTreeMap#putAll(double[], double[])}, which merges a batch of points into the
+ * sorted store in one pass, against a map given the same points by repeated {@link InterpolatingTreeMap#put}.
+ * <p>
+ * Batches are sorted and appended after the greatest x, sorted and overlapping the existing keys, or unsorted
+ * with repeated x values, of which the last must be kept. Small batches keep the running statistics in step
+ * point by point, and batches at least as large as the dataset refit them once. Before every batch, the store
+ * is shared with a snapshot from {@link InterpolatingTreeMap#getDataPoints()} and a copy from
+ * {@link InterpolatingTreeMap#with}, which must be unaffected by the batch, and which must not affect the map
+ * when the copy is changed in turn.
+ * <p>
+ * Any failure is thrown as an {@link AssertionError}.
+ */
+class PutAllTest {
+    private static final int BATCHES = 300;
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        var factories = new RegressionEquationFactory[]{
+                new LinRegEquationFactory(), new QuadRegEquationFactory(), new LinearInterpolationEquationFactory()
+        };
+
+        for (RegressionEquationFactory factory : factories) {
+            var random = new Random(11);
+            String name = factory.getClass().getSimpleName();
+
+            var batched = new InterpolatingTreeMap(factory, new double[]{3, 1, 2, 1}, new double[]{9, 0, 4, 1});
+            var sequential = new InterpolatingTreeMap(factory, Map.entry(3.0, 9.0), Map.entry(1.0, 0.0),
+                    Map.entry(2.0, 4.0), Map.entry(1.0, 1.0));
+            check(batched, sequential, name + " after construction");
+
+            for (int batch = 0; batch < BATCHES; batch++) {
+                NavigableMap<Double, Double> points = sequential.getDataPoints();
+                int length = random.nextInt(4) == 0 && points.size() < 1_000
+                        ? points.size() + random.nextInt(10)
+                        : random.nextInt(12);
+                double[] xs = new double[length], ys = new double[length];
+
+                double choice = random.nextDouble();
+                String description;
+                if (choice < 0.3) {
+                    double x = points.lastKey();
+                    for (int i = 0; i < length; i++) {
+                        xs[i] = x += 1 + random.nextInt(2);
+                    }
+                    description = "appended batch of " + length;
+                } else if (choice < 0.6) {
+                    double x = points.firstKey() - 2 + random.nextInt((int) (points.lastKey() - points.firstKey()) + 1);
+                    for (int i = 0; i < length; i++) {
+                        xs[i] = x += 0.5 * (1 + random.nextInt(3));
+                    }
+                    description = "sorted, overlapping batch of " + length;
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        xs[i] = random.nextInt((int) (double) points.lastKey() + 5) + (random.nextBoolean() ? 0 : 0.5);
+                    }
+                    if (length > 1) {
+                        xs[length - 1] = xs[random.nextInt(length - 1)];
+                    }
+                    description = "unsorted batch of " + length + " with repeated x";
+                }
+                for (int i = 0; i < length; i++) {
+                    ys[i] = random.nextInt(100) - 50 + 0.25 * xs[i];
+                }
+
+                // Share the store before the batch, with a read-only snapshot and a copy which is changed too.
+                NavigableMap<Double, Double> snapshot = batched.getDataPoints();
+                NavigableMap<Double, Double> before = new TreeMap<>(snapshot);
+                InterpolatingTreeMap copy = batched.with(factory);
+
+                if (random.nextBoolean()) {
+                    batched.putAll(xs, ys);
+                } else {
+                    DoubleBuffer bufferXs = DoubleBuffer.allocate(length + 2).put(new double[2]).put(xs).position(2);
+                    DoubleBuffer bufferYs = DoubleBuffer.allocate(length + 2).put(new double[2]).put(ys).position(2);
+                    batched.putAll(bufferXs, bufferYs);
+                    if (bufferXs.position() != 2 || bufferYs.position() != 2)
+                        throw new AssertionError(name + ": putAll moved the buffers to " + bufferXs.position()
+                                + " and " + bufferYs.position());
+                }
+                for (int i = 0; i < length; i++) {
+                    sequential.put(xs[i], ys[i]);
+                }
+
+                String after = name + " after batch " + batch + ", a " + description;
+                check(batched, sequential, after);
+                if (!snapshot.equals(before))
+                    throw new AssertionError(after + ": snapshot taken before the batch changed to " + snapshot);
+
+                double x = copy.getDataPoints().lastKey() + 1;
+                copy.putAll(new double[]{x, x + 1}, new double[]{-1000, 1000});
+                before.put(x, -1000.0);
+                before.put(x + 1, 1000.0);
+                if (!copy.getDataPoints().equals(before))
+                    throw new AssertionError(after + ": copy taken before the batch holds " + copy.getDataPoints()
+                            + ", expected " + before);
+                check(batched, sequential, after + " and an append to its copy");
+            }
+        }
+
+        System.out.println("Passed");
+    }
+
+    private static void check(InterpolatingTreeMap batched, InterpolatingTreeMap sequential, String description) {
+        if (!batched.getDataPoints().equals(sequential.getDataPoints()))
+            throw new AssertionError(description + ": holds " + batched.getDataPoints() + ", expected "
+                    + sequential.getDataPoints());
+
+        NavigableMap<Double, Double> points = sequential.getDataPoints();
+        double first = points.firstKey(), last = points.lastKey();
+        assertClose(description + ", R²", sequential.getCoefficientOfDetermination(), batched.getCoefficientOfDetermination());
+        for (double x : new double[]{first - 1, first, (first + last) / 3, last, last + 1}) {
+            assertClose(description + ", y at " + x, sequential.getAsDouble(x), batched.getAsDouble(x));
+        }
+    }
+
+    private static void assertClose(String description, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected))))
+            throw new AssertionError(description + " was " + actual + ", expected " + expected);
+    }
+}
@@ -0,0 +1,123 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.regressionfactories.LinearInterpolationEquationFactory;
+import very.bored.regressionfactories.MonotoneCubicSplineEquationFactory;
+import very.bored.regressionfactories.NaturalCubicSplineEquationFactory;
+
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Checks of the interpolation factories, whose statistics recompute only the segments around each put or remove.
+ * <p>
+ * Random puts, replacements and removes, including of the first and last knots, are applied to a map of each
+ * factory. After every change, the interpolant maintained incrementally must match one created afresh by
+ * {@link IncrementalRegressionEquationFactory#equationFrom(PointView)} from the same knots, at every knot, between
+ * them and beyond both ends, and must pass through every knot. The monotone spline must also never overshoot:
+ * between any two knots, it must stay within their y values and move in the same direction as they do.
+ * <p>
+ * Any failure is thrown as an {@link AssertionError}.
+ */
+class SplineInterpolationTest {
+    private static final int CHANGES = 1_000;
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        var factories = new IncrementalRegressionEquationFactory[]{
+                new LinearInterpolationEquationFactory(),
+                new NaturalCubicSplineEquationFactory(),
+                new MonotoneCubicSplineEquationFactory()
+        };
+
+        for (IncrementalRegressionEquationFactory factory : factories) {
+            var random = new Random(42);
+            var map = new InterpolatingTreeMap(factory, new double[]{0, 10, 20, 30, 40}, new double[]{1, 5, 2, 2, 8});
+            String name = factory.getClass().getSimpleName();
+
+            for (int change = 0; change < CHANGES; change++) {
+                NavigableMap<Double, Double> points = map.getDataPoints();
+                double choice = random.nextDouble();
+                String description;
+                if (choice < 0.5 || points.size() <= map.minimumDatasetSize()) {
+                    double x = random.nextInt(60) + (random.nextBoolean() ? 0 : 0.5);
+                    double y = random.nextInt(20) - 10;
+                    map.put(x, y);
+                    description = "put (" + x + ", " + y + ")";
+                } else if (choice < 0.6) {
+                    double x = random.nextBoolean() ? points.firstKey() : points.lastKey();
+                    map.remove(x);
+                    description = "remove of end knot " + x;
+                } else {
+                    Double[] keys = points.keySet().toArray(new Double[0]);
+                    double x = keys[random.nextInt(keys.length)];
+                    map.remove(x);
+                    description = "remove " + x;
+                }
+
+                check(factory, map, name + " after change " + change + ", a " + description);
+            }
+        }
+
+        System.out.println("Passed");
+    }
+
+    private static void check(IncrementalRegressionEquationFactory factory, InterpolatingTreeMap map, String description) {
+        NavigableMap<Double, Double> points = map.getDataPoints();
+        double[] xs = points.keySet().stream().mapToDouble(Double::doubleValue).toArray();
+        double[] ys = points.values().stream().mapToDouble(Double::doubleValue).toArray();
+
+        DoubleUnaryOperator fresh = factory.equationFrom(view(xs, ys));
+        for (int i = 0; i < xs.length; i++) {
+            assertClose(description + ", knot " + xs[i], ys[i], map.getAsDouble(xs[i]));
+
+            double[] between = i + 1 < xs.length
+                    ? new double[]{xs[i] + (xs[i + 1] - xs[i]) / 3, (xs[i] + xs[i + 1]) / 2}
+                    : new double[]{xs[i] + 5};
+            for (double x : i == 0 ? new double[]{xs[0] - 5, between[0]} : between) {
+                assertClose(description + ", at " + x, fresh.applyAsDouble(x), map.getAsDouble(x));
+            }
+        }
+
+        if (factory instanceof MonotoneCubicSplineEquationFactory) {
+            for (int i = 0; i + 1 < xs.length; i++) {
+                double low = Math.min(ys[i], ys[i + 1]), high = Math.max(ys[i], ys[i + 1]);
+                double previous = ys[i];
+                for (int step = 1; step <= 16; step++) {
+                    double y = map.getAsDouble(xs[i] + (xs[i + 1] - xs[i]) * step / 16);
+                    if (y < low - TOLERANCE || y > high + TOLERANCE || (y - previous) * (ys[i + 1] - ys[i]) < -TOLERANCE)
+                        throw new AssertionError(description + ": monotone spline overshoots between (" + xs[i] + ", "
+                                + ys[i] + ") and (" + xs[i + 1] + ", " + ys[i + 1] + ") with " + y);
+                    previous = y;
+                }
+            }
+        }
+    }
+
+    private static PointView view(double[] xs, double[] ys) {
+        return new PointView() {
+            @Override
+            public int size() {
+                return xs.length;
+            }
+
+            @Override
+            public double xAt(int index) {
+                return xs[index];
+            }
+
+            @Override
+            public double yAt(int index) {
+                return ys[index];
+            }
+        };
+    }
+
+    private static void assertClose(String description, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected))))
+            throw new AssertionError(description + ": was " + actual + ", expected " + expected);
+    }
+}
@@ -0,0 +1,150 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.MergeableRegressionStatistics;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+import very.bored.interpolatingtreemap.StreamingRegression;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.PolyRegEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks of the windows of {@link StreamingRegression} against a brute-force refit.
+ * <p>
+ * Points arrive slightly out of order in x, with repeated x values. After every put, the regression of each
+ * window must match that of fresh statistics fed only the points the window should hold: the last n points for
+ * a count window, whose ring buffer wraps many times; the points within range of the greatest x for a key-range
+ * window, whose heap evicts them in x order rather than arrival order; and every point, weighted by its decay
+ * from the greatest x, for an exponentially weighted window, including late points which arrive already decayed.
+ * <p>
+ * The statistics of every factory must also keep counting past {@link Integer#MAX_VALUE} points, with their
+ * size saturating rather than overflowing. Any failure is thrown as an {@link AssertionError}.
+ */
+class StreamingRegressionTest {
+    private static final int POINTS = 2_000;
+    private static final double TOLERANCE = 1e-7;
+
+    private record Point(double x, double y) {
+    }
+
+    public static void main(String[] args) {
+        var factories = new IncrementalRegressionEquationFactory[]{
+                new LinRegEquationFactory(), new QuadRegEquationFactory(), new PolyRegEquationFactory(2)
+        };
+
+        for (IncrementalRegressionEquationFactory factory : factories) {
+            List<Point> points = stream(factory.getClass().hashCode());
+
+            var count = StreamingRegression.countWindow(factory, 50);
+            var range = StreamingRegression.keyRangeWindow(factory, 40.0);
+            var decayed = StreamingRegression.exponentiallyWeighted(factory, 25.0);
+
+            double maxX = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < points.size(); i++) {
+                Point point = points.get(i);
+                count.put(point.x(), point.y());
+                range.put(point.x(), point.y());
+                decayed.put(point.x(), point.y());
+                maxX = Math.max(maxX, point.x());
+
+                double cutoff = maxX - 40.0, newest = maxX;
+                List<Point> seen = points.subList(0, i + 1);
+                check(factory, "count window", i, count, seen.subList(Math.max(0, seen.size() - 50), seen.size()),
+                        p -> 1.0);
+                check(factory, "key-range window", i, range, seen.stream().filter(p -> p.x() >= cutoff).toList(),
+                        p -> 1.0);
+                check(factory, "exponentially weighted window", i, decayed, seen,
+                        p -> Math.pow(2, (p.x() - newest) / 25.0));
+            }
+        }
+
+        // The index of n in the moments of each factory's statistics.
+        checkSaturation(new LinRegEquationFactory(), 0);
+        checkSaturation(new QuadRegEquationFactory(), 0);
+        checkSaturation(new PolyRegEquationFactory(2), 3);
+
+        System.out.println("Passed");
+    }
+
+    /**
+     * Returns points along a noisy parabola in x, advancing by 0.5 per point but arriving up to 10 late, with
+     * every tenth point repeating the x of the one before it.
+     */
+    private static List<Point> stream(long seed) {
+        var random = new Random(seed);
+        var points = new ArrayList<Point>();
+        for (int i = 0; i < POINTS; i++) {
+            double x = i % 10 == 9 ? points.get(i - 1).x() : Math.floor(0.5 * i - 10 * random.nextDouble());
+            points.add(new Point(x, 3 + 0.2 * x - 0.001 * x * x + random.nextGaussian()));
+        }
+        return points;
+    }
+
+    private interface Weight {
+        double of(Point point);
+    }
+
+    /**
+     * Checks the regression of the window against fresh statistics fed the expected points with their weights.
+     */
+    private static void check(IncrementalRegressionEquationFactory factory, String window, int put,
+                              StreamingRegression regression, List<Point> expected, Weight weight) {
+        RegressionStatistics fresh = factory.newStatistics();
+        for (Point point : expected) {
+            fresh.add(point.x(), point.y(), weight.of(point));
+        }
+
+        String description = factory.getClass().getSimpleName() + " (" + window + ", put " + put + ")";
+        if (fresh.size() < factory.getMinEntries() || distinctXs(expected) < factory.getMinEntries()) {
+            return;
+        }
+        if (regression.datasetSize() != expected.size())
+            throw new AssertionError(description + ": window holds " + regression.datasetSize()
+                    + " points, expected " + expected.size());
+
+        assertClose(description + ", R²", fresh.getCoefficientOfDetermination(), regression.getCoefficientOfDetermination());
+        for (Point point : expected.subList(Math.max(0, expected.size() - 3), expected.size())) {
+            assertClose(description + ", y at " + point.x(), fresh.equation().applyAsDouble(point.x()),
+                    regression.getAsDouble(point.x()));
+        }
+    }
+
+    /**
+     * Restores statistics of three points as if Integer.MAX_VALUE - 2 points had been added, then adds five more.
+     */
+    private static void checkSaturation(IncrementalRegressionEquationFactory factory, int countIndex) {
+        var statistics = (MergeableRegressionStatistics) factory.newStatistics();
+        for (int x = 0; x < 3; x++) {
+            statistics.add(x, 1 + 2 * x + x * x);
+        }
+
+        double[] moments = statistics.moments();
+        moments[countIndex] = Integer.MAX_VALUE - 2;
+        statistics.restore(moments);
+        for (int x = 3; x < 8; x++) {
+            statistics.add(x, 1 + 2 * x + x * x);
+        }
+
+        String description = factory.getClass().getSimpleName();
+        if (statistics.size() != Integer.MAX_VALUE)
+            throw new AssertionError(description + ": size " + statistics.size() + " past Integer.MAX_VALUE points");
+        if (statistics.moments()[countIndex] != Integer.MAX_VALUE + 3.0)
+            throw new AssertionError(description + ": counted " + statistics.moments()[countIndex] + " points, expected "
+                    + (Integer.MAX_VALUE + 3L));
+        if (!Double.isFinite(statistics.equation().applyAsDouble(1.0)))
+            throw new AssertionError(description + ": equation is not finite past Integer.MAX_VALUE points");
+    }
+
+    private static long distinctXs(List<Point> points) {
+        return points.stream().mapToDouble(Point::x).distinct().count();
+    }
+
+    private static void assertClose(String description, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected))))
+            throw new AssertionError(description + " was " + actual + ", expected " + expected);
+    }
+}
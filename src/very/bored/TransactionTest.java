@@ -0,0 +1,206 @@
+package very.bored;
+
+import very.bored.interpolatingtreemap.InterpolatingTreeMap;
+import very.bored.interpolatingtreemap.MetricsSink;
+import very.bored.interpolatingtreemap.RegressionEquationFactory;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.NaturalCubicSplineEquationFactory;
+import very.bored.regressionfactories.QuadRegEquationFactory;
+
+import java.nio.DoubleBuffer;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Checks of {@link InterpolatingTreeMap.Transaction}.
+ * <p>
+ * Within a transaction, points are added, replaced more than once, and removed, down to fewer than the minimum of
+ * the factory. While it is open, changes made through the map itself must be rejected, as they would bypass the
+ * undo log, and so must reading the regression and opening another transaction. A rollback must restore the points
+ * and the running statistics, so that the regression matches both that from before the transaction and one fitted
+ * afresh. A commit below the minimum must leave the transaction open, and a commit must refit the regression
+ * exactly once, as counted by a {@link MetricsSink}, and leave it matching one fitted afresh.
+ * <p>
+ * Any failure is thrown as an {@link AssertionError}.
+ */
+class TransactionTest {
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        var factories = new RegressionEquationFactory[]{
+                new LinRegEquationFactory(), new QuadRegEquationFactory(), new NaturalCubicSplineEquationFactory()
+        };
+
+        for (RegressionEquationFactory factory : factories) {
+            var random = new Random(17);
+            String name = factory.getClass().getSimpleName();
+
+            double[] xs = new double[20], ys = new double[20];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = i;
+                ys[i] = 4 - 0.5 * i + 0.1 * i * i + random.nextGaussian();
+            }
+            var map = new InterpolatingTreeMap(factory, xs, ys);
+            int[] refits = {0};
+            map.setMetricsSink(new MetricsSink() {
+                @Override
+                public void refit(Class<?> factoryType, int datasetSize, long nanos) {
+                    refits[0]++;
+                }
+            });
+
+            for (int round = 0; round < 20; round++) {
+                NavigableMap<Double, Double> before = new TreeMap<>(map.getDataPoints());
+                double r2 = map.getCoefficientOfDetermination();
+                double[] probes = {-3, 0.5, 7.25, 19, 25};
+                double[] values = new double[probes.length];
+                for (int i = 0; i < probes.length; i++) {
+                    values[i] = map.getAsDouble(probes[i]);
+                }
+
+                var expected = new TreeMap<>(before);
+                InterpolatingTreeMap.Transaction transaction = map.begin();
+                change(transaction, expected, random);
+                checkRejected(map, name + " in round " + round);
+                if (!map.getDataPoints().equals(expected))
+                    throw new AssertionError(name + " in round " + round + ": transaction holds " + map.getDataPoints()
+                            + ", expected " + expected);
+
+                refits[0] = 0;
+                String description = name + " after round " + round;
+                if (round % 2 == 0) {
+                    transaction.rollback();
+                    description += ", rolled back";
+                    if (!map.getDataPoints().equals(before))
+                        throw new AssertionError(description + ": holds " + map.getDataPoints() + ", expected " + before);
+
+                    assertClose(description + ", R²", r2, map.getCoefficientOfDetermination());
+                    for (int i = 0; i < probes.length; i++) {
+                        assertClose(description + ", y at " + probes[i], values[i], map.getAsDouble(probes[i]));
+                    }
+                } else {
+                    // Too few points to commit; the transaction stays open until more are added.
+                    while (expected.size() >= factory.getMinEntries()) {
+                        transaction.remove(expected.pollFirstEntry().getKey());
+                    }
+                    try {
+                        transaction.commit();
+                        throw new AssertionError(name + " in round " + round + ": committed " + expected.size() + " points");
+                    } catch (IllegalStateException expectedFailure) {
+                        // expected
+                    }
+                    checkRejected(map, name + " in round " + round + " after a rejected commit");
+
+                    for (int i = 0; i < 20; i++) {
+                        double x = random.nextInt(30) - 5;
+                        double y = 4 - 0.5 * x + 0.1 * x * x + random.nextGaussian();
+                        transaction.put(x, y);
+                        expected.put(x, y);
+                    }
+                    transaction.commit();
+                    description += ", committed";
+                    if (refits[0] != 1)
+                        throw new AssertionError(description + ": refitted " + refits[0] + " times on commit");
+                    if (!map.getDataPoints().equals(expected))
+                        throw new AssertionError(description + ": holds " + map.getDataPoints() + ", expected " + expected);
+                }
+
+                try {
+                    transaction.put(100, 100);
+                    throw new AssertionError(description + ": changed a closed transaction");
+                } catch (IllegalStateException expectedFailure) {
+                    // expected
+                }
+
+                check(factory, map, description);
+                if (refits[0] != 1)
+                    throw new AssertionError(description + ": refitted " + refits[0] + " times, expected once");
+            }
+        }
+
+        System.out.println("Passed");
+    }
+
+    /**
+     * Makes random changes through the transaction: points added, replaced, replaced again and removed, down to
+     * fewer than the minimum of the factory, and removals of absent points.
+     */
+    private static void change(InterpolatingTreeMap.Transaction transaction, TreeMap<Double, Double> expected, Random random) {
+        for (int i = 0; i < 40; i++) {
+            double x = random.nextInt(30) - 5 + (random.nextInt(4) == 0 ? 0.5 : 0);
+            if (random.nextInt(3) == 0) {
+                transaction.remove(x);
+                expected.remove(x);
+            } else {
+                double y = random.nextInt(40) - 20;
+                transaction.put(x, y);
+                expected.put(x, y);
+                if (random.nextBoolean()) {
+                    transaction.put(x, y + 1);
+                    expected.put(x, y + 1);
+                }
+            }
+        }
+        while (expected.size() > 1) {
+            double x = expected.pollLastEntry().getKey();
+            transaction.remove(x);
+        }
+        transaction.remove(1000);
+    }
+
+    /**
+     * Checks that the map rejects changes, reads of its regression, and another transaction while one is open.
+     */
+    private static void checkRejected(InterpolatingTreeMap map, String description) {
+        NavigableMap<Double, Double> points = map.getDataPoints();
+        Runnable[] rejected = {
+                () -> map.put(1000, 1),
+                () -> map.put(Map.entry(1000.0, 1.0)),
+                () -> map.putAll(new double[]{1000}, new double[]{1}),
+                () -> map.putAll(DoubleBuffer.wrap(new double[]{1000}), DoubleBuffer.wrap(new double[]{1})),
+                () -> map.remove(points.firstKey()),
+                () -> map.getAsDouble(0),
+                map::begin
+        };
+        for (int i = 0; i < rejected.length; i++) {
+            try {
+                rejected[i].run();
+                throw new AssertionError(description + ": operation " + i + " was allowed while a transaction is open");
+            } catch (IllegalStateException expectedFailure) {
+                // expected
+            }
+        }
+        if (!map.getDataPoints().equals(points))
+            throw new AssertionError(description + ": rejected changes left " + map.getDataPoints() + ", expected " + points);
+    }
+
+    /**
+     * Checks the regression of the map against that of a map fitted afresh from its points, and against fresh
+     * statistics of every range if the factory indexes ranges.
+     */
+    private static void check(RegressionEquationFactory factory, InterpolatingTreeMap map, String description) {
+        NavigableMap<Double, Double> points = map.getDataPoints();
+        double[] xs = points.keySet().stream().mapToDouble(Double::doubleValue).toArray();
+        double[] ys = points.values().stream().mapToDouble(Double::doubleValue).toArray();
+        var fresh = new InterpolatingTreeMap(factory, xs, ys);
+
+        assertClose(description + ", R²", fresh.getCoefficientOfDetermination(), map.getCoefficientOfDetermination());
+        for (double x = xs[0] - 2; x <= xs[xs.length - 1] + 2; x += 0.75) {
+            assertClose(description + ", y at " + x, fresh.getAsDouble(x), map.getAsDouble(x));
+        }
+
+        if (!(factory instanceof NaturalCubicSplineEquationFactory)) {
+            RegressionStatistics range = map.fitRange(xs[0], xs[xs.length - 1]);
+            assertClose(description + ", R² of every point by range", fresh.getCoefficientOfDetermination(),
+                    range.getCoefficientOfDetermination());
+        }
+    }
+
+    private static void assertClose(String description, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected))))
+            throw new AssertionError(description + " was " + actual + ", expected " + expected);
+    }
+}
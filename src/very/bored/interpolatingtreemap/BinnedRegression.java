@@ -0,0 +1,309 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A regression over a high-volume stream of (x, y) points, which are quantized into bins of x rather than stored.
+ * Unlike an {@link InterpolatingTreeMap}, a repeated x value adds to the regression instead of replacing the
+ * earlier y value, and memory is bounded by the number of bins rather than the number of points.
+ * <p>
+ * The x axis is split into bins of a fixed width, starting from an origin. Each bin keeps only the number of
+ * points that fell into it, and the mean and sum of squared deviations of their y values, updated by Welford's
+ * method (equivalent to Σy and Σy², without their cancellation). The regression is fitted over the bins, each as
+ * a single point at the center of the bin and the mean y of the bin, weighted by its count, through the weighted
+ * {@link RegressionStatistics} of the injected {@link IncrementalRegressionEquationFactory}. This is the same
+ * regression as over every raw point with its x value moved to the center of its bin, at the cost of a fit over
+ * the bins.
+ * <p>
+ * The coefficient of determination is that of the raw points: the spread of the y values within each bin, which
+ * no regression over x can explain, is added to both the residual and the total sum of squares.
+ * <p>
+ * Every put costs O(1) if it falls into an existing bin or a new bin after the last one, and O(bins) otherwise.
+ * The regression function itself is generated lazily, on the first read after a put.
+ * <p>
+ * Note that usage of this class is NOT synchronized.
+ */
+public final class BinnedRegression {
+
+    /**
+     * The {@link IncrementalRegressionEquationFactory} implementation which is used to generate the
+     * regression line from the bins.
+     */
+    private final IncrementalRegressionEquationFactory regressionEquationFactory;
+
+    /**
+     * The running weighted {@link RegressionStatistics} of the bins.
+     */
+    private final RegressionStatistics statistics;
+
+    private final double origin;
+    private final double binWidth;
+
+    /**
+     * The bins, sorted by index: the index of each bin, the number of points in it, and the mean and sum of
+     * squared deviations of their y values.
+     */
+    private long[] indices = new long[16];
+    private long[] counts = new long[16];
+    private double[] means = new double[16];
+    private double[] deviations = new double[16];
+    private int bins;
+
+    /**
+     * The number of points put, and the mean and sum of squared deviations of all their y values.
+     */
+    private long points;
+    private double meanY, SST;
+
+    /**
+     * The sum of the squared deviations of the y values within each bin from the mean of that bin.
+     */
+    private double withinBins;
+
+    /**
+     * The generated regression function, or null if a point has been put since it was last generated.
+     */
+    private DoubleUnaryOperator cachedRegressionEquation;
+
+    /**
+     * The sink which the refits and evaluations are measured into.
+     */
+    private MetricsSink metrics = MetricsSink.NOOP;
+
+    /**
+     * Constructor for the BinnedRegression.
+     *
+     * @param regressionEquationFactory The desired implementation of the IncrementalRegressionEquationFactory. Its
+     *                                  statistics must support weighted points, as those of
+     *                                  {@link very.bored.regressionfactories.LinRegEquationFactory},
+     *                                  {@link very.bored.regressionfactories.QuadRegEquationFactory} and
+     *                                  {@link very.bored.regressionfactories.PolyRegEquationFactory} do.
+     * @param origin                    An x value at which a bin starts.
+     * @param binWidth                  The width of every bin, in units of x.
+     * @throws IllegalArgumentException If origin is not finite, or binWidth is not positive and finite.
+     * @throws NullPointerException     If the regressionEquationFactory is null.
+     */
+    public BinnedRegression(IncrementalRegressionEquationFactory regressionEquationFactory, double origin, double binWidth) {
+        Objects.requireNonNull(regressionEquationFactory);
+        if (!Double.isFinite(origin))
+            throw new IllegalArgumentException("Origin must be finite, was " + origin);
+        if (!(binWidth > 0) || Double.isInfinite(binWidth))
+            throw new IllegalArgumentException("Bin width must be positive and finite, was " + binWidth);
+
+        this.regressionEquationFactory = regressionEquationFactory;
+        this.statistics = regressionEquationFactory.newStatistics();
+        this.origin = origin;
+        this.binWidth = binWidth;
+    }
+
+    /**
+     * Adds the point (x, y) to the bin of x, creating the bin if it is the first point to fall into it.
+     *
+     * @param x The x value of the point.
+     * @param y The y value of the point.
+     * @throws IllegalArgumentException      If x or y is not finite.
+     * @throws UnsupportedOperationException If the statistics of the factory do not support weighted points.
+     */
+    public void put(double x, double y) {
+        if (!Double.isFinite(x) || !Double.isFinite(y))
+            throw new IllegalArgumentException("Point (" + x + ", " + y + ") is not finite");
+
+        long index = (long) Math.floor((x - origin) / binWidth);
+        int bin = binOf(index);
+        double center = origin + (index + 0.5) * binWidth;
+
+        long count = counts[bin];
+        if (count > 0) {
+            statistics.remove(center, means[bin], count);
+        }
+
+        double delta = y - means[bin];
+        means[bin] += delta / (count + 1);
+        double deviation = delta * (y - means[bin]);
+        deviations[bin] += deviation;
+        withinBins += deviation;
+        counts[bin] = count + 1;
+
+        statistics.add(center, means[bin], count + 1);
+
+        points++;
+        double dy = y - meanY;
+        meanY += dy / points;
+        SST += dy * (y - meanY);
+
+        cachedRegressionEquation = null;
+    }
+
+    /**
+     * Helper function which returns the position of the bin of the inputted index, inserting an empty bin there
+     * if there is none.
+     *
+     * @param index The index of the bin.
+     * @return The position of the bin in the arrays.
+     */
+    private int binOf(long index) {
+        if (bins > 0 && indices[bins - 1] == index) {
+            return bins - 1;
+        }
+
+        int position = bins > 0 && indices[bins - 1] < index ? -(bins + 1) : Arrays.binarySearch(indices, 0, bins, index);
+        if (position >= 0) {
+            return position;
+        }
+
+        position = -position - 1;
+        if (bins == indices.length) {
+            int capacity = bins + (bins >> 1) + 1;
+            indices = Arrays.copyOf(indices, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            means = Arrays.copyOf(means, capacity);
+            deviations = Arrays.copyOf(deviations, capacity);
+        }
+
+        int moved = bins - position;
+        System.arraycopy(indices, position, indices, position + 1, moved);
+        System.arraycopy(counts, position, counts, position + 1, moved);
+        System.arraycopy(means, position, means, position + 1, moved);
+        System.arraycopy(deviations, position, deviations, position + 1, moved);
+
+        indices[position] = index;
+        counts[position] = 0;
+        means[position] = 0;
+        deviations[position] = 0;
+        bins++;
+
+        return position;
+    }
+
+    /**
+     * Helper function which returns the cached regression function, generating it first if a point has been put
+     * since it was last generated.
+     *
+     * @return The regression function for the current bins.
+     * @throws IllegalStateException If there are fewer bins than the minimum of the factory.
+     */
+    private DoubleUnaryOperator regressionEquation() {
+        DoubleUnaryOperator equation = cachedRegressionEquation;
+        if (equation == null) {
+            if (binCount() < minimumBinCount())
+                throw new IllegalStateException(
+                        "Points fall into " + binCount() + " bins, fewer than the minimum of " + minimumBinCount());
+
+            equation = cachedRegressionEquation = RefitEvent.measure(
+                    metrics, regressionEquationFactory.getClass(), bins, statistics::equation);
+        }
+        return equation;
+    }
+
+    /**
+     * Returns the y-hat value for the inputted x value based on the regression function of the current bins.
+     *
+     * @param x The x value to be predicted.
+     * @return The y-hat value for the inputted x value.
+     * @throws IllegalStateException If there are fewer bins than the minimum of the factory.
+     */
+    public double getAsDouble(double x) {
+        if (metrics == MetricsSink.NOOP) {
+            return regressionEquation().applyAsDouble(x);
+        }
+
+        long start = System.nanoTime();
+        double y = regressionEquation().applyAsDouble(x);
+        metrics.evaluation(regressionEquationFactory.getClass(), bins, 1, System.nanoTime() - start);
+        return y;
+    }
+
+    /**
+     * Sets the sink which the refits and evaluations of this BinnedRegression are measured into. Nothing is
+     * measured by default.
+     *
+     * @param metrics The sink to measure into, or {@link MetricsSink#NOOP} to stop measuring.
+     * @throws NullPointerException If metrics is null.
+     */
+    public void setMetricsSink(MetricsSink metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Returns the regression function of the current bins as a {@link DoubleUnaryOperator}. The operator is
+     * detached from this BinnedRegression; later puts do not affect it.
+     *
+     * @return The regression {@link DoubleUnaryOperator} of the current bins.
+     * @throws IllegalStateException If there are fewer bins than the minimum of the factory.
+     */
+    public DoubleUnaryOperator getRegressionOperator() {
+        return regressionEquation();
+    }
+
+    /**
+     * Returns the regression function of the current bins as a String.
+     *
+     * @return The regression function of the current bins as a String.
+     * @throws IllegalStateException If there are fewer bins than the minimum of the factory.
+     */
+    public String getEquationAsString() {
+        regressionEquation();
+        return statistics.equationAsString();
+    }
+
+    /**
+     * Returns the coefficient of determination (R^2) of the regression function over every raw point put, with
+     * x values quantized to the centers of their bins. The spread within each bin counts as unexplained.
+     *
+     * @return The coefficient of determination (R^2) of the regression function.
+     * @throws IllegalStateException If there are fewer bins than the minimum of the factory.
+     */
+    public double getCoefficientOfDetermination() {
+        regressionEquation();
+        double betweenBins = Math.max(0, SST - withinBins);
+        double SSE = (1 - statistics.getCoefficientOfDetermination()) * betweenBins + withinBins;
+        return 1 - SSE / SST;
+    }
+
+    /**
+     * Returns the {@link IncrementalRegressionEquationFactory} used to generate the regression function.
+     *
+     * @return The {@link IncrementalRegressionEquationFactory} used to generate the regression function.
+     */
+    public IncrementalRegressionEquationFactory getRegressionEquationFactory() {
+        return regressionEquationFactory;
+    }
+
+    /**
+     * Returns the width of every bin.
+     *
+     * @return The width of every bin.
+     */
+    public double getBinWidth() {
+        return binWidth;
+    }
+
+    /**
+     * Returns the number of bins which at least one point has fallen into.
+     *
+     * @return The number of bins.
+     */
+    public int binCount() {
+        return bins;
+    }
+
+    /**
+     * Returns the number of points put, across all bins.
+     *
+     * @return The number of points put.
+     */
+    public long pointCount() {
+        return points;
+    }
+
+    /**
+     * Returns the minimum number of bins required to generate a regression function, as given by the factory.
+     *
+     * @return The minimum number of bins.
+     */
+    public int minimumBinCount() {
+        return regressionEquationFactory.getMinEntries();
+    }
+}
@@ -0,0 +1,690 @@
+package very.bored.interpolatingtreemap;
+
+import java.nio.DoubleBuffer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe variant of the {@link InterpolatingTreeMap}, for datasets that are read from many threads
+ * while being written to.
+ * <p>
+ * Every change to the dataset generates the regression function once, and publishes it, along with its
+ * coefficient of determination and dataset size, as an immutable {@link RegressionSnapshot} through a
+ * volatile reference. Predictions only ever read the latest snapshot, so they are wait-free and never block
+ * behind a writer, even while the regression is being regenerated. A change is visible to every prediction
+ * that starts after the call making it returns.
+ * <p>
+ * Writers are serialized by a {@link StampedLock}, which also guards the reads of the dataset itself, such as
+ * {@link #getExact} and {@link #getDataPoints()}.
+ * <p>
+ * Maps created by {@link #copyOf(InterpolatingTreeMap, Executor, Duration)} refit asynchronously instead: a write
+ * only updates the dataset and returns, and a single background refit on the inputted {@link Executor} coalesces
+ * every write made since the last one into one new snapshot, fitted without holding the lock. Readers keep seeing
+ * the previous snapshot until then; {@link #caughtUp()} signals when every write made so far is reflected.
+ *
+ * @see InterpolatingTreeMap
+ * @see RegressionSnapshot
+ */
+public class ConcurrentInterpolatingTreeMap {
+
+    /**
+     * The map holding the dataset and generating the regression functions. Only accessed under the lock.
+     */
+    private final InterpolatingTreeMap map;
+
+    /**
+     * The lock serializing writers, and guarding readers of the dataset against them.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * The latest published snapshot. Replaced, never modified, by writers while they hold the write lock.
+     */
+    private volatile RegressionSnapshot snapshot;
+
+    /**
+     * The sink which the wait-free evaluations are measured into. Refits and coefficient of determination
+     * computations are measured by the map itself, into the same sink.
+     */
+    private volatile MetricsSink metrics = MetricsSink.NOOP;
+
+    /**
+     * The executor which refits run on in asynchronous mode, or null if every write refits synchronously.
+     */
+    private final Executor refitExecutor;
+
+    /**
+     * The longest a write may go unpublished in asynchronous mode before a writer refits synchronously.
+     */
+    private final long maxStalenessNanos;
+
+    /**
+     * The number of writes made to the map. Only accessed under the lock; in asynchronous mode, it may be ahead
+     * of the version of the published snapshot.
+     */
+    private long version;
+
+    /**
+     * The {@link System#nanoTime()} by which the oldest write not yet published was made. Only accessed under
+     * the lock, and only meaningful while the published snapshot is behind the version.
+     */
+    private long staleSince;
+
+    /**
+     * Whether an asynchronous refit is scheduled or running. Only accessed under the lock.
+     */
+    private boolean refitScheduled;
+
+    /**
+     * The futures returned by {@link #caughtUp()} which are not yet complete, in ascending order of the version
+     * they wait for. Only accessed under the lock.
+     */
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    private record Waiter(long version, CompletableFuture<RegressionSnapshot> future) {
+    }
+
+    /**
+     * Constructor for the ConcurrentInterpolatingTreeMap.
+     *
+     * @param regressionEquationFactory The desired implementation of the RegressionEquationFactory.
+     * @param entries                   The entries to be added to the map. At least the minimum number of
+     *                                  entries of the factory is required.
+     * @throws IllegalArgumentException If there are not enough entries.
+     * @throws NullPointerException     If the regressionEquationFactory or any entry is null.
+     */
+    @SafeVarargs
+    public ConcurrentInterpolatingTreeMap(
+            RegressionEquationFactory regressionEquationFactory,
+            Map.Entry<Double, Double>... entries
+    ) {
+        this(new InterpolatingTreeMap(regressionEquationFactory, entries));
+    }
+
+    /**
+     * Constructor which takes the points as parallel arrays of primitive x and y values.
+     * See {@link InterpolatingTreeMap#InterpolatingTreeMap(RegressionEquationFactory, double[], double[])}.
+     *
+     * @param regressionEquationFactory The desired implementation of the RegressionEquationFactory.
+     * @param xs                        The x values of the points.
+     * @param ys                        The y values of the points, in the same order.
+     * @throws IllegalArgumentException If the arrays differ in length, or hold fewer distinct x values than the
+     *                                  minimum required by the factory.
+     * @throws NullPointerException     If the regressionEquationFactory or either array is null.
+     */
+    public ConcurrentInterpolatingTreeMap(RegressionEquationFactory regressionEquationFactory, double[] xs, double[] ys) {
+        this(new InterpolatingTreeMap(regressionEquationFactory, xs, ys));
+    }
+
+    /**
+     * Constructor which takes ownership of the inputted map. The map must not be used elsewhere afterwards.
+     *
+     * @param map The map to be wrapped.
+     */
+    private ConcurrentInterpolatingTreeMap(InterpolatingTreeMap map) {
+        this(map, null, 0L);
+    }
+
+    /**
+     * Constructor which takes ownership of the inputted map, refitting on the inputted executor if it is not null.
+     *
+     * @param map               The map to be wrapped.
+     * @param refitExecutor     The executor to refit on, or null to refit synchronously.
+     * @param maxStalenessNanos The longest a write may go unpublished.
+     */
+    private ConcurrentInterpolatingTreeMap(InterpolatingTreeMap map, Executor refitExecutor, long maxStalenessNanos) {
+        this.map = map;
+        this.refitExecutor = refitExecutor;
+        this.maxStalenessNanos = maxStalenessNanos;
+        this.snapshot = takeSnapshot(0);
+    }
+
+    /**
+     * Creates a ConcurrentInterpolatingTreeMap holding a copy of the dataset of the inputted map, using the
+     * same {@link RegressionEquationFactory}.
+     *
+     * @param map The map whose dataset is to be copied.
+     * @return The new ConcurrentInterpolatingTreeMap.
+     * @throws NullPointerException If map is null.
+     */
+    public static ConcurrentInterpolatingTreeMap copyOf(InterpolatingTreeMap map) {
+        return new ConcurrentInterpolatingTreeMap(map.with(map.getRegressionEquationFactory()));
+    }
+
+    /**
+     * Creates a ConcurrentInterpolatingTreeMap holding a copy of the dataset of the inputted map, which refits
+     * asynchronously on the inputted executor, such as a virtual thread per task executor where available.
+     * <p>
+     * Writes return as soon as the dataset is updated. At most one refit is scheduled at a time, and each refit
+     * publishes a snapshot of every write made before it started, so that a burst of writes costs a handful of
+     * refits rather than one each. The regression is fitted outside the lock, from a copy of the running
+     * statistics if they are {@link MergeableRegressionStatistics}, or otherwise from a copy-on-write share of the
+     * points, so writers are never blocked behind it.
+     * <p>
+     * The staleness bound is enforced by writers: a write made while the oldest unpublished write is older than
+     * maxStaleness refits synchronously, as in the default mode, so that snapshots cannot fall arbitrarily far
+     * behind when the executor is saturated. If the executor rejects a refit, it is likewise run by the writer.
+     *
+     * @param map           The map whose dataset is to be copied.
+     * @param refitExecutor The executor to refit on.
+     * @param maxStaleness  The longest a write may go unpublished before a writer refits synchronously.
+     * @return The new ConcurrentInterpolatingTreeMap.
+     * @throws IllegalArgumentException If maxStaleness is negative.
+     * @throws NullPointerException     If any argument is null.
+     */
+    public static ConcurrentInterpolatingTreeMap copyOf(InterpolatingTreeMap map, Executor refitExecutor, Duration maxStaleness) {
+        Objects.requireNonNull(refitExecutor);
+        if (maxStaleness.isNegative())
+            throw new IllegalArgumentException("Staleness bound must not be negative, was " + maxStaleness);
+
+        long maxStalenessNanos;
+        try {
+            maxStalenessNanos = maxStaleness.toNanos();
+        } catch (ArithmeticException e) {
+            maxStalenessNanos = Long.MAX_VALUE;
+        }
+
+        return new ConcurrentInterpolatingTreeMap(
+                map.with(map.getRegressionEquationFactory()), refitExecutor, maxStalenessNanos);
+    }
+
+    /**
+     * Helper function which generates the snapshot of the current state of the map. Must be called while
+     * holding the write lock, or from the constructor.
+     *
+     * @param version The version of the snapshot.
+     * @return The snapshot of the current state of the map.
+     */
+    private RegressionSnapshot takeSnapshot(long version) {
+        return new RegressionSnapshot(
+                map.getRegressionOperator(),
+                map.getCoefficientOfDetermination(),
+                map.datasetSize(),
+                version
+        );
+    }
+
+    /**
+     * Helper function which runs the inputted change against the map under the write lock, then publishes
+     * the resulting snapshot. If the change throws, the snapshot is still republished, since the change may
+     * have been partially applied.
+     *
+     * @param change The change to be made to the map.
+     */
+    private void write(Consumer<InterpolatingTreeMap> change) {
+        List<Waiter> caughtUp = List.of();
+        boolean schedule = false;
+
+        long stamp = lock.writeLock();
+        try {
+            change.accept(map);
+        } finally {
+            try {
+                version++;
+                long now = System.nanoTime();
+                if (refitExecutor == null) {
+                    snapshot = takeSnapshot(version);
+                } else if (snapshot.version() == version - 1) {
+                    staleSince = now;
+                }
+
+                if (refitExecutor != null && now - staleSince >= maxStalenessNanos) {
+                    snapshot = takeSnapshot(version);
+                    caughtUp = satisfiedWaiters();
+                } else if (refitExecutor != null && !refitScheduled) {
+                    schedule = refitScheduled = true;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+            complete(caughtUp);
+            if (schedule) {
+                scheduleRefit();
+            }
+        }
+    }
+
+    /**
+     * Helper function which runs {@link #refit()} on the refit executor, or on the calling thread if the executor
+     * rejects it.
+     */
+    private void scheduleRefit() {
+        try {
+            refitExecutor.execute(this::refit);
+        } catch (RejectedExecutionException e) {
+            refit();
+        }
+    }
+
+    /**
+     * The asynchronous refit: captures the dataset under the lock, generates its regression outside the lock,
+     * then publishes it if no newer snapshot was published in the meantime. Reschedules itself if the map was
+     * written to while it ran, so that those writes are coalesced into the next refit.
+     */
+    private void refit() {
+        Supplier<RegressionSnapshot> fit;
+        long captured;
+
+        long stamp = lock.writeLock();
+        try {
+            if (snapshot.version() >= version) {
+                refitScheduled = false;
+                return;
+            }
+            fit = map.detachedSnapshot(version);
+            captured = System.nanoTime();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        RegressionSnapshot next = null;
+        Throwable failure = null;
+        try {
+            next = fit.get();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+
+        List<Waiter> caughtUp;
+        List<Waiter> failed = List.of();
+        boolean reschedule;
+
+        stamp = lock.writeLock();
+        try {
+            if (next != null && next.version() > snapshot.version()) {
+                snapshot = next;
+                staleSince = captured;
+            }
+            caughtUp = satisfiedWaiters();
+            if (failure != null) {
+                failed = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+            reschedule = refitScheduled = failure == null && snapshot.version() < version;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        complete(caughtUp);
+        for (Waiter waiter : failed) {
+            waiter.future().completeExceptionally(failure);
+        }
+        if (reschedule) {
+            scheduleRefit();
+        }
+    }
+
+    /**
+     * Helper function which removes the waiters satisfied by the published snapshot. Must be called while holding
+     * the write lock; the waiters must then be completed with {@link #complete} once it is released.
+     *
+     * @return The waiters satisfied by the published snapshot.
+     */
+    private List<Waiter> satisfiedWaiters() {
+        List<Waiter> caughtUp = new ArrayList<>();
+        while (!waiters.isEmpty() && waiters.peekFirst().version() <= snapshot.version()) {
+            caughtUp.add(waiters.pollFirst());
+        }
+        return caughtUp;
+    }
+
+    /**
+     * Helper function which completes the inputted waiters with the latest published snapshot.
+     *
+     * @param caughtUp The waiters to complete.
+     */
+    private void complete(List<Waiter> caughtUp) {
+        for (Waiter waiter : caughtUp) {
+            waiter.future().complete(snapshot);
+        }
+    }
+
+    /**
+     * Returns a future which completes with a snapshot reflecting every write made to this map before this call.
+     * The future is already complete unless the map refits asynchronously and is behind. If an asynchronous refit
+     * fails, the futures waiting on it complete exceptionally with its exception.
+     *
+     * @return A future of a snapshot reflecting every write made so far.
+     * @see #copyOf(InterpolatingTreeMap, Executor, Duration)
+     */
+    public CompletableFuture<RegressionSnapshot> caughtUp() {
+        long stamp = lock.writeLock();
+        try {
+            if (snapshot.version() >= version) {
+                return CompletableFuture.completedFuture(snapshot);
+            }
+
+            var future = new CompletableFuture<RegressionSnapshot>();
+            waiters.addLast(new Waiter(version, future));
+            return future;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the latest published {@link RegressionSnapshot}. Wait-free.
+     *
+     * @return The latest published snapshot.
+     */
+    public RegressionSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the y-hat value for the inputted x value based on the latest published regression function.
+     * Wait-free.
+     *
+     * @param x The x value to be predicted.
+     * @return The y-hat value for the inputted x value.
+     */
+    public double getAsDouble(double x) {
+        MetricsSink metrics = this.metrics;
+        if (metrics == MetricsSink.NOOP) {
+            return snapshot.equation().applyAsDouble(x);
+        }
+
+        long start = System.nanoTime();
+        RegressionSnapshot snapshot = this.snapshot;
+        double y = snapshot.equation().applyAsDouble(x);
+        metrics.evaluation(map.getRegressionEquationFactory().getClass(), snapshot.datasetSize(), 1, System.nanoTime() - start);
+        return y;
+    }
+
+    /**
+     * Returns the y-hat value for the inputted x value based on the latest published regression function,
+     * as a {@link Double}. Wait-free.
+     *
+     * @param x The x value to be predicted.
+     * @return The y-hat value for the inputted x value.
+     */
+    public Double get(double x) {
+        return getAsDouble(x);
+    }
+
+    /**
+     * Predicts the y-hat value of every x value in xs, writing the y-hat at index i of xs into index i of out.
+     * All values are predicted from the same snapshot. Wait-free.
+     *
+     * @param xs  The x values to be predicted.
+     * @param out The array to write the y-hat values into. Must be at least as long as xs.
+     * @throws IllegalArgumentException If out is shorter than xs.
+     */
+    public void get(double[] xs, double[] out) {
+        if (out.length < xs.length)
+            throw new IllegalArgumentException(
+                    "Output array of length " + out.length + " is shorter than the input of length " + xs.length);
+
+        MetricsSink metrics = this.metrics;
+        long start = metrics != MetricsSink.NOOP ? System.nanoTime() : 0L;
+
+        RegressionSnapshot snapshot = this.snapshot;
+        DoubleUnaryOperator equation = snapshot.equation();
+        if (equation instanceof Polynomial polynomial) {
+            polynomial.evaluate(xs, out);
+        } else {
+            for (int i = 0; i < xs.length; i++) {
+                out[i] = equation.applyAsDouble(xs[i]);
+            }
+        }
+
+        if (metrics != MetricsSink.NOOP) {
+            metrics.evaluation(map.getRegressionEquationFactory().getClass(), snapshot.datasetSize(), xs.length, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the {@link RegressionStatistics} of only the points whose x values lie between fromX and toX, both
+     * inclusive. See {@link InterpolatingTreeMap#fitRange(double, double)}.
+     *
+     * @param fromX The lowest x value of the range.
+     * @param toX   The highest x value of the range.
+     * @return The statistics of the points within the range.
+     * @throws IllegalArgumentException      If there are fewer points within the range than the minimum required by
+     *                                       the {@link RegressionEquationFactory} implementation.
+     * @throws UnsupportedOperationException If the {@link RegressionEquationFactory} is not an
+     *                                       {@link IncrementalRegressionEquationFactory}.
+     */
+    public RegressionStatistics fitRange(double fromX, double toX) {
+        long stamp = lock.writeLock();
+        try {
+            return map.fitRange(fromX, toX);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the sink which the refits, evaluations and coefficient of determination computations of this map are
+     * measured into. Maps measure nothing by default.
+     *
+     * @param metrics The sink to measure into, or {@link MetricsSink#NOOP} to stop measuring.
+     * @throws NullPointerException If metrics is null.
+     * @see InterpolatingTreeMap#setMetricsSink(MetricsSink)
+     */
+    public void setMetricsSink(MetricsSink metrics) {
+        Objects.requireNonNull(metrics);
+
+        long stamp = lock.writeLock();
+        try {
+            map.setMetricsSink(metrics);
+            this.metrics = metrics;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the latest published regression function as a boxed {@link Function}. Wait-free.
+     *
+     * @return The latest published regression function.
+     */
+    public Function<Double, Double> getRegressionEquation() {
+        return snapshot.equation()::applyAsDouble;
+    }
+
+    /**
+     * Returns the coefficient of determination (R²) of the latest published regression function. Wait-free.
+     *
+     * @return The coefficient of determination (R²) of the latest published regression function.
+     */
+    public double getCoefficientOfDetermination() {
+        return snapshot.coefficientOfDetermination();
+    }
+
+    /**
+     * Returns an {@link Optional} of the exact corresponding y value for the inputted x value, if and only if
+     * the inputted x value is in the dataset. See {@link InterpolatingTreeMap#getExact}.
+     *
+     * @param x The x value
+     * @return An {@link Optional} of the corresponding y value.
+     */
+    public Optional<Double> getExact(double x) {
+        long stamp = lock.readLock();
+        try {
+            return map.getExact(x);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a {@link String} representation of the latest published regression function, as formatted by
+     * {@link RegressionEquationFactory#format(DoubleUnaryOperator)}. Nothing is fitted, and no lock is taken.
+     *
+     * @return A {@link String} version of the latest published regression function.
+     */
+    public String getEquationAsString() {
+        return map.getRegressionEquationFactory().format(snapshot.equation());
+    }
+
+    /**
+     * Returns the {@link FitResult} of the regression function of the current dataset, fitting it under the write
+     * lock if needed. See {@link InterpolatingTreeMap#getFitResult()}. In asynchronous mode, the dataset may be
+     * ahead of the latest published snapshot.
+     *
+     * @return The {@link FitResult} of the regression function of the current dataset.
+     */
+    public FitResult getFitResult() {
+        long stamp = lock.writeLock();
+        try {
+            return map.getFitResult();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns a compact {@link RegressionSummary} of the regression state of this map.
+     *
+     * @return The summary of the regression state of this map.
+     * @throws UnsupportedOperationException If the factory does not produce {@link MergeableRegressionStatistics}.
+     * @see InterpolatingTreeMap#summary()
+     */
+    public RegressionSummary summary() {
+        long stamp = lock.readLock();
+        try {
+            return map.summary();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a read-only {@link NavigableMap} snapshot of the dataset. See {@link InterpolatingTreeMap#getDataPoints()}.
+     *
+     * @return A read-only {@link NavigableMap} snapshot of the dataset.
+     */
+    public NavigableMap<Double, Double> getDataPoints() {
+        long stamp = lock.readLock();
+        try {
+            return map.getDataPoints();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the size of the dataset of the latest published snapshot. Wait-free.
+     *
+     * @return The size of the dataset.
+     */
+    public int datasetSize() {
+        return snapshot.datasetSize();
+    }
+
+    /**
+     * Adds the inputted entries to the dataset, then publishes a new snapshot.
+     * See {@link InterpolatingTreeMap#put(Map.Entry[])}.
+     *
+     * @param entries The entries to be added.
+     * @throws NullPointerException if any entry is null.
+     */
+    @SafeVarargs
+    public final void put(Map.Entry<Double, Double>... entries) {
+        Objects.requireNonNull(entries);
+        write(map -> map.put(entries));
+    }
+
+    /**
+     * Adds the inputted points to the dataset, then publishes a new snapshot.
+     * See {@link InterpolatingTreeMap#putAll(double[], double[])}.
+     *
+     * @param xs The x values of the points to be added.
+     * @param ys The y values of the points to be added, in the same order.
+     * @throws IllegalArgumentException If the arrays differ in length.
+     * @throws NullPointerException     If either array is null.
+     */
+    public void putAll(double[] xs, double[] ys) {
+        Objects.requireNonNull(xs);
+        Objects.requireNonNull(ys);
+        write(map -> map.putAll(xs, ys));
+    }
+
+    /**
+     * Adds the x and y values remaining in the inputted buffers to the dataset, then publishes a new snapshot.
+     * See {@link InterpolatingTreeMap#putAll(DoubleBuffer, DoubleBuffer)}.
+     *
+     * @param xs The x values of the points to be added.
+     * @param ys The y values of the points to be added, in the same order.
+     * @throws IllegalArgumentException If the buffers differ in the number of values remaining.
+     * @throws NullPointerException     If either buffer is null.
+     */
+    public void putAll(DoubleBuffer xs, DoubleBuffer ys) {
+        Objects.requireNonNull(xs);
+        Objects.requireNonNull(ys);
+        write(map -> map.putAll(xs, ys));
+    }
+
+    /**
+     * Adds the inputted point to the dataset, then publishes a new snapshot.
+     *
+     * @param x The x value of the point to be added.
+     * @param y The y value of the point to be added.
+     */
+    public void put(double x, double y) {
+        write(map -> map.put(x, y));
+    }
+
+    /**
+     * If present, removes the inputted value from the dataset, then publishes a new snapshot.
+     * See {@link InterpolatingTreeMap#remove(double)}.
+     *
+     * @param x The x value of the point to remove.
+     * @throws IllegalStateException If removing a point would make the dataset smaller than the minimum size.
+     */
+    public void remove(double x) {
+        write(map -> map.remove(x));
+    }
+
+    /**
+     * Runs the inputted changes as one {@link InterpolatingTreeMap.Transaction} under the write lock, then
+     * publishes a single new snapshot. Readers never observe the intermediate states. The write lock is not
+     * reentrant, so the changes must not call back into this map.
+     *
+     * @param changes The function making the changes through the transaction.
+     * @throws IllegalStateException If the changes leave the dataset below the minimum size. If this or any
+     *                               other exception is thrown, all the changes are rolled back.
+     * @throws NullPointerException  If changes is null.
+     */
+    public void update(Consumer<InterpolatingTreeMap.Transaction> changes) {
+        Objects.requireNonNull(changes);
+        write(map -> {
+            InterpolatingTreeMap.Transaction transaction = map.begin();
+            try {
+                changes.accept(transaction);
+                transaction.commit(refitExecutor == null);
+            } catch (RuntimeException | Error e) {
+                transaction.rollback();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Returns the {@link RegressionEquationFactory} used to generate the regression functions.
+     *
+     * @return The {@link RegressionEquationFactory} used to generate the regression functions.
+     */
+    public RegressionEquationFactory getRegressionEquationFactory() {
+        return map.getRegressionEquationFactory();
+    }
+
+    /**
+     * Returns the minimum number of data points required to generate a regression function.
+     *
+     * @return The minimum number of data points required to generate a regression function.
+     */
+    public int minimumDatasetSize() {
+        return map.minimumDatasetSize();
+    }
+}
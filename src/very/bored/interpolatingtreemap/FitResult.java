@@ -0,0 +1,175 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The complete, immutable result of fitting a regression equation to a dataset: the equation and its
+ * coefficients, the coefficient of determination (R²), the sums of squares it derives from, the residual
+ * standard error, and the smallest and largest residuals.
+ * <p>
+ * Every statistic is computed in a single fused pass over the dataset, which evaluates the equation once per
+ * point. The equation is only formatted as a String on the first call to {@link #getEquationAsString()}, by the
+ * {@link RegressionEquationFactory#format(DoubleUnaryOperator)} of the factory that created it.
+ *
+ * @see RegressionEquationFactory#fit(PointView)
+ * @see InterpolatingTreeMap#getFitResult()
+ */
+public final class FitResult {
+
+    private final RegressionEquationFactory regressionEquationFactory;
+    private final DoubleUnaryOperator equation;
+    private final int datasetSize;
+    private final int parameters;
+    private final double SSE, SST;
+    private final double minResidual, maxResidual;
+
+    /**
+     * The formatted equation, or null until it is first requested. Racy, but Strings are safely published.
+     */
+    private String equationAsString;
+
+    private FitResult(RegressionEquationFactory regressionEquationFactory, DoubleUnaryOperator equation, int datasetSize,
+                      int parameters, double SSE, double SST, double minResidual, double maxResidual) {
+        this.regressionEquationFactory = regressionEquationFactory;
+        this.equation = equation;
+        this.datasetSize = datasetSize;
+        this.parameters = parameters;
+        this.SSE = SSE;
+        this.SST = SST;
+        this.minResidual = minResidual;
+        this.maxResidual = maxResidual;
+    }
+
+    /**
+     * Computes the result of fitting the inputted equation to the inputted points, in a single pass.
+     *
+     * @param regressionEquationFactory The factory which created the equation.
+     * @param equation                  The equation created from dataPoints.
+     * @param dataPoints                The points the equation was created from.
+     * @return The result of the fit.
+     */
+    public static FitResult of(RegressionEquationFactory regressionEquationFactory, DoubleUnaryOperator equation, PointView dataPoints) {
+        int n = dataPoints.size();
+        double SSE = 0, SST = 0, meanY = 0;
+        double minResidual = Double.POSITIVE_INFINITY, maxResidual = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < n; i++) {
+            double y = dataPoints.yAt(i);
+            double residual = y - equation.applyAsDouble(dataPoints.xAt(i));
+            SSE += residual * residual;
+            minResidual = Math.min(minResidual, residual);
+            maxResidual = Math.max(maxResidual, residual);
+
+            double dy = y - meanY;
+            meanY += dy / (i + 1);
+            SST += dy * (y - meanY);
+        }
+
+        int parameters = equation instanceof Polynomial polynomial
+                ? polynomial.degree() + 1
+                : regressionEquationFactory.getMinEntries();
+
+        return new FitResult(regressionEquationFactory, equation, n, parameters, SSE, SST, minResidual, maxResidual);
+    }
+
+    /**
+     * Returns the fitted regression equation.
+     *
+     * @return The fitted regression equation.
+     */
+    public DoubleUnaryOperator getEquation() {
+        return equation;
+    }
+
+    /**
+     * Returns the coefficients of the fitted equation in ascending order of power if it is a {@link Polynomial},
+     * otherwise an empty array.
+     *
+     * @return A copy of the coefficients of the fitted equation.
+     */
+    public double[] getCoefficients() {
+        return equation instanceof Polynomial polynomial ? polynomial.coefficients() : new double[0];
+    }
+
+    /**
+     * Returns the number of points the equation was fitted to.
+     *
+     * @return The number of points the equation was fitted to.
+     */
+    public int getDatasetSize() {
+        return datasetSize;
+    }
+
+    /**
+     * Returns the coefficient of determination (R²), 1 - SSE / SST.
+     *
+     * @return The coefficient of determination.
+     */
+    public double getCoefficientOfDetermination() {
+        return 1 - SSE / SST;
+    }
+
+    /**
+     * Returns the sum of the squared residuals, Σ(y - ŷ)².
+     *
+     * @return The sum of squared errors.
+     */
+    public double getSSE() {
+        return SSE;
+    }
+
+    /**
+     * Returns the total sum of squares, Σ(y - ȳ)².
+     *
+     * @return The total sum of squares.
+     */
+    public double getSST() {
+        return SST;
+    }
+
+    /**
+     * Returns the residual standard error, √(SSE / (n - p)), where p is the number of coefficients of the
+     * equation (or the minimum number of entries of the factory, if the equation is not a {@link Polynomial}).
+     *
+     * @return The residual standard error, or NaN if there are no more points than coefficients.
+     */
+    public double getResidualStandardError() {
+        return datasetSize > parameters ? Math.sqrt(SSE / (datasetSize - parameters)) : Double.NaN;
+    }
+
+    /**
+     * Returns the smallest residual, y - ŷ, of any point.
+     *
+     * @return The smallest residual.
+     */
+    public double getMinResidual() {
+        return minResidual;
+    }
+
+    /**
+     * Returns the largest residual, y - ŷ, of any point.
+     *
+     * @return The largest residual.
+     */
+    public double getMaxResidual() {
+        return maxResidual;
+    }
+
+    /**
+     * Returns the fitted equation as a String, formatting it on the first call.
+     *
+     * @return The fitted equation as a String.
+     */
+    public String getEquationAsString() {
+        String string = equationAsString;
+        if (string == null) {
+            equationAsString = string = regressionEquationFactory.format(equation);
+        }
+        return string;
+    }
+
+    @Override
+    public String toString() {
+        return getEquationAsString() + " (R² = " + getCoefficientOfDetermination() + ", n = " + datasetSize + ")";
+    }
+}
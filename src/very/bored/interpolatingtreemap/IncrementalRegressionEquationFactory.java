@@ -0,0 +1,57 @@
+package very.bored.interpolatingtreemap;
+
+/**
+ * A {@link RegressionEquationFactory} which can also maintain its regression incrementally, through
+ * {@link RegressionStatistics} that are updated as single points are added or removed.
+ * <p>
+ * The {@link InterpolatingTreeMap} prefers the statistics over {@link #equationFrom} whenever the injected
+ * factory implements this interface, so that a single put or remove costs O(1) rather than a full pass
+ * over the dataset, while a full pass (see {@link #statisticsFrom}) can be split across cores. Both paths
+ * are expected to produce the same regression equation, aside from minute rounding errors.
+ *
+ * @see RegressionStatistics
+ */
+public interface IncrementalRegressionEquationFactory extends RegressionEquationFactory {
+
+    /**
+     * Creates a new, empty {@link RegressionStatistics} instance for this type of regression.
+     *
+     * @return A new, empty {@link RegressionStatistics}.
+     */
+    RegressionStatistics newStatistics();
+
+    /**
+     * Creates the {@link RegressionStatistics} of every point in the inputted view. If the statistics are
+     * {@link MergeableRegressionStatistics}, large views are accumulated in parallel, in chunks, on the common
+     * {@link java.util.concurrent.ForkJoinPool}.
+     *
+     * @param dataPoints The points to accumulate.
+     * @return The statistics of every point in dataPoints.
+     */
+    default RegressionStatistics statisticsFrom(PointView dataPoints) {
+        return ParallelStatistics.accumulate(this, dataPoints);
+    }
+
+    /**
+     * Restores the {@link RegressionStatistics} summarized by the inputted {@link RegressionSummary}, from which
+     * the regression equation and coefficient of determination of the summarized dataset can be produced
+     * without its points.
+     *
+     * @param summary The summary produced by a factory of the same type and configuration as this one.
+     * @return The statistics summarized.
+     * @throws IllegalArgumentException      If the summary was produced by a different type or configuration
+     *                                       of factory.
+     * @throws UnsupportedOperationException If the statistics of this factory are not mergeable.
+     */
+    default MergeableRegressionStatistics statisticsFrom(RegressionSummary summary) {
+        if (!getClass().getName().equals(summary.getFactoryType()))
+            throw new IllegalArgumentException(
+                    "Summary of " + summary.getFactoryType() + " cannot be read by " + getClass().getName());
+
+        if (!(newStatistics() instanceof MergeableRegressionStatistics statistics))
+            throw new UnsupportedOperationException(getClass().getName() + " does not support summaries");
+
+        statistics.restore(summary.getMoments());
+        return statistics;
+    }
+}
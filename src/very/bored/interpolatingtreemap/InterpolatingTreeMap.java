@@ -1,23 +1,35 @@
 package very.bored.interpolatingtreemap;
 
 import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.PolyRegEquationFactory;
 import very.bored.regressionfactories.QuadRegEquationFactory;
 
+import java.nio.BufferOverflowException;
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
 
 /**
  * A roughly Map-based class that creates a regression line based on the inputted data
  * and the implementation of the {@link RegressionEquationFactory} interface.
  * <p>
- * Mapping functions are delegated to the {@link TreeMap} class, chosen for its natural ordering
- * of the coordinates. Composition was favored over inheritance so as to have greater control
- * over the modification of the composed {@link TreeMap} in this class to prevent interference,
- * intentional or not, with the regression line.
+ * Mapping functions are delegated to a primitive store of parallel, sorted {@code double[]} arrays, chosen for
+ * its natural ordering of the coordinates and for avoiding the boxed keys, values and nodes of a {@link TreeMap}.
+ * Composition was favored over inheritance so as to have greater control over the modification of the
+ * composed store in this class to prevent interference, intentional or not, with the regression line.
  * <p>
  * The type of regression line is determined by the implementation of the
- * {@link RegressionEquationFactory} injected. Such implementations include {@link LinRegEquationFactory}
- * or {@link QuadRegEquationFactory}
+ * {@link RegressionEquationFactory} injected. Such implementations include {@link LinRegEquationFactory},
+ * {@link QuadRegEquationFactory} or {@link PolyRegEquationFactory}
+ * <p>
+ * The regression function is generated lazily: adding to or detracting from the dataset only invalidates it,
+ * and it is regenerated once, on the next read. Many changes may also be grouped into a {@link Transaction},
+ * opened with {@link #begin()}, which checks the minimum dataset size only once it is committed.
  * <p>
  * Note that usage of this class is NOT synchronized.
  */
@@ -25,10 +37,10 @@ import java.util.function.Function;
 public class InterpolatingTreeMap {
 
     /**
-     * The TreeMap which holds all the (x, y) coordinates (as {@link Double Doubles}) inputted from which the
-     * regression lines are generated.
+     * The store which holds all the (x, y) coordinates (as primitive doubles) inputted from which the
+     * regression lines are generated. Passed to the factory as a read-only {@link PointView}.
      */
-    private final TreeMap<Double, Double> dataPoints = new TreeMap<>();
+    private final SortedPointStore dataPoints;
 
     /**
      * The {@link RegressionEquationFactory} implementation which is used to generate the
@@ -36,12 +48,47 @@ public class InterpolatingTreeMap {
      */
     private final RegressionEquationFactory regressionEquationFactory;
 
+    /**
+     * The running {@link RegressionStatistics} of dataPoints, kept in step with every put and remove when the
+     * injected factory is an {@link IncrementalRegressionEquationFactory}. Null otherwise, in which case the
+     * regression function is regenerated from the full dataset instead.
+     */
+    private RegressionStatistics statistics;
+
     /**
      * The generated regression function used to predict an inputted value. Inputs
-     * an x value and returns the corresponding y-hat. Regenerated every time the dataset
-     * is added to or detracted from.
+     * an x value and returns the corresponding y-hat. Invalidated (set to null) every time the dataset
+     * is added to or detracted from, and regenerated on the next read.
+     */
+    private DoubleUnaryOperator cachedRegressionEquation;
+
+    /**
+     * The {@link FitResult} of the cached regression function, or null if it has not been computed since the
+     * dataset was last added to or detracted from.
+     */
+    private FitResult cachedFitResult;
+
+    /**
+     * The formatted regression function, or null if it has not been formatted since the dataset was last added to
+     * or detracted from. Invalidated together with the {@link #cachedFitResult}.
+     */
+    private String cachedEquationAsString;
+
+    /**
+     * The {@link RangeIndex} which answers {@link #fitRange} queries, or null until the first such query.
+     */
+    private RangeIndex rangeIndex;
+
+    /**
+     * The currently open {@link Transaction}, or null if there is none.
+     */
+    private Transaction transaction;
+
+    /**
+     * The sink which the refits, evaluations and coefficient of determination computations are measured into.
+     * Nothing is measured while it is {@link MetricsSink#NOOP}.
      */
-    private Function<Double, Double> cachedRegressionEquation;
+    private MetricsSink metrics = MetricsSink.NOOP;
 
     /**
      * Constructor for the InterpolatingTreeMap.
@@ -56,18 +103,136 @@ public class InterpolatingTreeMap {
             RegressionEquationFactory regressionEquationFactory,
             Map.Entry<Double, Double>... entries
     ) {
-        this.regressionEquationFactory = Objects.requireNonNull(regressionEquationFactory);
+        this(Objects.requireNonNull(regressionEquationFactory), new SortedPointStore(entries.length));
 
-        validateSize(entries);
+        validateSize(entries.length);
 
         for (var entry : entries) {
-            dataPoints.put(
-                    Objects.requireNonNull(entry.getKey()),
-                    Objects.requireNonNull(entry.getValue())
-            );
+            putPoint(entry);
         }
+    }
+
+    /**
+     * Constructor which takes the points as parallel arrays of primitive x and y values, so that no
+     * {@link Map.Entry} or boxed {@link Double} needs to be allocated per point. Points sorted by ascending x,
+     * as loaded from time series, are copied in linear time, and the regression is fitted exactly once.
+     * See {@link #putAll(double[], double[])}.
+     *
+     * @param regressionEquationFactory The desired implementation of the RegressionEquationFactory.
+     * @param xs                        The x values of the points.
+     * @param ys                        The y values of the points, in the same order.
+     * @throws IllegalArgumentException If the arrays differ in length, or hold fewer distinct x values than the
+     *                                  minimum required by the factory.
+     * @throws NullPointerException     If the regressionEquationFactory or either array is null.
+     */
+    public InterpolatingTreeMap(RegressionEquationFactory regressionEquationFactory, double[] xs, double[] ys) {
+        this(Objects.requireNonNull(regressionEquationFactory), new SortedPointStore(xs.length));
+        putAll(xs, ys);
+        validateSize(dataPoints.size());
+    }
+
+    /**
+     * Constructor which takes the points as a pair of {@link DoubleBuffer DoubleBuffers}, of the x and y values
+     * remaining in each. See {@link #InterpolatingTreeMap(RegressionEquationFactory, double[], double[])}.
+     *
+     * @param regressionEquationFactory The desired implementation of the RegressionEquationFactory.
+     * @param xs                        The x values of the points.
+     * @param ys                        The y values of the points, in the same order.
+     * @throws IllegalArgumentException If the buffers differ in the number of values remaining, or hold fewer
+     *                                  distinct x values than the minimum required by the factory.
+     * @throws NullPointerException     If the regressionEquationFactory or either buffer is null.
+     */
+    public InterpolatingTreeMap(RegressionEquationFactory regressionEquationFactory, DoubleBuffer xs, DoubleBuffer ys) {
+        this(Objects.requireNonNull(regressionEquationFactory), new SortedPointStore(xs.remaining()));
+        putAll(xs, ys);
+        validateSize(dataPoints.size());
+    }
 
-        this.cachedRegressionEquation = regressionEquationFactory.equationFrom(dataPoints);
+    /**
+     * Constructor used by {@link #with} and {@link #bulkLoad}. Takes ownership of the given store, feeding
+     * any points already in it to the running statistics. Does not validate the size of the store.
+     *
+     * @param regressionEquationFactory The desired implementation of the RegressionEquationFactory.
+     * @param dataPoints                The store to be used by the InterpolatingTreeMap.
+     */
+    private InterpolatingTreeMap(RegressionEquationFactory regressionEquationFactory, SortedPointStore dataPoints) {
+        this.regressionEquationFactory = regressionEquationFactory;
+        this.dataPoints = dataPoints;
+        this.statistics = statisticsFrom(regressionEquationFactory, dataPoints);
+    }
+
+    /**
+     * Constructor which restores a persisted map from its points, statistics and regression function as they
+     * were saved, without accumulating or generating anything. Used by {@link InterpolatingTreeMapFile}.
+     *
+     * @param regressionEquationFactory The factory which produced the statistics and regression function.
+     * @param dataPoints                The store to be used by the InterpolatingTreeMap.
+     * @param statistics                The statistics of dataPoints, or null if the factory is not incremental.
+     * @param regressionEquation        The regression function of dataPoints, or null to generate it lazily.
+     */
+    InterpolatingTreeMap(
+            RegressionEquationFactory regressionEquationFactory,
+            SortedPointStore dataPoints,
+            RegressionStatistics statistics,
+            DoubleUnaryOperator regressionEquation
+    ) {
+        this.regressionEquationFactory = regressionEquationFactory;
+        this.dataPoints = dataPoints;
+        this.statistics = statistics;
+        this.cachedRegressionEquation = regressionEquation;
+    }
+
+    /**
+     * Creates an InterpolatingTreeMap by running the inputted loader against a {@link Transaction} on an
+     * initially empty map, then committing it. Points are passed as primitive doubles, so no
+     * {@link Map.Entry} array needs to be materialized, and the regression function is generated exactly
+     * once, when the load is committed. The running statistics are likewise accumulated only once the load is
+     * complete, in parallel for large loads (see {@link IncrementalRegressionEquationFactory#statisticsFrom}).
+     * For example:
+     * <pre>{@code
+     *  var map = InterpolatingTreeMap.bulkLoad(new LinRegEquationFactory(), load -> {
+     *      for (int i = 0; i < xs.length; i++) {
+     *          load.put(xs[i], ys[i]);
+     *      }
+     *  });
+     * }</pre>
+     *
+     * @param regressionEquationFactory The desired implementation of the RegressionEquationFactory.
+     * @param loader                    The function which adds the points to the map.
+     * @return The loaded InterpolatingTreeMap.
+     * @throws IllegalArgumentException If fewer points than the minimum required by the factory were loaded.
+     * @throws NullPointerException     If the regressionEquationFactory or loader is null.
+     */
+    public static InterpolatingTreeMap bulkLoad(
+            RegressionEquationFactory regressionEquationFactory,
+            Consumer<Transaction> loader
+    ) {
+        Objects.requireNonNull(loader);
+        var map = new InterpolatingTreeMap(Objects.requireNonNull(regressionEquationFactory), new SortedPointStore());
+        map.statistics = null;
+
+        Transaction load = map.begin(false);
+        loader.accept(load);
+
+        map.validateSize(map.dataPoints.size());
+        map.statistics = statisticsFrom(regressionEquationFactory, map.dataPoints);
+        load.commit();
+
+        return map;
+    }
+
+    /**
+     * Helper function for the constructors. Accumulates the running statistics of the inputted points if the
+     * factory is an {@link IncrementalRegressionEquationFactory}.
+     *
+     * @param regressionEquationFactory The factory to create the statistics from.
+     * @param dataPoints                The points to accumulate.
+     * @return The statistics of dataPoints, or null if the factory is not incremental.
+     */
+    private static RegressionStatistics statisticsFrom(RegressionEquationFactory regressionEquationFactory, PointView dataPoints) {
+        return regressionEquationFactory instanceof IncrementalRegressionEquationFactory incremental
+                ? incremental.statisticsFrom(dataPoints)
+                : null;
     }
 
     /**
@@ -75,17 +240,205 @@ public class InterpolatingTreeMap {
      * The minimum number of entries is taken from the {@link RegressionEquationFactory} implementation,
      * as different regressions require different numbers of entries to generate a function.
      *
-     * @param entries The entries whose size is to be validated.
+     * @param size The number of entries to be validated.
      * @throws IllegalArgumentException If there are less than the required minimum number of entries.
      */
-    private void validateSize(Map.Entry<Double, Double>[] entries) {
-        if (entries.length < regressionEquationFactory.getMinEntries())
+    private void validateSize(int size) {
+        if (size < regressionEquationFactory.getMinEntries())
             throw new IllegalArgumentException(
                     "Need at least" + regressionEquationFactory.getMinEntries() + "entr"
                             + (regressionEquationFactory.getMinEntries() != 1 ? "ies" : "y")
                             + " to generate a regression line for this factory.");
     }
 
+    /**
+     * Helper function which adds a single entry to dataPoints, and keeps the running statistics (if any)
+     * in step by retracting the point it replaces before adding the new one.
+     *
+     * @param entry The entry to be added.
+     * @throws NullPointerException If the entry, its key or its value is null.
+     */
+    private void putPoint(Map.Entry<Double, Double> entry) {
+        putPoint(Objects.requireNonNull(entry.getKey()), Objects.requireNonNull(entry.getValue()));
+    }
+
+    /**
+     * Helper function which adds a single point to dataPoints, and keeps the running statistics (if any)
+     * in step by retracting the point it replaces before adding the new one. Invalidates the cached
+     * regression function.
+     *
+     * @param x The x value of the point to be added.
+     * @param y The y value of the point to be added.
+     */
+    private void putPoint(double x, double y) {
+        int index = dataPoints.indexOf(x);
+
+        if (index >= 0) {
+            double previous = dataPoints.yAt(index);
+            if (statistics != null) {
+                statistics.remove(x, previous);
+            }
+            dataPoints.setY(index, y);
+
+            if (rangeIndex != null) {
+                rangeIndex.replaced(index, x, previous, y);
+            }
+        } else {
+            dataPoints.insert(-index - 1, x, y);
+
+            if (rangeIndex != null) {
+                if (-index - 1 == dataPoints.size() - 1) {
+                    rangeIndex.appended(x, y);
+                } else {
+                    rangeIndex.invalidate();
+                }
+            }
+        }
+
+        if (statistics != null) {
+            statistics.add(x, y);
+        }
+
+        cachedRegressionEquation = null;
+        cachedFitResult = null;
+        cachedEquationAsString = null;
+    }
+
+    /**
+     * Helper function which adds the inputted points to dataPoints in a single merge. The running statistics
+     * (if any) are kept in step point by point for small batches, and accumulated again from scratch, once, if
+     * the batch is at least as large as the dataset. Invalidates the cached regression function.
+     *
+     * @param xs     The x values of the points to be added.
+     * @param ys     The y values of the points to be added.
+     * @param length The number of points to be added.
+     */
+    private void putPoints(double[] xs, double[] ys, int length) {
+        boolean refit = statistics != null && length >= dataPoints.size();
+        RegressionStatistics running = refit ? null : statistics;
+
+        if (running != null) {
+            dataPoints.putAll(xs, ys, length, running::remove, running::add);
+        } else {
+            dataPoints.putAll(xs, ys, length, (x, y) -> {}, (x, y) -> {});
+        }
+
+        if (refit) {
+            statistics = statisticsFrom(regressionEquationFactory, dataPoints);
+        }
+        if (rangeIndex != null) {
+            rangeIndex.invalidate();
+        }
+
+        cachedRegressionEquation = null;
+        cachedFitResult = null;
+        cachedEquationAsString = null;
+    }
+
+    /**
+     * Helper function which removes the point at the inputted index from dataPoints, keeping the running
+     * statistics (if any) in step. Invalidates the cached regression function.
+     *
+     * @param index The index of the point to be removed.
+     */
+    private void removePoint(int index) {
+        double x = dataPoints.xAt(index);
+        double y = dataPoints.yAt(index);
+
+        dataPoints.removeAt(index);
+        if (statistics != null) {
+            statistics.remove(x, y);
+        }
+        if (rangeIndex != null) {
+            rangeIndex.invalidate();
+        }
+
+        cachedRegressionEquation = null;
+        cachedFitResult = null;
+        cachedEquationAsString = null;
+    }
+
+    /**
+     * Helper function which returns the cached regression function, generating it first if the dataset has
+     * changed since it was last generated.
+     *
+     * @return The regression function for the current dataPoints.
+     * @throws IllegalStateException If the function must be regenerated while a {@link Transaction} is open.
+     */
+    private DoubleUnaryOperator regressionEquation() {
+        DoubleUnaryOperator equation = cachedRegressionEquation;
+        if (equation == null) {
+            if (transaction != null) {
+                throw new IllegalStateException("Cannot generate a regression line while a transaction is open; commit it first");
+            }
+            equation = cachedRegressionEquation = refit();
+        }
+        return equation;
+    }
+
+    /**
+     * Helper function which generates the regression function, measuring it into the metrics sink and the
+     * {@link RefitEvent} of the JDK Flight Recorder.
+     *
+     * @return The regression function for the current dataPoints.
+     */
+    private DoubleUnaryOperator refit() {
+        return RefitEvent.measure(
+                metrics, regressionEquationFactory.getClass(), dataPoints.size(), this::generateRegressionEquation);
+    }
+
+    /**
+     * Captures the current dataset so that its regression can be generated later, on another thread, without
+     * accessing this map again. The running statistics are copied in O(1) if they are
+     * {@link MergeableRegressionStatistics}; otherwise the points are shared copy-on-write, also in O(1), and
+     * fitted in full. Used by the asynchronous mode of {@link ConcurrentInterpolatingTreeMap}.
+     *
+     * @param version The version of the snapshot to generate.
+     * @return A function which generates the snapshot of the dataset as it is now.
+     */
+    Supplier<RegressionSnapshot> detachedSnapshot(long version) {
+        MetricsSink metrics = this.metrics;
+        RegressionEquationFactory factory = regressionEquationFactory;
+        int size = dataPoints.size();
+
+        if (statistics instanceof MergeableRegressionStatistics running
+                && factory instanceof IncrementalRegressionEquationFactory incremental) {
+            var copy = (MergeableRegressionStatistics) incremental.newStatistics();
+            copy.merge(running);
+
+            return () -> RefitEvent.measure(metrics, factory.getClass(), size, () ->
+                    new RegressionSnapshot(copy.equation(), copy.getCoefficientOfDetermination(), size, version));
+        }
+
+        PointView points = dataPoints.share();
+        return () -> RefitEvent.measure(metrics, factory.getClass(), size, () -> {
+            FitResult fit = factory.fit(points);
+            return new RegressionSnapshot(fit.getEquation(), fit.getCoefficientOfDetermination(), size, version);
+        });
+    }
+
+    /**
+     * Helper function which measures an evaluation which started at the inputted time into the metrics sink.
+     *
+     * @param points The number of y-hat values predicted.
+     * @param start  The {@link System#nanoTime()} at which the evaluation started.
+     */
+    private void recordEvaluation(int points, long start) {
+        metrics.evaluation(regressionEquationFactory.getClass(), dataPoints.size(), points, System.nanoTime() - start);
+    }
+
+    /**
+     * Helper function which generates the regression function for the current dataPoints; from the running
+     * statistics in O(1) if they are present, otherwise from a full pass of the factory over dataPoints.
+     *
+     * @return The regression function for the current dataPoints.
+     */
+    private DoubleUnaryOperator generateRegressionEquation() {
+        return statistics != null
+                ? statistics.equation()
+                : regressionEquationFactory.equationFrom(dataPoints);
+    }
+
     /**
      * Returns the y-hat value for the inputted x value based on the cached regression function.
      * The y-hat is calculated from the cached regression function regardless of if the inputted value is in
@@ -95,7 +448,98 @@ public class InterpolatingTreeMap {
      * @return The y-hat value for the inputted x value.
      */
     public Double get(double x) {
-        return cachedRegressionEquation.apply(x);
+        return getAsDouble(x);
+    }
+
+    /**
+     * Returns the y-hat value for the inputted x value based on the cached regression function, as a
+     * primitive double. Behaves exactly like {@link #get(double)}, but does not box the result.
+     *
+     * @param x The x value to be predicted.
+     * @return The y-hat value for the inputted x value.
+     */
+    public double getAsDouble(double x) {
+        if (metrics == MetricsSink.NOOP) {
+            return regressionEquation().applyAsDouble(x);
+        }
+
+        long start = System.nanoTime();
+        double y = regressionEquation().applyAsDouble(x);
+        recordEvaluation(1, start);
+        return y;
+    }
+
+    /**
+     * Predicts the y-hat value of every x value in xs, writing the y-hat at index i of xs into index i
+     * of out. No objects are allocated per point. xs and out may be the same array, in which case the
+     * x values are overwritten by their predictions.
+     * <p>
+     * If the regression function is a {@link Polynomial}, the evaluation is vectorized when the Vector API
+     * is available.
+     *
+     * @param xs  The x values to be predicted.
+     * @param out The array to write the y-hat values into. Must be at least as long as xs.
+     * @throws IllegalArgumentException If out is shorter than xs.
+     * @throws NullPointerException     If xs or out is null.
+     */
+    public void get(double[] xs, double[] out) {
+        if (out.length < xs.length)
+            throw new IllegalArgumentException(
+                    "Output array of length " + out.length + " is shorter than the input of length " + xs.length);
+
+        long start = metrics != MetricsSink.NOOP ? System.nanoTime() : 0L;
+        DoubleUnaryOperator equation = regressionEquation();
+        if (equation instanceof Polynomial polynomial) {
+            polynomial.evaluate(xs, out);
+        } else {
+            for (int i = 0; i < xs.length; i++) {
+                out[i] = equation.applyAsDouble(xs[i]);
+            }
+        }
+
+        if (metrics != MetricsSink.NOOP) {
+            recordEvaluation(xs.length, start);
+        }
+    }
+
+    /**
+     * Predicts the y-hat value of every remaining x value in xs, writing the y-hat values into out in the
+     * same order. The positions of both buffers are advanced by the number of values predicted. No objects
+     * are allocated per point.
+     *
+     * @param xs  The buffer holding the x values to be predicted.
+     * @param out The buffer to write the y-hat values into.
+     * @throws BufferOverflowException If out has fewer remaining values than xs.
+     * @throws ReadOnlyBufferException If out is read-only.
+     * @throws NullPointerException             If xs or out is null.
+     */
+    public void get(DoubleBuffer xs, DoubleBuffer out) {
+        if (out.remaining() < xs.remaining()) {
+            throw new BufferOverflowException();
+        }
+
+        long start = metrics != MetricsSink.NOOP ? System.nanoTime() : 0L;
+        int points = xs.remaining();
+        DoubleUnaryOperator equation = regressionEquation();
+        while (xs.hasRemaining()) {
+            out.put(equation.applyAsDouble(xs.get()));
+        }
+
+        if (metrics != MetricsSink.NOOP) {
+            recordEvaluation(points, start);
+        }
+    }
+
+    /**
+     * Returns a stream of the y-hat values of the x values in the inputted stream, in the same order.
+     * The stream is lazy, and uses the regression function cached at the time of this call.
+     *
+     * @param xs The stream of x values to be predicted.
+     * @return A stream of the corresponding y-hat values.
+     * @throws NullPointerException If xs is null.
+     */
+    public DoubleStream get(DoubleStream xs) {
+        return xs.map(regressionEquation());
     }
 
     /**
@@ -107,7 +551,8 @@ public class InterpolatingTreeMap {
      * @return An {@link Optional} of the corresponding y value.
      */
     public Optional<Double> getExact(double x) {
-        return Optional.ofNullable(dataPoints.get(x));
+        int index = dataPoints.indexOf(x);
+        return index >= 0 ? Optional.of(dataPoints.yAt(index)) : Optional.empty();
     }
 
     /**
@@ -115,29 +560,110 @@ public class InterpolatingTreeMap {
      * dataPoints. Concrete implementations of the {@link RegressionEquationFactory} interface are encouraged
      * to format the equation as follows, but it is not required nor guaranteed.
      * <pre>ŷ = a + bx + cx² + ...</pre>
-     * Implementations return an {@link Optional}, but the equation will always be present here as the
-     * function is always created as soon as this object is constructed.
+     * The equation is only formatted when requested, and is then cached until dataPoints are next modified.
      *
      * @return A {@link String} version of the regression equation.
      */
     public String getEquationAsString() {
-        return regressionEquationFactory.equationAsString(dataPoints);
+        String equationAsString = cachedEquationAsString;
+        if (equationAsString == null) {
+            regressionEquation();
+            equationAsString = cachedEquationAsString = statistics != null
+                    ? statistics.equationAsString()
+                    : getFitResult().getEquationAsString();
+        }
+        return equationAsString;
+    }
+
+    /**
+     * Returns the {@link FitResult} of the cached regression function: its coefficients, coefficient of
+     * determination, sums of squares, residual standard error and extreme residuals. The result is computed in a
+     * single pass over dataPoints, then cached until the dataset is next added to or detracted from.
+     *
+     * @return The {@link FitResult} of the cached regression function.
+     * @throws IllegalStateException If the regression function must be regenerated while a {@link Transaction}
+     *                               is open.
+     */
+    public FitResult getFitResult() {
+        FitResult fitResult = cachedFitResult;
+        if (fitResult == null) {
+            fitResult = cachedFitResult = FitResult.of(regressionEquationFactory, regressionEquation(), dataPoints);
+        }
+        return fitResult;
     }
 
     /**
-     * Adds the inputted entries to dataPoints, then regenerates the cached regression function
-     * to account for the new points. Can not be null.
+     * Adds the inputted entries to dataPoints, then invalidates the cached regression function
+     * so that it is regenerated on the next read to account for the new points. Can not be null.
      *
      * @param entries The entries to be added.
-     * @throws NullPointerException if any entry is null.
+     * @throws IllegalStateException If a {@link Transaction} is open on this map.
+     * @throws NullPointerException  if any entry is null.
      */
     @SafeVarargs
     public final void put(Map.Entry<Double, Double>... entries) {
         Objects.requireNonNull(entries);
+        checkNoTransaction();
         for (var entry : entries) {
-            dataPoints.put(entry.getKey(), entry.getValue());
+            putPoint(entry);
         }
-        cachedRegressionEquation = regressionEquationFactory.equationFrom(dataPoints);
+    }
+
+    /**
+     * Adds the inputted point to dataPoints, replacing the y value if the x value is already present, then
+     * invalidates the cached regression function so that it is regenerated on the next read.
+     *
+     * @param x The x value of the point to be added.
+     * @param y The y value of the point to be added.
+     * @throws IllegalStateException If a {@link Transaction} is open on this map.
+     */
+    public void put(double x, double y) {
+        checkNoTransaction();
+        putPoint(x, y);
+    }
+
+    /**
+     * Adds the inputted points, passed as parallel arrays of primitive x and y values, to dataPoints, replacing
+     * the y value of any x value already present, then invalidates the cached regression function so that it
+     * is regenerated once, on the next read. If several points share an x value, the last one is kept.
+     * <p>
+     * Points sorted by ascending x are merged into dataPoints in linear time, and appended with a single copy if
+     * they all lie after its greatest x value; unsorted points are sorted first.
+     *
+     * @param xs The x values of the points to be added.
+     * @param ys The y values of the points to be added, in the same order.
+     * @throws IllegalArgumentException If the arrays differ in length.
+     * @throws IllegalStateException    If a {@link Transaction} is open on this map.
+     * @throws NullPointerException     If either array is null.
+     */
+    public void putAll(double[] xs, double[] ys) {
+        if (xs.length != ys.length)
+            throw new IllegalArgumentException("Column lengths differ: " + xs.length + " and " + ys.length);
+        checkNoTransaction();
+
+        putPoints(xs, ys, xs.length);
+    }
+
+    /**
+     * Adds the x and y values remaining in the inputted {@link DoubleBuffer DoubleBuffers} to dataPoints. The
+     * positions of the buffers are left unchanged. See {@link #putAll(double[], double[])}.
+     *
+     * @param xs The x values of the points to be added.
+     * @param ys The y values of the points to be added, in the same order.
+     * @throws IllegalArgumentException If the buffers differ in the number of values remaining.
+     * @throws IllegalStateException    If a {@link Transaction} is open on this map.
+     * @throws NullPointerException     If either buffer is null.
+     */
+    public void putAll(DoubleBuffer xs, DoubleBuffer ys) {
+        if (xs.remaining() != ys.remaining())
+            throw new IllegalArgumentException("Column lengths differ: " + xs.remaining() + " and " + ys.remaining());
+        checkNoTransaction();
+
+        double[] x = new double[xs.remaining()];
+        double[] y = new double[ys.remaining()];
+        xs.get(xs.position(), x);
+        ys.get(ys.position(), y);
+        putPoints(x, y, x.length);
     }
 
     /**
@@ -149,32 +675,41 @@ public class InterpolatingTreeMap {
      *      .with(new LinearRegressionEquationFactory())
      *      .get(x);
      * }</pre>
+     * The duplicate shares the dataset with this map in O(1), and the points are only copied once either
+     * map is next modified.
      *
      * @param regressionEquationFactory The new {@link RegressionEquationFactory} to be used.
      * @throws NullPointerException if regressionEquationFactory is null.
      */
     public InterpolatingTreeMap with(RegressionEquationFactory regressionEquationFactory) {
-        return new InterpolatingTreeMap(
-                Objects.requireNonNull(regressionEquationFactory),
-                dataPoints.entrySet().toArray(new Map.Entry[0])
+        Objects.requireNonNull(regressionEquationFactory);
+        validateSize(dataPoints.size());
+
+        var copy = new InterpolatingTreeMap(
+                regressionEquationFactory,
+                dataPoints.share()
         );
+        copy.metrics = metrics;
+        return copy;
     }
 
     /**
-     * If present, removes the inputted value from dataPoints, then regenerates the cached regression function
-     * to account for the modified dataset. Otherwise, this function does nothing.
+     * If present, removes the inputted value from dataPoints, then invalidates the cached regression function
+     * so that it is regenerated on the next read. Otherwise, this function does nothing.
      *
      * @param x The x value of the point to remove.
      * @throws IllegalStateException If removing a point would make the dataset smaller than the minimum size
-     *                               required by the {@link RegressionEquationFactory} implementation to generate a regression equation.
+     *                               required by the {@link RegressionEquationFactory} implementation to generate a regression equation,
+     *                               or a {@link Transaction} is open on this map.
      */
     public void remove(double x) {
-        if (dataPoints.containsKey(x)) {
+        checkNoTransaction();
+        int index = dataPoints.indexOf(x);
+        if (index >= 0) {
             if (dataPoints.size() == regressionEquationFactory.getMinEntries()) {
                 throw new IllegalStateException("Cannot remove last data point(s); add another point first");
             }
-            dataPoints.remove(x);
-            cachedRegressionEquation = regressionEquationFactory.equationFrom(dataPoints);
+            removePoint(index);
         }
     }
 
@@ -184,7 +719,84 @@ public class InterpolatingTreeMap {
      * @return The coefficient of determination (R^2) of the regression function.
      */
     public double getCoefficientOfDetermination() {
-        return regressionEquationFactory.getCoefficientOfDetermination(dataPoints);
+        long start = metrics != MetricsSink.NOOP ? System.nanoTime() : 0L;
+
+        regressionEquation();
+        double coefficientOfDetermination = statistics != null
+                ? statistics.getCoefficientOfDetermination()
+                : getFitResult().getCoefficientOfDetermination();
+
+        if (metrics != MetricsSink.NOOP) {
+            metrics.coefficientOfDetermination(regressionEquationFactory.getClass(), dataPoints.size(), System.nanoTime() - start);
+        }
+        return coefficientOfDetermination;
+    }
+
+    /**
+     * Returns the {@link RegressionStatistics} of only the points whose x values lie between fromX and toX, both
+     * inclusive, from which the regression equation and coefficient of determination of that range are produced.
+     * The statistics are detached from this map.
+     * <p>
+     * If the statistics of the {@link RegressionEquationFactory} are {@link MergeableRegressionStatistics}, the first
+     * query builds an index of the statistics of consecutive blocks of points in O(n), after which each query costs
+     * O(log n), regardless of the size of the range. Replacing a point or appending one after the greatest x value
+     * keeps the index up to date in O(log n); inserting or removing any other point rebuilds it on the next query.
+     * Otherwise, the statistics are accumulated from the points within the range.
+     *
+     * @param fromX The lowest x value of the range.
+     * @param toX   The highest x value of the range.
+     * @return The statistics of the points within the range.
+     * @throws IllegalArgumentException      If there are fewer points within the range than the minimum required by
+     *                                       the {@link RegressionEquationFactory} implementation.
+     * @throws UnsupportedOperationException If the {@link RegressionEquationFactory} is not an
+     *                                       {@link IncrementalRegressionEquationFactory}.
+     */
+    public RegressionStatistics fitRange(double fromX, double toX) {
+        if (!(regressionEquationFactory instanceof IncrementalRegressionEquationFactory incremental))
+            throw new UnsupportedOperationException(
+                    regressionEquationFactory.getClass().getName() + " does not support range fits");
+
+        RegressionStatistics range;
+        if (RangeIndex.supports(incremental)) {
+            if (rangeIndex == null) {
+                rangeIndex = new RangeIndex(incremental, dataPoints);
+            }
+            range = rangeIndex.query(fromX, toX);
+        } else {
+            range = incremental.statisticsFrom(dataPoints.range(fromX, toX));
+        }
+
+        if (range.size() < regressionEquationFactory.getMinEntries())
+            throw new IllegalArgumentException("Need at least " + regressionEquationFactory.getMinEntries()
+                    + " points in [" + fromX + ", " + toX + "] to generate a regression line, found " + range.size());
+
+        return range;
+    }
+
+    /**
+     * Sets the sink which the refits, evaluations and coefficient of determination computations of this map are
+     * measured into, and which maps created with {@link #with} inherit. Maps measure nothing by default.
+     *
+     * @param metrics The sink to measure into, or {@link MetricsSink#NOOP} to stop measuring.
+     * @throws NullPointerException If metrics is null.
+     */
+    public void setMetricsSink(MetricsSink metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Returns a compact {@link RegressionSummary} of the regression state of this map, which can be merged with
+     * the summaries of other maps to produce the regression of their combined datasets without moving any points.
+     *
+     * @return The summary of the regression state of this map.
+     * @throws UnsupportedOperationException If the factory does not produce {@link MergeableRegressionStatistics}.
+     */
+    public RegressionSummary summary() {
+        if (statistics == null)
+            throw new UnsupportedOperationException(regressionEquationFactory.getClass().getName() + " does not support summaries");
+
+        return RegressionSummary.of(regressionEquationFactory, statistics,
+                dataPoints.xAt(0), dataPoints.xAt(dataPoints.size() - 1));
     }
 
     /**
@@ -199,21 +811,53 @@ public class InterpolatingTreeMap {
 
     /**
      * Returns the regression {@link Function} derived from the current points. Takes an inputted x value
-     * as a double, and returns the predicted y-hat as a double as well.
+     * as a double, and returns the predicted y-hat as a double as well. This is a boxed adapter over
+     * {@link #getRegressionOperator()}; prefer the latter on hot paths.
      *
      * @return The regression {@link Function} derived from the current points.
      */
     public Function<Double, Double> getRegressionEquation() {
-        return regressionEquationFactory.equationFrom(dataPoints);
+        return regressionEquation()::applyAsDouble;
+    }
+
+    /**
+     * Returns the regression function derived from the current points as a {@link DoubleUnaryOperator},
+     * which predicts y-hat values without boxing. The operator is detached from this map; later changes
+     * to the dataset do not affect it.
+     *
+     * @return The regression {@link DoubleUnaryOperator} derived from the current points.
+     */
+    public DoubleUnaryOperator getRegressionOperator() {
+        return regressionEquation();
+    }
+
+    /**
+     * Returns a read-only {@link NavigableMap} snapshot of the dataset. The snapshot shares the points with this
+     * map in O(1), and is unaffected by later changes to it; the points are only copied once this map is next
+     * modified. Sub-maps, descending maps and key sets of the snapshot are views, and copy nothing either.
+     *
+     * @return A read-only {@link NavigableMap} snapshot of the dataset.
+     */
+    public NavigableMap<Double, Double> getDataPoints() {
+        return new PointViewMap(dataPoints.share());
+    }
+
+    /**
+     * Returns a read-only view of the dataPoints, valid until the map is next modified.
+     *
+     * @return A view of the dataPoints.
+     */
+    PointView dataPointsView() {
+        return dataPoints;
     }
 
     /**
-     * Returns a {@link TreeMap} copy of the dataset.
+     * Returns the running statistics of the dataPoints, or null if the factory is not incremental.
      *
-     * @return A {@link TreeMap} copy of the dataset.
+     * @return The running statistics of the dataPoints.
      */
-    public TreeMap<Double, Double> getDataPoints() {
-        return (TreeMap<Double, Double>) dataPoints.clone();
+    RegressionStatistics statistics() {
+        return statistics;
     }
 
     /**
@@ -235,5 +879,196 @@ public class InterpolatingTreeMap {
     public int minimumDatasetSize() {
         return regressionEquationFactory.getMinEntries();
     }
-}
 
+    /**
+     * Opens a {@link Transaction} on this map, through which many points can be added and removed before the
+     * regression function is regenerated once, on {@link Transaction#commit()}. While the transaction is open,
+     * the minimum dataset size is not enforced, and reading the regression throws an
+     * {@link IllegalStateException} once the dataset has changed. So that every change can be rolled back,
+     * points can then only be added and removed through the transaction; adding or removing them through the
+     * map itself throws an {@link IllegalStateException}. The transaction must be closed with either
+     * {@link Transaction#commit()} or {@link Transaction#rollback()}.
+     *
+     * @return The opened {@link Transaction}.
+     * @throws IllegalStateException If a transaction is already open on this map.
+     */
+    public Transaction begin() {
+        return begin(true);
+    }
+
+    /**
+     * Helper function which opens a {@link Transaction} on this map.
+     *
+     * @param journaled Whether the transaction records the changes needed to roll it back.
+     * @return The opened {@link Transaction}.
+     * @throws IllegalStateException If a transaction is already open on this map.
+     */
+    private Transaction begin(boolean journaled) {
+        if (transaction != null) {
+            throw new IllegalStateException("A transaction is already open on this map");
+        }
+        return transaction = new Transaction(journaled);
+    }
+
+    /**
+     * Helper function which rejects a change made through the map itself while a {@link Transaction} is open,
+     * as it would bypass the undo log of the transaction.
+     *
+     * @throws IllegalStateException If a transaction is open on this map.
+     */
+    private void checkNoTransaction() {
+        if (transaction != null) {
+            throw new IllegalStateException("Cannot change the map directly while a transaction is open; use the transaction, or commit it first");
+        }
+    }
+
+    /**
+     * A batch of changes to an {@link InterpolatingTreeMap}, opened with {@link InterpolatingTreeMap#begin()}.
+     * Changes are applied to the dataset immediately, but the minimum dataset size is only checked, and the
+     * regression function only regenerated, when the transaction is committed. Alternatively, the changes can
+     * be undone with {@link #rollback()}.
+     */
+    public final class Transaction {
+
+        /**
+         * Whether the undo log below is recorded. False only for the transaction of {@link #bulkLoad}, whose
+         * changes are never rolled back.
+         */
+        private final boolean journaled;
+
+        /**
+         * The undo log: for every change, in order, the x value, whether a point was present at that x value
+         * before the change, and if so its y value.
+         */
+        private double[] undoXs = new double[0];
+        private double[] undoYs = new double[0];
+        private boolean[] undoPresent = new boolean[0];
+        private int undoSize;
+
+        private Transaction(boolean journaled) {
+            this.journaled = journaled;
+        }
+
+        /**
+         * Helper function which records the state of the inputted x value in the undo log, before it is changed.
+         *
+         * @param x The x value about to be changed.
+         */
+        private void journal(double x) {
+            if (!journaled) {
+                return;
+            }
+
+            if (undoSize == undoXs.length) {
+                int capacity = undoXs.length + (undoXs.length >> 1) + 8;
+                undoXs = Arrays.copyOf(undoXs, capacity);
+                undoYs = Arrays.copyOf(undoYs, capacity);
+                undoPresent = Arrays.copyOf(undoPresent, capacity);
+            }
+
+            int index = dataPoints.indexOf(x);
+            undoXs[undoSize] = x;
+            undoPresent[undoSize] = index >= 0;
+            undoYs[undoSize] = index >= 0 ? dataPoints.yAt(index) : 0.0;
+            undoSize++;
+        }
+
+        /**
+         * Adds the inputted point to the map, replacing the y value if the x value is already present.
+         *
+         * @param x The x value of the point to be added.
+         * @param y The y value of the point to be added.
+         * @return This transaction.
+         * @throws IllegalStateException If this transaction has already been committed or rolled back.
+         */
+        public Transaction put(double x, double y) {
+            checkOpen();
+            journal(x);
+            putPoint(x, y);
+            return this;
+        }
+
+        /**
+         * If present, removes the inputted value from the map. Otherwise, does nothing.
+         *
+         * @param x The x value of the point to remove.
+         * @return This transaction.
+         * @throws IllegalStateException If this transaction has already been committed or rolled back.
+         */
+        public Transaction remove(double x) {
+            checkOpen();
+            int index = dataPoints.indexOf(x);
+            if (index >= 0) {
+                journal(x);
+                removePoint(index);
+            }
+            return this;
+        }
+
+        /**
+         * Commits this transaction, regenerating the regression function of the map exactly once.
+         * If the dataset is below the minimum size, the transaction stays open so that more points can be added,
+         * or it can be rolled back.
+         *
+         * @throws IllegalStateException If this transaction has already been committed or rolled back, or the
+         *                               dataset is smaller than the minimum size required by the factory.
+         */
+        public void commit() {
+            commit(true);
+        }
+
+        /**
+         * Commits this transaction, optionally without regenerating the regression function, which is then
+         * regenerated on the next read as after any other change. See {@link #commit()}.
+         *
+         * @param regenerate Whether to regenerate the regression function straight away.
+         */
+        void commit(boolean regenerate) {
+            checkOpen();
+            if (dataPoints.size() < regressionEquationFactory.getMinEntries()) {
+                throw new IllegalStateException("Cannot commit with fewer than "
+                        + regressionEquationFactory.getMinEntries() + " data points; add another point first");
+            }
+
+            undoXs = undoYs = new double[0];
+            undoPresent = new boolean[0];
+            transaction = null;
+            if (regenerate) {
+                regressionEquation();
+            }
+        }
+
+        /**
+         * Rolls back this transaction, undoing all of its changes in reverse order, and closes it.
+         *
+         * @throws IllegalStateException If this transaction has already been committed or rolled back, or was
+         *                               opened by {@link #bulkLoad}, which cannot be rolled back.
+         */
+        public void rollback() {
+            checkOpen();
+            if (!journaled) {
+                throw new IllegalStateException("A bulk load cannot be rolled back");
+            }
+
+            for (int i = undoSize - 1; i >= 0; i--) {
+                if (undoPresent[i]) {
+                    putPoint(undoXs[i], undoYs[i]);
+                } else {
+                    int index = dataPoints.indexOf(undoXs[i]);
+                    if (index >= 0) {
+                        removePoint(index);
+                    }
+                }
+            }
+
+            undoSize = 0;
+            transaction = null;
+        }
+
+        private void checkOpen() {
+            if (transaction != this) {
+                throw new IllegalStateException("Transaction has already been committed or rolled back");
+            }
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package very.bored.interpolatingtreemap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Binary persistence for an {@link InterpolatingTreeMap}, made of a snapshot file and an append-only journal.
+ * <p>
+ * The snapshot holds a header, with the factory type, the coefficients of the regression function (if it is a
+ * {@link Polynomial}) and the moments of the running statistics (if they are {@link MergeableRegressionStatistics}),
+ * followed by the x and y values of every point as two sorted, little-endian {@code double} columns. A snapshot is
+ * reopened through a {@link MappedByteBuffer}: the restored map reads its points straight from the mapping, and
+ * takes its statistics from the header, so it is queryable immediately, with no pass over the points. Its regression
+ * function is created from those statistics, or taken from the header if the factory has none. The points are only
+ * copied onto the heap when the map is first modified.
+ * <p>
+ * The journal, stored next to the snapshot with a {@code .journal} suffix, records every put and remove made
+ * through an open {@code InterpolatingTreeMapFile} since the last {@link #checkpoint()}, and is replayed, as a
+ * single {@link InterpolatingTreeMap.Transaction}, when the file is reopened. A change is appended to the journal
+ * before it is made to the map, and the journal is only truncated once the new snapshot, and the directory entry
+ * renaming it into place, have been forced to the storage device. Replaying is idempotent, so a crash between
+ * writing a snapshot and truncating the journal loses nothing.
+ * <p>
+ * Every record of the journal carries a CRC32C checksum. Replaying stops at the first record which is torn or
+ * fails its checksum, such as the unwritten tail of a journal which a crash left extended, and discards it along
+ * with every record after it.
+ * <p>
+ * Note that usage of this class is NOT synchronized, and that changes made directly to {@link #map()} are not
+ * journaled.
+ */
+public final class InterpolatingTreeMapFile implements Closeable {
+
+    /**
+     * The magic number which starts every snapshot, "ITMF".
+     */
+    private static final int MAGIC = 0x49544D46;
+
+    /**
+     * The version of the snapshot format. Snapshots of any other version are rejected when read.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte PUT = 1, REMOVE = 2;
+    private static final int PAYLOAD_BYTES = 1 + 2 * Double.BYTES;
+    private static final int RECORD_BYTES = PAYLOAD_BYTES + Integer.BYTES;
+
+    private final Path snapshot;
+    private final InterpolatingTreeMap map;
+    private final FileChannel journal;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32C checksum = new CRC32C();
+
+    private InterpolatingTreeMapFile(Path snapshot, InterpolatingTreeMap map, FileChannel journal) {
+        this.snapshot = snapshot;
+        this.map = map;
+        this.journal = journal;
+    }
+
+    /**
+     * Saves the inputted map to a new snapshot, then opens it, along with an empty journal.
+     *
+     * @param file The path of the snapshot.
+     * @param map  The map to save.
+     * @return The opened file, whose {@link #map()} is the inputted map.
+     * @throws IOException If the snapshot or journal cannot be written.
+     */
+    public static InterpolatingTreeMapFile create(Path file, InterpolatingTreeMap map) throws IOException {
+        save(map, file);
+
+        FileChannel journal = FileChannel.open(journalOf(file), CREATE, WRITE, TRUNCATE_EXISTING);
+        return new InterpolatingTreeMapFile(file, map, journal);
+    }
+
+    /**
+     * Opens an existing snapshot, replaying its journal (if any) onto the restored map.
+     *
+     * @param file                      The path of the snapshot.
+     * @param regressionEquationFactory A factory of the same type and configuration as the one that was saved.
+     * @return The opened file.
+     * @throws IOException If the snapshot or journal cannot be read, or was not saved with the same type of factory.
+     */
+    public static InterpolatingTreeMapFile open(Path file, RegressionEquationFactory regressionEquationFactory) throws IOException {
+        InterpolatingTreeMap map = load(file, regressionEquationFactory);
+
+        FileChannel journal = FileChannel.open(journalOf(file), CREATE, READ, WRITE);
+        try {
+            replay(journal, map);
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        return new InterpolatingTreeMapFile(file, map, journal);
+    }
+
+    /**
+     * Returns the map persisted by this file.
+     *
+     * @return The map persisted by this file.
+     */
+    public InterpolatingTreeMap map() {
+        return map;
+    }
+
+    /**
+     * Appends the inputted point to the journal, then adds it to the map. If either fails, the journal is truncated
+     * back to before the record, and the map is left unchanged.
+     *
+     * @param x The x value of the point.
+     * @param y The y value of the point.
+     * @throws IOException If the journal cannot be written.
+     * @see InterpolatingTreeMap#put(double, double)
+     */
+    public void put(double x, double y) throws IOException {
+        long start = append(PUT, x, y);
+        try {
+            map.put(x, y);
+        } catch (RuntimeException | Error e) {
+            truncate(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the removal of the inputted value to the journal, then removes it from the map, if present. If either
+     * fails, the journal is truncated back to before the record, and the map is left unchanged.
+     *
+     * @param x The x value of the point to remove.
+     * @throws IOException           If the journal cannot be written.
+     * @throws IllegalStateException If the map is at its minimum size.
+     * @see InterpolatingTreeMap#remove(double)
+     */
+    public void remove(double x) throws IOException {
+        long start = append(REMOVE, x, 0.0);
+        try {
+            map.remove(x);
+        } catch (RuntimeException | Error e) {
+            truncate(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Forces every journaled change to the storage device.
+     *
+     * @throws IOException If the journal cannot be forced.
+     */
+    public void sync() throws IOException {
+        journal.force(false);
+    }
+
+    /**
+     * Saves the map to a new snapshot, replacing the old one atomically and durably, then truncates the journal.
+     *
+     * @throws IOException If the snapshot or journal cannot be written.
+     */
+    public void checkpoint() throws IOException {
+        save(map, snapshot);
+        journal.truncate(0);
+        journal.position(0);
+    }
+
+    /**
+     * Closes the journal. The snapshot remains mapped for as long as the map reads from it.
+     *
+     * @throws IOException If the journal cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * Saves the inputted map to a snapshot. The snapshot is written to a temporary file first, which then
+     * replaces any existing snapshot atomically. Both the snapshot and the directory holding it are forced to the
+     * storage device before this returns, so that the replacement survives a crash.
+     *
+     * @param map  The map to save.
+     * @param file The path of the snapshot.
+     * @throws IOException           If the snapshot cannot be written.
+     * @throws IllegalStateException If the map has an open {@link InterpolatingTreeMap.Transaction} with changes.
+     */
+    public static void save(InterpolatingTreeMap map, Path file) throws IOException {
+        DoubleUnaryOperator equation = map.getRegressionOperator();
+        double[] coefficients = equation instanceof Polynomial polynomial ? polynomial.coefficients() : null;
+        double[] moments = map.statistics() instanceof MergeableRegressionStatistics mergeable ? mergeable.moments() : null;
+        byte[] factoryType = map.getRegressionEquationFactory().getClass().getName().getBytes(StandardCharsets.UTF_8);
+        PointView points = map.dataPointsView();
+
+        int headerBytes = align(4 * Integer.BYTES + factoryType.length
+                + Integer.BYTES + Double.BYTES * (coefficients != null ? coefficients.length : 0)
+                + Integer.BYTES + Double.BYTES * (moments != null ? moments.length : 0));
+
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(points.size()).putInt(factoryType.length).put(factoryType);
+        putArray(header, coefficients);
+        putArray(header, moments);
+        header.clear();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int column = 0; column < 2; column++) {
+                for (int i = 0; i < points.size(); i++) {
+                    if (!chunk.hasRemaining()) {
+                        writeFully(channel, chunk.flip());
+                        chunk.clear();
+                    }
+                    chunk.putDouble(column == 0 ? points.xAt(i) : points.yAt(i));
+                }
+            }
+            writeFully(channel, chunk.flip());
+
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        forceDirectory(file);
+    }
+
+    /**
+     * Helper function which forces the directory entries of the directory holding the inputted file to the storage
+     * device, so that a rename into it is durable. Windows neither allows a directory to be opened nor needs it.
+     */
+    private static void forceDirectory(Path file) throws IOException {
+        if (System.getProperty("os.name").toLowerCase(Locale.ROOT).startsWith("windows")) {
+            return;
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Restores a map from a snapshot, without its journal. The points are read in place from a read-only mapping
+     * of the snapshot, and the statistics, or else the regression function, are taken from its header where possible.
+     *
+     * @param file                      The path of the snapshot.
+     * @param regressionEquationFactory A factory of the same type and configuration as the one that was saved.
+     * @return The restored map.
+     * @throws IOException If the snapshot cannot be read, or was not saved with the same type of factory.
+     */
+    public static InterpolatingTreeMap load(Path file, RegressionEquationFactory regressionEquationFactory) throws IOException {
+        Objects.requireNonNull(regressionEquationFactory);
+
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Snapshot " + file + " is too large to map");
+
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        ByteBuffer buffer = mapping.order(ByteOrder.LITTLE_ENDIAN);
+        double[] coefficients, moments;
+        int size;
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException(file + " is not an InterpolatingTreeMap snapshot");
+
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported snapshot version " + version + ", expected " + FORMAT_VERSION);
+
+            size = buffer.getInt();
+            byte[] factoryType = new byte[buffer.getInt()];
+            buffer.get(factoryType);
+
+            String expected = regressionEquationFactory.getClass().getName();
+            String actual = new String(factoryType, StandardCharsets.UTF_8);
+            if (!expected.equals(actual))
+                throw new IOException("Snapshot of " + actual + " cannot be read by " + expected);
+
+            coefficients = getArray(buffer);
+            moments = getArray(buffer);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt snapshot " + file, e);
+        }
+
+        int columns = align(buffer.position());
+        if (size < regressionEquationFactory.getMinEntries() || columns + 2L * Double.BYTES * size != buffer.limit())
+            throw new IOException("Corrupt snapshot " + file);
+
+        int columnBytes = Double.BYTES * size;
+        DoubleBuffer xs = buffer.slice(columns, columnBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        DoubleBuffer ys = buffer.slice(columns + columnBytes, columnBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        SortedPointStore dataPoints = new SortedPointStore(xs, ys);
+
+        RegressionStatistics statistics = null;
+        if (regressionEquationFactory instanceof IncrementalRegressionEquationFactory incremental) {
+            statistics = incremental.newStatistics();
+            if (moments != null && statistics instanceof MergeableRegressionStatistics mergeable) {
+                try {
+                    mergeable.restore(moments);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Snapshot was saved by a differently configured " + incremental.getClass().getName(), e);
+                }
+            } else {
+                statistics = incremental.statisticsFrom(dataPoints);
+            }
+        }
+
+        // The equation of an incremental factory is created from its statistics in O(1), as the factory would, rather
+        // than rebuilt from the coefficients, which would lose anything it attaches to its equations.
+        DoubleUnaryOperator equation = coefficients != null && statistics == null ? new Polynomial(coefficients) : null;
+        return new InterpolatingTreeMap(regressionEquationFactory, dataPoints, statistics, equation);
+    }
+
+    /**
+     * Helper function which applies every valid record of the journal to the map, as a single transaction, then
+     * truncates the journal before the first record which is torn or fails its checksum, if any. Leaves the journal
+     * positioned at its end, ready to be appended to.
+     */
+    private static void replay(FileChannel journal, InterpolatingTreeMap map) throws IOException {
+        long complete = journal.size() / RECORD_BYTES * RECORD_BYTES;
+        long valid = 0;
+
+        if (complete > 0) {
+            ByteBuffer records = ByteBuffer.allocate(RECORD_BYTES * 4096).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C checksum = new CRC32C();
+            InterpolatingTreeMap.Transaction transaction = map.begin();
+            journal.position(0);
+
+            read:
+            while (valid < complete) {
+                records.clear().limit((int) Math.min(records.capacity(), complete - valid));
+                while (records.hasRemaining()) {
+                    if (journal.read(records) < 0)
+                        throw new IOException("Journal ended unexpectedly");
+                }
+
+                records.flip();
+                while (records.hasRemaining()) {
+                    int start = records.position();
+                    byte op = records.get();
+                    double x = records.getDouble();
+                    double y = records.getDouble();
+
+                    checksum.reset();
+                    checksum.update(records.array(), start, PAYLOAD_BYTES);
+                    if (records.getInt() != (int) checksum.getValue()) {
+                        break read;
+                    }
+
+                    switch (op) {
+                        case PUT -> transaction.put(x, y);
+                        case REMOVE -> transaction.remove(x);
+                        default -> {
+                            transaction.rollback();
+                            throw new IOException("Corrupt journal record " + op);
+                        }
+                    }
+                    valid += RECORD_BYTES;
+                }
+            }
+            transaction.commit();
+        }
+
+        if (valid != journal.size()) {
+            journal.truncate(valid);
+        }
+        journal.position(valid);
+    }
+
+    /**
+     * Helper function which appends a record to the journal. If it cannot be written in full, the journal is
+     * truncated back to before it, so that no torn record is followed by later ones.
+     *
+     * @return The position of the journal before the record.
+     */
+    private long append(byte op, double x, double y) throws IOException {
+        record.clear();
+        record.put(op).putDouble(x).putDouble(y);
+        checksum.reset();
+        checksum.update(record.array(), 0, PAYLOAD_BYTES);
+        record.putInt((int) checksum.getValue()).flip();
+
+        long start = journal.position();
+        try {
+            writeFully(journal, record);
+        } catch (IOException e) {
+            truncate(start, e);
+            throw e;
+        }
+        return start;
+    }
+
+    /**
+     * Helper function which truncates the journal back to the inputted position, after a failed change. A failure
+     * to truncate is added to the suppressed exceptions of the failure of the change.
+     */
+    private void truncate(long position, Throwable failure) {
+        try {
+            journal.truncate(position);
+            journal.position(position);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static Path journalOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".journal");
+    }
+
+    private static int align(int bytes) {
+        return (bytes + Double.BYTES - 1) & -Double.BYTES;
+    }
+
+    private static void putArray(ByteBuffer buffer, double[] array) {
+        buffer.putInt(array != null ? array.length : -1);
+        if (array != null) {
+            for (double value : array) {
+                buffer.putDouble(value);
+            }
+        }
+    }
+
+    private static double[] getArray(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining() / Double.BYTES)
+            throw new IOException("Array of length " + length + " overruns the header");
+
+        double[] array = new double[length];
+        buffer.asDoubleBuffer().get(array);
+        buffer.position(buffer.position() + Double.BYTES * length);
+        return array;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * {@link RegressionStatistics} which can absorb the statistics of another, disjoint dataset, as if every point of
+ * that dataset had been added to it. Merging is associative, so a large dataset can be split into chunks whose
+ * statistics are accumulated independently, in parallel, and then merged pairwise in any grouping.
+ * <p>
+ * Centered statistics are expected to merge with the parallel update of Chan et al., which combines the means and
+ * co-moments of both sides in O(1) without the cancellation of merging raw sums of squares.
+ *
+ * @see IncrementalRegressionEquationFactory#statisticsFrom(PointView)
+ * @see RegressionSummary
+ */
+public interface MergeableRegressionStatistics extends RegressionStatistics {
+
+    /**
+     * Merges the inputted statistics into these statistics. The inputted statistics are left unchanged.
+     *
+     * @param other The statistics of a dataset disjoint from that of these statistics.
+     * @throws IllegalArgumentException If the other statistics are not of the same type and configuration.
+     */
+    void merge(RegressionStatistics other);
+
+    /**
+     * Returns the complete state of these statistics as an array of doubles, including the number of points and
+     * any configuration of the factory that the state depends on. The array can be restored into fresh
+     * statistics of the same factory with {@link #restore(double[])}, and is carried by a {@link RegressionSummary}.
+     *
+     * @return A new array holding the state of these statistics.
+     */
+    double[] moments();
+
+    /**
+     * Replaces the state of these statistics with the inputted moments, as returned by {@link #moments()}.
+     *
+     * @param moments The state to restore.
+     * @throws IllegalArgumentException If the moments were not produced by statistics of the same type and
+     *                                  configuration.
+     */
+    void restore(double[] moments);
+
+    /**
+     * Copies the state of these statistics, as returned by {@link #moments()}, into the inputted array from the
+     * inputted offset. Implementations are encouraged to do so without allocating, so that the state can be kept in
+     * a larger, flat array; the default implementation copies from {@link #moments()}.
+     *
+     * @param destination The array to copy the state into.
+     * @param offset      The index of destination to copy the state to.
+     * @return The number of moments copied, which is the length of the array returned by {@link #moments()}.
+     * @throws IndexOutOfBoundsException If the state does not fit into destination from offset.
+     */
+    default int momentsInto(double[] destination, int offset) {
+        double[] moments = moments();
+        System.arraycopy(moments, 0, destination, offset, moments.length);
+        return moments.length;
+    }
+
+    /**
+     * Replaces the state of these statistics with the length moments of the inputted array from the inputted
+     * offset, as copied by {@link #momentsInto(double[], int)}. Implementations are encouraged to do so without
+     * allocating; the default implementation restores a copy of the range.
+     *
+     * @param moments The array holding the state to restore.
+     * @param offset  The index of the state in moments.
+     * @param length  The number of moments of the state.
+     * @throws IllegalArgumentException  If the moments were not produced by statistics of the same type and
+     *                                   configuration.
+     * @throws IndexOutOfBoundsException If the range lies outside of moments.
+     */
+    default void restore(double[] moments, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, moments.length);
+        restore(Arrays.copyOfRange(moments, offset, offset + length));
+    }
+}
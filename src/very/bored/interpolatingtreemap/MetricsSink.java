@@ -0,0 +1,67 @@
+package very.bored.interpolatingtreemap;
+
+/**
+ * Receives the measurements of the hot paths of an {@link InterpolatingTreeMap}, a
+ * {@link ConcurrentInterpolatingTreeMap} or a {@link StreamingRegression}: regression refits, evaluations,
+ * coefficient of determination computations and evictions. Each measurement is tagged with the type of the
+ * {@link RegressionEquationFactory} and the size of the dataset at the time.
+ * <p>
+ * Implement this interface to bridge the measurements to a metrics registry, or use {@link RegressionMetrics},
+ * which keeps counters and latency histograms itself. Every method does nothing by default, and {@link #NOOP},
+ * the default sink of every map, is checked for by identity, so that a map without a sink does not even read the
+ * clock.
+ * <p>
+ * Sinks are called synchronously, on the thread doing the work, and must be thread-safe if they are shared by
+ * maps used from several threads.
+ *
+ * @see RegressionMetrics
+ */
+public interface MetricsSink {
+
+    /**
+     * The sink which discards every measurement.
+     */
+    MetricsSink NOOP = new MetricsSink() {
+    };
+
+    /**
+     * Called after the regression function has been regenerated.
+     *
+     * @param factoryType The type of the factory which generated the regression function.
+     * @param datasetSize The number of points the regression function was generated from.
+     * @param nanos       The time taken to generate the regression function, in nanoseconds.
+     */
+    default void refit(Class<?> factoryType, int datasetSize, long nanos) {
+    }
+
+    /**
+     * Called after one or more y-hat values have been predicted by a single call.
+     *
+     * @param factoryType The type of the factory which generated the regression function.
+     * @param datasetSize The number of points the regression function was generated from.
+     * @param points      The number of y-hat values predicted.
+     * @param nanos       The time taken to predict them, including any refit, in nanoseconds.
+     */
+    default void evaluation(Class<?> factoryType, int datasetSize, int points, long nanos) {
+    }
+
+    /**
+     * Called after the coefficient of determination (R^2) has been computed.
+     *
+     * @param factoryType The type of the factory which generated the regression function.
+     * @param datasetSize The number of points the coefficient was computed over.
+     * @param nanos       The time taken to compute it, including any refit, in nanoseconds.
+     */
+    default void coefficientOfDetermination(Class<?> factoryType, int datasetSize, long nanos) {
+    }
+
+    /**
+     * Called after points have been evicted from the window of a {@link StreamingRegression}.
+     *
+     * @param factoryType The type of the factory which generates the regression function.
+     * @param datasetSize The number of points left in the window.
+     * @param points      The number of points evicted.
+     */
+    default void eviction(Class<?> factoryType, int datasetSize, int points) {
+    }
+}
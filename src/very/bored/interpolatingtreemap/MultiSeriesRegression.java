@@ -0,0 +1,573 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The regressions of many independent series of points, such as one per device, keyed by a series id from 0
+ * upwards. Behaves like one {@link InterpolatingTreeMap} per series sharing a single factory, with far fewer
+ * per-series objects: the running statistics, coefficients and coefficients of determination of every series are
+ * held in a few contiguous primitive arrays, so that only the points of each series are held by objects of their own.
+ * <p>
+ * The running statistics of each series are stored as their {@link MergeableRegressionStatistics#moments()}, one
+ * fixed-length slice per series, and are restored from and saved back into that slice in place, through a reused
+ * instance, whenever the series changes. The fitted {@link Polynomial} of each series is stored as its
+ * coefficients. The points themselves are kept in a {@link SortedPointStore} per series, of two arrays, so that a
+ * repeated x value replaces the earlier point exactly as in an {@link InterpolatingTreeMap}.
+ * <p>
+ * Points are put and predicted one at a time, or in batches across many series with
+ * {@link #putAll(int[], double[], double[])} and {@link #getAll(int[], double[], double[])}. A batch restores and
+ * saves the statistics of each series it touches once, however many of its points fall into that series. Series
+ * are only refitted when read; {@link #refit()} refits every series changed since, in parallel when there are many.
+ * <p>
+ * Only factories whose statistics are {@link MergeableRegressionStatistics}, and whose equations are
+ * {@link Polynomial Polynomials}, are supported, such as those of
+ * {@link very.bored.regressionfactories.LinRegEquationFactory}, {@link very.bored.regressionfactories.QuadRegEquationFactory}
+ * and {@link very.bored.regressionfactories.PolyRegEquationFactory}.
+ * <p>
+ * Series ids index the arrays directly, so they should be dense; the arrays grow to the greatest id put.
+ * <p>
+ * Note that usage of this class is NOT synchronized.
+ */
+public final class MultiSeriesRegression {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The {@link IncrementalRegressionEquationFactory} implementation which is used to generate the regression
+     * line of every series.
+     */
+    private final IncrementalRegressionEquationFactory regressionEquationFactory;
+
+    /**
+     * The reused statistics which the moments of a series are restored into while it is updated.
+     */
+    private final MergeableRegressionStatistics scratch;
+
+    /**
+     * The moments of statistics without any points, which every new series starts from.
+     */
+    private final double[] emptyMoments;
+
+    /**
+     * The moments of every series, with those of series s from index s * emptyMoments.length.
+     */
+    private double[] moments;
+
+    /**
+     * The coefficients of the fitted equation of every series, in ascending order of power, with those of series
+     * s from index s * coefficientStride. The number of coefficients of each series is held in terms.
+     */
+    private double[] coefficients;
+    private int[] terms;
+    private int coefficientStride;
+
+    /**
+     * The coefficient of determination of the fitted equation of every series.
+     */
+    private double[] determination;
+
+    /**
+     * The points of every series, or null for series which no point has been put into.
+     */
+    private SortedPointStore[] points;
+
+    /**
+     * The series whose points have changed since they were last fitted.
+     */
+    private final BitSet dirty = new BitSet();
+
+    private int seriesCount;
+
+    /**
+     * Constructor for the MultiSeriesRegression.
+     *
+     * @param regressionEquationFactory The desired implementation of the IncrementalRegressionEquationFactory,
+     *                                  shared by every series.
+     * @throws IllegalArgumentException If the statistics of the factory are not mergeable.
+     * @throws NullPointerException     If the regressionEquationFactory is null.
+     */
+    public MultiSeriesRegression(IncrementalRegressionEquationFactory regressionEquationFactory) {
+        Objects.requireNonNull(regressionEquationFactory);
+        if (!(regressionEquationFactory.newStatistics() instanceof MergeableRegressionStatistics mergeable))
+            throw new IllegalArgumentException(
+                    "Statistics of " + regressionEquationFactory.getClass().getName() + " are not mergeable");
+
+        this.regressionEquationFactory = regressionEquationFactory;
+        this.scratch = mergeable;
+        this.emptyMoments = mergeable.moments();
+        this.coefficientStride = regressionEquationFactory.getMinEntries();
+
+        this.moments = new double[DEFAULT_CAPACITY * emptyMoments.length];
+        this.coefficients = new double[DEFAULT_CAPACITY * coefficientStride];
+        this.terms = new int[DEFAULT_CAPACITY];
+        this.determination = new double[DEFAULT_CAPACITY];
+        this.points = new SortedPointStore[DEFAULT_CAPACITY];
+        fillEmpty(0, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Adds the point (x, y) to the inputted series, replacing any point of that series with the same x value.
+     * Creates the series if no point has been put into it yet.
+     *
+     * @param series The id of the series.
+     * @param x      The x value of the point.
+     * @param y      The y value of the point.
+     * @throws IllegalArgumentException If the series id is negative.
+     */
+    public void put(int series, double x, double y) {
+        SortedPointStore store = series(series, 1);
+        restore(series);
+        putPoint(store, x, y);
+        save(series);
+    }
+
+    /**
+     * Adds every point (xs[i], ys[i]) to the series series[i], as if by {@link #put(int, double, double)} in order,
+     * so that the last of several points with the same series and x value wins. The statistics of each series are
+     * restored and saved once for the whole batch.
+     *
+     * @param series The id of the series of each point.
+     * @param xs     The x value of each point.
+     * @param ys     The y value of each point.
+     * @throws IllegalArgumentException If the arrays differ in length, or a series id is negative.
+     */
+    public void putAll(int[] series, double[] xs, double[] ys) {
+        if (series.length != xs.length || xs.length != ys.length)
+            throw new IllegalArgumentException("Lengths of series (" + series.length + "), xs (" + xs.length
+                    + ") and ys (" + ys.length + ") differ");
+
+        // Packs each point as its series followed by its position, so that sorting groups the points of each
+        // series together while keeping them in their original order.
+        long[] order = new long[series.length];
+        boolean grouped = true;
+        for (int i = 0; i < series.length; i++) {
+            if (series[i] < 0)
+                throw new IllegalArgumentException("Series id must be non-negative, was " + series[i]);
+            order[i] = (long) series[i] << 32 | i;
+            grouped &= i == 0 || series[i - 1] <= series[i];
+        }
+        if (!grouped) {
+            Arrays.sort(order);
+        }
+
+        double[] groupXs = new double[series.length];
+        double[] groupYs = new double[series.length];
+        for (int start = 0; start < order.length; ) {
+            int id = (int) (order[start] >>> 32);
+            int length = 0;
+            for (; start < order.length && (int) (order[start] >>> 32) == id; start++) {
+                int i = (int) order[start];
+                groupXs[length] = xs[i];
+                groupYs[length] = ys[i];
+                length++;
+            }
+            putSeries(id, groupXs, groupYs, length);
+        }
+    }
+
+    /**
+     * Helper function which adds the inputted points to a series in a single merge, keeping its moments in step.
+     *
+     * @param series The id of the series.
+     * @param xs     The x values of the points to be added.
+     * @param ys     The y values of the points to be added.
+     * @param length The number of points to be added.
+     */
+    private void putSeries(int series, double[] xs, double[] ys, int length) {
+        SortedPointStore store = series(series, length);
+        restore(series);
+
+        // Merging copies the whole series, so batches much smaller than it are inserted point by point instead.
+        if (length * 16 < store.size()) {
+            for (int i = 0; i < length; i++) {
+                putPoint(store, xs[i], ys[i]);
+            }
+        } else {
+            store.putAll(xs, ys, length, scratch::remove, scratch::add);
+        }
+        save(series);
+    }
+
+    /**
+     * Helper function which adds a single point to a series, keeping the scratch statistics in step by
+     * retracting the point it replaces before adding the new one.
+     */
+    private void putPoint(SortedPointStore store, double x, double y) {
+        int index = store.indexOf(x);
+        if (index >= 0) {
+            scratch.remove(x, store.yAt(index));
+            store.setY(index, y);
+        } else {
+            store.insert(-index - 1, x, y);
+        }
+        scratch.add(x, y);
+    }
+
+    /**
+     * Helper function which returns the points of a series, creating the series if no point has been put into it.
+     *
+     * @param series   The id of the series.
+     * @param capacity The initial capacity of the points of a new series.
+     * @return The points of the series.
+     * @throws IllegalArgumentException If the series id is negative.
+     */
+    private SortedPointStore series(int series, int capacity) {
+        if (series < 0)
+            throw new IllegalArgumentException("Series id must be non-negative, was " + series);
+
+        ensureCapacity(series + 1);
+        if (points[series] == null) {
+            points[series] = new SortedPointStore(capacity);
+        }
+        return points[series];
+    }
+
+    /**
+     * If present, removes the point with the inputted x value from the inputted series. Otherwise, this function
+     * does nothing.
+     *
+     * @param series The id of the series.
+     * @param x      The x value of the point to remove.
+     */
+    public void remove(int series, double x) {
+        if (series < 0 || series >= seriesCount || points[series] == null) {
+            return;
+        }
+
+        SortedPointStore store = points[series];
+        int index = store.indexOf(x);
+        if (index >= 0) {
+            restore(series);
+            scratch.remove(x, store.yAt(index));
+            store.removeAt(index);
+            save(series);
+        }
+    }
+
+    /**
+     * Helper function which restores the moments of a series into the scratch statistics.
+     */
+    private void restore(int series) {
+        int stride = emptyMoments.length;
+        scratch.restore(moments, series * stride, stride);
+    }
+
+    /**
+     * Helper function which saves the scratch statistics as the moments of a series, and marks it dirty.
+     */
+    private void save(int series) {
+        scratch.momentsInto(moments, series * emptyMoments.length);
+        dirty.set(series);
+    }
+
+    /**
+     * Helper function which grows every array to hold at least the inputted number of series.
+     */
+    private void ensureCapacity(int count) {
+        if (count > points.length) {
+            int capacity = Math.max(count, points.length + (points.length >> 1));
+
+            moments = Arrays.copyOf(moments, capacity * emptyMoments.length);
+            fillEmpty(points.length, capacity);
+            coefficients = Arrays.copyOf(coefficients, capacity * coefficientStride);
+            terms = Arrays.copyOf(terms, capacity);
+            determination = Arrays.copyOf(determination, capacity);
+            points = Arrays.copyOf(points, capacity);
+        }
+        seriesCount = Math.max(seriesCount, count);
+    }
+
+    /**
+     * Helper function which sets the moments of the series between from (inclusive) and to (exclusive) to those
+     * of statistics without any points.
+     */
+    private void fillEmpty(int from, int to) {
+        for (int s = from; s < to; s++) {
+            System.arraycopy(emptyMoments, 0, moments, s * emptyMoments.length, emptyMoments.length);
+        }
+    }
+
+    /**
+     * Refits every series whose points have changed since it was last fitted. Series are fitted in parallel
+     * when more than {@link Refit#THRESHOLD} are dirty. Series with fewer points than the minimum of the factory
+     * are left unfitted.
+     */
+    public void refit() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        int[] pending = dirty.stream().toArray();
+        dirty.clear();
+
+        Polynomial[] fitted = new Polynomial[pending.length];
+        new Refit(this, pending, fitted, 0, pending.length).invoke();
+        store(pending, fitted);
+    }
+
+    /**
+     * Helper function which refits the inputted series alone, if it is dirty.
+     */
+    private void refit(int series) {
+        if (dirty.get(series)) {
+            dirty.clear(series);
+
+            int[] pending = {series};
+            Polynomial[] fitted = new Polynomial[1];
+            new Refit(this, pending, fitted, 0, 1).compute();
+            store(pending, fitted);
+        }
+    }
+
+    /**
+     * Helper function which stores the coefficients of the fitted equations, widening the coefficients of every
+     * series first if any equation has more coefficients than fit.
+     */
+    private void store(int[] pending, Polynomial[] fitted) {
+        int widest = coefficientStride;
+        for (Polynomial polynomial : fitted) {
+            if (polynomial != null) {
+                widest = Math.max(widest, polynomial.degree() + 1);
+            }
+        }
+
+        if (widest > coefficientStride) {
+            double[] widened = new double[points.length * widest];
+            for (int s = 0; s < seriesCount; s++) {
+                System.arraycopy(coefficients, s * coefficientStride, widened, s * widest, terms[s]);
+            }
+            coefficients = widened;
+            coefficientStride = widest;
+        }
+
+        for (int i = 0; i < pending.length; i++) {
+            int series = pending[i];
+            if (fitted[i] == null) {
+                terms[series] = 0;
+                continue;
+            }
+
+            double[] fittedCoefficients = fitted[i].coefficients();
+            System.arraycopy(fittedCoefficients, 0, coefficients, series * coefficientStride, fittedCoefficients.length);
+            terms[series] = fittedCoefficients.length;
+        }
+    }
+
+    /**
+     * Helper function which refits the inputted series if it is dirty, and checks that it has been fitted.
+     *
+     * @throws IllegalStateException If the series holds fewer points than the minimum of the factory.
+     */
+    private void fitted(int series) {
+        if (series >= 0 && series < seriesCount) {
+            refit(series);
+            if (terms[series] > 0) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Series " + series + " holds " + size(series)
+                + " points, fewer than the minimum of " + regressionEquationFactory.getMinEntries());
+    }
+
+    /**
+     * Helper function which evaluates the fitted equation of a series with Horner's scheme.
+     */
+    private double evaluate(int series, double x) {
+        int offset = series * coefficientStride;
+        int i = offset + terms[series] - 1;
+
+        double result = coefficients[i];
+        while (--i >= offset) {
+            result = result * x + coefficients[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the y-hat value for the inputted x value based on the regression function of the inputted series,
+     * refitting that series first if it has changed.
+     *
+     * @param series The id of the series.
+     * @param x      The x value to be predicted.
+     * @return The y-hat value for the inputted x value.
+     * @throws IllegalStateException If the series holds fewer points than the minimum of the factory.
+     */
+    public double getAsDouble(int series, double x) {
+        fitted(series);
+        return evaluate(series, x);
+    }
+
+    /**
+     * Predicts the y-hat value of every x value xs[i] with the regression function of the series series[i],
+     * writing it into out[i]. Every dirty series is refitted first, with {@link #refit()}. xs and out may be the
+     * same array.
+     *
+     * @param series The id of the series of each x value.
+     * @param xs     The x values to be predicted.
+     * @param out    The array to write the y-hat values into. Must be at least as long as xs.
+     * @throws IllegalArgumentException If series and xs differ in length, or out is shorter than xs.
+     * @throws IllegalStateException    If any series holds fewer points than the minimum of the factory.
+     */
+    public void getAll(int[] series, double[] xs, double[] out) {
+        if (series.length != xs.length)
+            throw new IllegalArgumentException("Lengths of series (" + series.length + ") and xs (" + xs.length + ") differ");
+        if (out.length < xs.length)
+            throw new IllegalArgumentException(
+                    "Output array of length " + out.length + " is shorter than the input of length " + xs.length);
+
+        refit();
+        for (int i = 0; i < xs.length; i++) {
+            fitted(series[i]);
+            out[i] = evaluate(series[i], xs[i]);
+        }
+    }
+
+    /**
+     * Returns the coefficients of the regression function of the inputted series, in ascending order of power.
+     *
+     * @param series The id of the series.
+     * @return A copy of the coefficients of the regression function.
+     * @throws IllegalStateException If the series holds fewer points than the minimum of the factory.
+     */
+    public double[] getCoefficients(int series) {
+        fitted(series);
+        int offset = series * coefficientStride;
+        return Arrays.copyOfRange(coefficients, offset, offset + terms[series]);
+    }
+
+    /**
+     * Returns the regression function of the inputted series as a {@link Polynomial}, detached from this
+     * MultiSeriesRegression.
+     *
+     * @param series The id of the series.
+     * @return The regression function of the series.
+     * @throws IllegalStateException If the series holds fewer points than the minimum of the factory.
+     */
+    public Polynomial getRegressionOperator(int series) {
+        return new Polynomial(getCoefficients(series));
+    }
+
+    /**
+     * Returns the regression function of the inputted series as a String.
+     *
+     * @param series The id of the series.
+     * @return The regression function of the series as a String.
+     * @throws IllegalStateException If the series holds fewer points than the minimum of the factory.
+     */
+    public String getEquationAsString(int series) {
+        fitted(series);
+        restore(series);
+        return scratch.equationAsString();
+    }
+
+    /**
+     * Returns the coefficient of determination (R^2) of the regression function of the inputted series.
+     *
+     * @param series The id of the series.
+     * @return The coefficient of determination (R^2) of the regression function.
+     * @throws IllegalStateException If the series holds fewer points than the minimum of the factory.
+     */
+    public double getCoefficientOfDetermination(int series) {
+        fitted(series);
+        return determination[series];
+    }
+
+    /**
+     * Returns a read-only snapshot of the points of the inputted series, sharing them until either is modified.
+     *
+     * @param series The id of the series.
+     * @return The points of the series, sorted by x.
+     */
+    public NavigableMap<Double, Double> getDataPoints(int series) {
+        return size(series) > 0
+                ? new PointViewMap(points[series].share())
+                : new PointViewMap(new SortedPointStore(1));
+    }
+
+    /**
+     * Returns the {@link IncrementalRegressionEquationFactory} shared by every series.
+     *
+     * @return The {@link IncrementalRegressionEquationFactory} shared by every series.
+     */
+    public IncrementalRegressionEquationFactory getRegressionEquationFactory() {
+        return regressionEquationFactory;
+    }
+
+    /**
+     * Returns the number of points in the inputted series.
+     *
+     * @param series The id of the series.
+     * @return The number of points in the series, or 0 if none have been put into it.
+     */
+    public int size(int series) {
+        return series >= 0 && series < seriesCount && points[series] != null ? points[series].size() : 0;
+    }
+
+    /**
+     * Returns one more than the greatest series id which a point has been put into.
+     *
+     * @return The number of series.
+     */
+    public int seriesCount() {
+        return seriesCount;
+    }
+
+    /**
+     * Fits a range of dirty series with a fork-join split: the range is halved until it is small enough to fit
+     * sequentially, with one statistics instance per chunk. Each series writes only its own slot of fitted and
+     * of the coefficients of determination, so the chunks share nothing.
+     */
+    @SuppressWarnings("serial")
+    private static final class Refit extends RecursiveAction {
+
+        /**
+         * The number of series below which a chunk is fitted sequentially.
+         */
+        static final int THRESHOLD = 256;
+
+        private final MultiSeriesRegression owner;
+        private final int[] pending;
+        private final Polynomial[] fitted;
+        private final int from, to;
+
+        Refit(MultiSeriesRegression owner, int[] pending, Polynomial[] fitted, int from, int to) {
+            this.owner = owner;
+            this.pending = pending;
+            this.fitted = fitted;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Refit(owner, pending, fitted, from, mid), new Refit(owner, pending, fitted, mid, to));
+                return;
+            }
+
+            var statistics = (MergeableRegressionStatistics) owner.regressionEquationFactory.newStatistics();
+            int stride = owner.emptyMoments.length;
+            int minEntries = owner.regressionEquationFactory.getMinEntries();
+
+            for (int i = from; i < to; i++) {
+                int series = pending[i];
+                if (owner.size(series) < minEntries) {
+                    continue;
+                }
+
+                statistics.restore(owner.moments, series * stride, stride);
+                if (!(statistics.equation() instanceof Polynomial polynomial))
+                    throw new IllegalStateException(
+                            "Equations of " + owner.regressionEquationFactory.getClass().getName() + " are not polynomials");
+
+                fitted[i] = polynomial;
+                owner.determination[series] = statistics.getCoefficientOfDetermination();
+            }
+        }
+    }
+}
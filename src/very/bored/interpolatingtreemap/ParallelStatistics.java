@@ -0,0 +1,78 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Accumulates the {@link RegressionStatistics} of a {@link PointView} with a fork-join reduction: the view is
+ * split in half until the chunks are small enough to accumulate sequentially, and the statistics of the halves
+ * are merged on the way back up. Used only when the statistics are {@link MergeableRegressionStatistics} and the
+ * view is large enough to amortize the forking.
+ */
+@SuppressWarnings("serial")
+final class ParallelStatistics extends RecursiveTask<RegressionStatistics> {
+
+    /**
+     * The number of points below which a chunk is accumulated sequentially.
+     */
+    static final int THRESHOLD = 1 << 15;
+
+    private final IncrementalRegressionEquationFactory factory;
+    private final PointView dataPoints;
+    private final int from, to;
+
+    private ParallelStatistics(IncrementalRegressionEquationFactory factory, PointView dataPoints, int from, int to) {
+        this.factory = factory;
+        this.dataPoints = dataPoints;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Accumulates the statistics of every point in the inputted view, in parallel if the statistics of the
+     * factory are mergeable and the view holds more than {@link #THRESHOLD} points.
+     *
+     * @param factory    The factory to create the statistics with.
+     * @param dataPoints The points to accumulate.
+     * @return The statistics of every point in dataPoints.
+     */
+    static RegressionStatistics accumulate(IncrementalRegressionEquationFactory factory, PointView dataPoints) {
+        int size = dataPoints.size();
+        if (size <= THRESHOLD) {
+            return sequential(factory, dataPoints, 0, size);
+        }
+
+        RegressionStatistics first = sequential(factory, dataPoints, 0, THRESHOLD);
+        if (!(first instanceof MergeableRegressionStatistics mergeable)) {
+            for (int i = THRESHOLD; i < size; i++) {
+                first.add(dataPoints.xAt(i), dataPoints.yAt(i));
+            }
+            return first;
+        }
+
+        mergeable.merge(new ParallelStatistics(factory, dataPoints, THRESHOLD, size).invoke());
+        return mergeable;
+    }
+
+    private static RegressionStatistics sequential(IncrementalRegressionEquationFactory factory, PointView dataPoints, int from, int to) {
+        RegressionStatistics statistics = factory.newStatistics();
+        for (int i = from; i < to; i++) {
+            statistics.add(dataPoints.xAt(i), dataPoints.yAt(i));
+        }
+        return statistics;
+    }
+
+    @Override
+    protected RegressionStatistics compute() {
+        if (to - from <= THRESHOLD) {
+            return sequential(factory, dataPoints, from, to);
+        }
+
+        int mid = (from + to) >>> 1;
+        ParallelStatistics right = new ParallelStatistics(factory, dataPoints, mid, to);
+        right.fork();
+
+        var left = (MergeableRegressionStatistics) new ParallelStatistics(factory, dataPoints, from, mid).compute();
+        left.merge(right.join());
+        return left;
+    }
+}
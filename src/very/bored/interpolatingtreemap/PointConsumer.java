@@ -0,0 +1,19 @@
+package very.bored.interpolatingtreemap;
+
+/**
+ * Represents an operation that accepts a single (x, y) point as two primitive doubles, avoiding the
+ * boxing of a {@link java.util.Map.Entry Map.Entry&lt;Double, Double&gt;}.
+ *
+ * @see PointView#forEach(PointConsumer)
+ */
+@FunctionalInterface
+public interface PointConsumer {
+
+    /**
+     * Performs this operation on the given point.
+     *
+     * @param x The x value of the point.
+     * @param y The y value of the point.
+     */
+    void accept(double x, double y);
+}
@@ -0,0 +1,157 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.Objects;
+
+/**
+ * A read-only, primitive view of a set of (x, y) points sorted by ascending x, with no duplicate x values.
+ * <p>
+ * Points are addressed by their index in the sorted order, so that they can be iterated and searched
+ * without boxing either coordinate. The ordering of x values is that of {@link Double#compare}, the same
+ * as the natural ordering of {@link Double} keys in a {@link java.util.TreeMap}.
+ * <p>
+ * This is the form in which an {@link InterpolatingTreeMap} passes its dataset to a
+ * {@link RegressionEquationFactory}. A view is only guaranteed to be valid until its source is next
+ * modified.
+ *
+ * @see InterpolatingTreeMap
+ * @see RegressionEquationFactory
+ */
+public interface PointView {
+
+    /**
+     * Returns the number of points in this view.
+     *
+     * @return The number of points in this view.
+     */
+    int size();
+
+    /**
+     * Returns the x value of the point at the given index.
+     *
+     * @param index The index of the point, between 0 (inclusive) and {@link #size()} (exclusive).
+     * @return The x value of the point.
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    double xAt(int index);
+
+    /**
+     * Returns the y value of the point at the given index.
+     *
+     * @param index The index of the point, between 0 (inclusive) and {@link #size()} (exclusive).
+     * @return The y value of the point.
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    double yAt(int index);
+
+    /**
+     * Searches for the given x value by binary search. Follows the same contract as
+     * {@link java.util.Arrays#binarySearch(double[], double)}.
+     *
+     * @param x The x value to search for.
+     * @return The index of the x value if present; otherwise {@code (-(insertion point) - 1)}.
+     */
+    default int indexOf(double x) {
+        int low = 0;
+        int high = size() - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Double.compare(xAt(mid), x);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the index of the point with the greatest x value less than or equal to the given x value.
+     *
+     * @param x The x value.
+     * @return The index of the floor point, or -1 if there is no such point.
+     */
+    default int floorIndex(double x) {
+        int index = indexOf(x);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Returns the index of the point with the least x value greater than or equal to the given x value.
+     *
+     * @param x The x value.
+     * @return The index of the ceiling point, or -1 if there is no such point.
+     */
+    default int ceilingIndex(double x) {
+        int index = indexOf(x);
+        if (index >= 0) {
+            return index;
+        }
+
+        int insertionPoint = -index - 1;
+        return insertionPoint < size() ? insertionPoint : -1;
+    }
+
+    /**
+     * Returns a view of the points between the given indices. The returned view is backed by this one.
+     *
+     * @param fromIndex The index of the first point (inclusive).
+     * @param toIndex   The index after the last point (exclusive).
+     * @return A view of the points between the given indices.
+     * @throws IndexOutOfBoundsException If either index is out of range, or fromIndex &gt; toIndex.
+     */
+    default PointView subView(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size());
+
+        PointView source = this;
+        return new PointView() {
+            @Override
+            public int size() {
+                return toIndex - fromIndex;
+            }
+
+            @Override
+            public double xAt(int index) {
+                return source.xAt(fromIndex + Objects.checkIndex(index, size()));
+            }
+
+            @Override
+            public double yAt(int index) {
+                return source.yAt(fromIndex + Objects.checkIndex(index, size()));
+            }
+        };
+    }
+
+    /**
+     * Returns a view of the points whose x values lie between fromX and toX, both inclusive. The returned
+     * view is backed by this one.
+     *
+     * @param fromX The lowest x value of the range.
+     * @param toX   The highest x value of the range.
+     * @return A view of the points within the range; empty if fromX &gt; toX.
+     */
+    default PointView range(double fromX, double toX) {
+        int from = indexOf(fromX);
+        from = from >= 0 ? from : -from - 1;
+
+        int to = floorIndex(toX) + 1;
+
+        return subView(from, Math.max(from, to));
+    }
+
+    /**
+     * Performs the given action for every point in this view, in ascending order of x.
+     *
+     * @param action The action to be performed.
+     */
+    default void forEach(PointConsumer action) {
+        for (int i = 0, size = size(); i < size; i++) {
+            action.accept(xAt(i), yAt(i));
+        }
+    }
+}
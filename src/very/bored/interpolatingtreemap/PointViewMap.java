@@ -0,0 +1,420 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.*;
+
+/**
+ * A read-only {@link NavigableMap} view of the points between two indices of a {@link PointView}, in ascending or
+ * descending order of x. Lookups and navigation are binary searches over the view, and sub-maps, descending maps
+ * and key sets are further views of the same points, so nothing is ever copied.
+ * <p>
+ * Every method that would modify the map throws {@link UnsupportedOperationException}.
+ */
+final class PointViewMap extends AbstractMap<Double, Double> implements NavigableMap<Double, Double> {
+
+    private final PointView points;
+    private final int from, to;
+    private final boolean descending;
+
+    /**
+     * Creates a view of every point of the inputted {@link PointView}, in ascending order of x.
+     *
+     * @param points The points to view, which must not be modified for as long as the view is used.
+     */
+    PointViewMap(PointView points) {
+        this(points, 0, points.size(), false);
+    }
+
+    private PointViewMap(PointView points, int from, int to, boolean descending) {
+        this.points = points;
+        this.from = from;
+        this.to = Math.max(from, to);
+        this.descending = descending;
+    }
+
+    // Index helpers, over the ascending order of the viewed range. Each returns -1 if there is no such point.
+
+    private int floorIndex(double x) {
+        int index = indexOf(x);
+        index = index >= 0 ? index : -index - 2;
+        return index >= from ? index : -1;
+    }
+
+    private int ceilingIndex(double x) {
+        int index = indexOf(x);
+        index = index >= 0 ? index : -index - 1;
+        return index < to ? index : -1;
+    }
+
+    private int lowerIndex(double x) {
+        int index = ceilingIndex(x);
+        index = index >= 0 ? index - 1 : to - 1;
+        return index >= from ? index : -1;
+    }
+
+    private int higherIndex(double x) {
+        int index = floorIndex(x);
+        index = index >= 0 ? index + 1 : from;
+        return index < to ? index : -1;
+    }
+
+    /**
+     * Binary search over the viewed range, following the contract of {@link PointView#indexOf}.
+     */
+    private int indexOf(double x) {
+        int low = from;
+        int high = to - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Double.compare(points.xAt(mid), x);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    private Entry<Double, Double> entryAt(int index) {
+        return index >= 0 ? Map.entry(points.xAt(index), points.yAt(index)) : null;
+    }
+
+    private static Double keyOf(Entry<Double, Double> entry) {
+        return entry != null ? entry.getKey() : null;
+    }
+
+    private static Double key(Object key) {
+        return (Double) Objects.requireNonNull(key);
+    }
+
+    // Queries
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key(key)) >= 0;
+    }
+
+    @Override
+    public Double get(Object key) {
+        int index = indexOf(key(key));
+        return index >= 0 ? points.yAt(index) : null;
+    }
+
+    @Override
+    public Comparator<? super Double> comparator() {
+        return descending ? Comparator.reverseOrder() : null;
+    }
+
+    // Navigation, in the order of this view
+
+    @Override
+    public Entry<Double, Double> lowerEntry(Double key) {
+        return entryAt(descending ? higherIndex(key) : lowerIndex(key));
+    }
+
+    @Override
+    public Entry<Double, Double> floorEntry(Double key) {
+        return entryAt(descending ? ceilingIndex(key) : floorIndex(key));
+    }
+
+    @Override
+    public Entry<Double, Double> ceilingEntry(Double key) {
+        return entryAt(descending ? floorIndex(key) : ceilingIndex(key));
+    }
+
+    @Override
+    public Entry<Double, Double> higherEntry(Double key) {
+        return entryAt(descending ? lowerIndex(key) : higherIndex(key));
+    }
+
+    @Override
+    public Double lowerKey(Double key) {
+        return keyOf(lowerEntry(key));
+    }
+
+    @Override
+    public Double floorKey(Double key) {
+        return keyOf(floorEntry(key));
+    }
+
+    @Override
+    public Double ceilingKey(Double key) {
+        return keyOf(ceilingEntry(key));
+    }
+
+    @Override
+    public Double higherKey(Double key) {
+        return keyOf(higherEntry(key));
+    }
+
+    @Override
+    public Entry<Double, Double> firstEntry() {
+        return isEmpty() ? null : entryAt(descending ? to - 1 : from);
+    }
+
+    @Override
+    public Entry<Double, Double> lastEntry() {
+        return isEmpty() ? null : entryAt(descending ? from : to - 1);
+    }
+
+    @Override
+    public Double firstKey() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+        return firstEntry().getKey();
+    }
+
+    @Override
+    public Double lastKey() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+        return lastEntry().getKey();
+    }
+
+    @Override
+    public Entry<Double, Double> pollFirstEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Entry<Double, Double> pollLastEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    // Views
+
+    @Override
+    public NavigableMap<Double, Double> descendingMap() {
+        return new PointViewMap(points, from, to, !descending);
+    }
+
+    @Override
+    public NavigableMap<Double, Double> subMap(Double fromKey, boolean fromInclusive, Double toKey, boolean toInclusive) {
+        if (Double.compare(fromKey, toKey) * (descending ? -1 : 1) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+
+        return descending
+                ? range(toKey, toInclusive, fromKey, fromInclusive)
+                : range(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<Double, Double> headMap(Double toKey, boolean inclusive) {
+        return descending
+                ? range(toKey, inclusive, null, false)
+                : range(null, false, toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<Double, Double> tailMap(Double fromKey, boolean inclusive) {
+        return descending
+                ? range(null, false, fromKey, inclusive)
+                : range(fromKey, inclusive, null, false);
+    }
+
+    /**
+     * Helper function which returns the view of the points between the inputted x values, in ascending order of
+     * x, in the same direction as this view. A null bound leaves that side of the range open.
+     */
+    private PointViewMap range(Double low, boolean lowInclusive, Double high, boolean highInclusive) {
+        int fromIndex = low == null ? from : lowInclusive ? ceilingIndex(low) : higherIndex(low);
+        int toIndex = high == null ? to : (highInclusive ? floorIndex(high) : lowerIndex(high)) + 1;
+
+        if (fromIndex < 0) {
+            fromIndex = to;
+        }
+        return new PointViewMap(points, fromIndex, toIndex, descending);
+    }
+
+    @Override
+    public SortedMap<Double, Double> subMap(Double fromKey, Double toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<Double, Double> headMap(Double toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<Double, Double> tailMap(Double fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public NavigableSet<Double> navigableKeySet() {
+        return new KeySet(this);
+    }
+
+    @Override
+    public NavigableSet<Double> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<Double> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Set<Entry<Double, Double>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Double, Double>> iterator() {
+                return new Iterator<>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < PointViewMap.this.size();
+                    }
+
+                    @Override
+                    public Entry<Double, Double> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        int position = next++;
+                        return entryAt(descending ? to - 1 - position : from + position);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PointViewMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * The read-only key set of a {@link PointViewMap}, delegating every operation to the map.
+     */
+    private static final class KeySet extends AbstractSet<Double> implements NavigableSet<Double> {
+        private final NavigableMap<Double, Double> map;
+
+        KeySet(NavigableMap<Double, Double> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Double> iterator() {
+            var entries = map.entrySet().iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Double next() {
+                    return entries.next().getKey();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public Comparator<? super Double> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public Double lower(Double e) {
+            return map.lowerKey(e);
+        }
+
+        @Override
+        public Double floor(Double e) {
+            return map.floorKey(e);
+        }
+
+        @Override
+        public Double ceiling(Double e) {
+            return map.ceilingKey(e);
+        }
+
+        @Override
+        public Double higher(Double e) {
+            return map.higherKey(e);
+        }
+
+        @Override
+        public Double first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public Double last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public Double pollFirst() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Double pollLast() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NavigableSet<Double> descendingSet() {
+            return map.descendingKeySet();
+        }
+
+        @Override
+        public Iterator<Double> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<Double> subSet(Double fromElement, boolean fromInclusive, Double toElement, boolean toInclusive) {
+            return map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Double> headSet(Double toElement, boolean inclusive) {
+            return map.headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Double> tailSet(Double fromElement, boolean inclusive) {
+            return map.tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public SortedSet<Double> subSet(Double fromElement, Double toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<Double> headSet(Double toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<Double> tailSet(Double fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
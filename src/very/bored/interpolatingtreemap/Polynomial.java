@@ -0,0 +1,128 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An immutable polynomial in x, used as the regression function of polynomial regressions such as
+ * linear and quadratic ones.
+ * <p>
+ * The polynomial is evaluated with Horner's scheme, both for single values through {@link #applyAsDouble}
+ * and for whole arrays through {@link #evaluate(double[], double[])}. The latter is vectorized with the
+ * incubating Vector API when the {@code jdk.incubator.vector} module is present at runtime
+ * (i.e. the JVM was started with {@code --add-modules jdk.incubator.vector}), and falls back to a scalar
+ * loop otherwise. Neither path uses fused multiply-adds, so both produce bit-identical results.
+ * <p>
+ * Subclasses may only attach metadata to a polynomial, such as which factory formats it; its coefficients,
+ * evaluation and equality are fixed here.
+ */
+public class Polynomial implements DoubleUnaryOperator {
+
+    /**
+     * The coefficients of the polynomial, in ascending order of power; the coefficient at index i is
+     * that of xⁱ.
+     */
+    private final double[] coefficients;
+
+    /**
+     * Constructor for the Polynomial.
+     *
+     * @param coefficients The coefficients of the polynomial, in ascending order of power. At least one
+     *                     coefficient is required.
+     * @throws IllegalArgumentException If there are no coefficients.
+     */
+    public Polynomial(double... coefficients) {
+        if (coefficients.length == 0)
+            throw new IllegalArgumentException("Need at least one coefficient to create a polynomial.");
+
+        this.coefficients = coefficients.clone();
+    }
+
+    /**
+     * Constructor which shares the coefficients of the inputted polynomial, for subclasses.
+     *
+     * @param polynomial The polynomial whose coefficients are to be shared.
+     */
+    protected Polynomial(Polynomial polynomial) {
+        this.coefficients = polynomial.coefficients;
+    }
+
+    /**
+     * Returns the degree of the polynomial; that is, the number of coefficients minus one.
+     *
+     * @return The degree of the polynomial.
+     */
+    public final int degree() {
+        return coefficients.length - 1;
+    }
+
+    /**
+     * Returns the coefficient of x raised to the inputted power.
+     *
+     * @param power The power of x whose coefficient is to be returned.
+     * @return The coefficient, or 0 if the power is greater than the degree.
+     * @throws IllegalArgumentException If the power is negative.
+     */
+    public final double coefficient(int power) {
+        if (power < 0)
+            throw new IllegalArgumentException("Power must be non-negative, was " + power);
+
+        return power < coefficients.length ? coefficients[power] : 0.0;
+    }
+
+    /**
+     * Returns a copy of the coefficients of the polynomial, in ascending order of power.
+     *
+     * @return A copy of the coefficients.
+     */
+    public final double[] coefficients() {
+        return coefficients.clone();
+    }
+
+    /**
+     * Evaluates the polynomial at the inputted x value with Horner's scheme.
+     *
+     * @param x The x value.
+     * @return The value of the polynomial at x.
+     */
+    @Override
+    public final double applyAsDouble(double x) {
+        double result = coefficients[coefficients.length - 1];
+        for (int i = coefficients.length - 2; i >= 0; i--) {
+            result = result * x + coefficients[i];
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the polynomial at every x value in xs, writing the value at index i of xs into index i
+     * of out. Vectorized when the Vector API is available; see the class documentation. xs and out may be
+     * the same array.
+     *
+     * @param xs  The x values.
+     * @param out The array to write the values into. Must be at least as long as xs.
+     * @throws IllegalArgumentException If out is shorter than xs.
+     */
+    public final void evaluate(double[] xs, double[] out) {
+        if (out.length < xs.length)
+            throw new IllegalArgumentException(
+                    "Output array of length " + out.length + " is shorter than the input of length " + xs.length);
+
+        PolynomialEvaluator.evaluate(coefficients, xs, out, xs.length);
+    }
+
+    @Override
+    public final boolean equals(Object o) {
+        return this == o || o instanceof Polynomial other && Arrays.equals(coefficients, other.coefficients);
+    }
+
+    @Override
+    public final int hashCode() {
+        return Arrays.hashCode(coefficients);
+    }
+
+    @Override
+    public String toString() {
+        return "Polynomial" + Arrays.toString(coefficients);
+    }
+}
@@ -0,0 +1,81 @@
+package very.bored.interpolatingtreemap;
+
+/**
+ * Bulk evaluation of polynomials with Horner's scheme, dispatching to {@link VectorPolynomialEvaluator}
+ * when the {@code jdk.incubator.vector} module is present at runtime, and to a scalar loop otherwise.
+ * <p>
+ * The availability of the module is checked once, the first time this class is used. The vectorized class
+ * is only ever loaded if the module is present, so this class works on any JVM.
+ */
+final class PolynomialEvaluator {
+
+    /**
+     * Whether the Vector API can be used, resolved once when the class is initialized.
+     */
+    private static final boolean VECTORIZED = isVectorApiPresent();
+
+    private PolynomialEvaluator() {
+    }
+
+    private static boolean isVectorApiPresent() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+
+        try {
+            return VectorPolynomialEvaluator.laneCount() > 1;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether bulk evaluation is vectorized in this JVM.
+     *
+     * @return Whether bulk evaluation is vectorized.
+     */
+    static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Evaluates the polynomial with the inputted coefficients at the first length values of xs, writing
+     * the results into out.
+     *
+     * @param coefficients The coefficients of the polynomial, in ascending order of power.
+     * @param xs           The x values.
+     * @param out          The array to write the values into.
+     * @param length       The number of values to evaluate.
+     */
+    static void evaluate(double[] coefficients, double[] xs, double[] out, int length) {
+        if (VECTORIZED) {
+            VectorPolynomialEvaluator.evaluate(coefficients, xs, out, length);
+        } else {
+            evaluateScalar(coefficients, xs, out, 0, length);
+        }
+    }
+
+    /**
+     * Evaluates the polynomial with the inputted coefficients at the values of xs between from (inclusive)
+     * and to (exclusive), one at a time.
+     *
+     * @param coefficients The coefficients of the polynomial, in ascending order of power.
+     * @param xs           The x values.
+     * @param out          The array to write the values into.
+     * @param from         The first index to evaluate.
+     * @param to           The index after the last one to evaluate.
+     */
+    static void evaluateScalar(double[] coefficients, double[] xs, double[] out, int from, int to) {
+        int degree = coefficients.length - 1;
+        double leading = coefficients[degree];
+
+        for (int i = from; i < to; i++) {
+            double x = xs[i];
+            double result = leading;
+            for (int k = degree - 1; k >= 0; k--) {
+                result = result * x + coefficients[k];
+            }
+            out[i] = result;
+        }
+    }
+}
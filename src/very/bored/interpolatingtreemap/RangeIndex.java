@@ -0,0 +1,211 @@
+package very.bored.interpolatingtreemap;
+
+/**
+ * An index of the {@link MergeableRegressionStatistics} of the points of an {@link InterpolatingTreeMap}, from which
+ * the statistics of the points within any range of x values are produced in O(log n), rather than a pass over the
+ * points in that range.
+ * <p>
+ * The points are split, in sorted order, into blocks of {@link #BLOCK_SIZE} consecutive points. The statistics of
+ * each block are the leaves of a segment tree, whose every node holds the statistics of its children merged, so
+ * that a range is covered by O(log n) nodes plus the points of the two partial blocks at its ends.
+ * <p>
+ * Replacing the y value of a point, or appending a point after the greatest x, as with time series, updates
+ * the block of the point and its ancestors in O(log n). Inserting or removing any other point shifts every block
+ * after it, so it instead invalidates the index, which is rebuilt in O(n) on the next query.
+ * <p>
+ * Note that usage of this class is NOT synchronized.
+ */
+final class RangeIndex {
+
+    /**
+     * The number of consecutive points whose statistics are accumulated into each leaf of the tree.
+     */
+    static final int BLOCK_SIZE = 64;
+
+    private final IncrementalRegressionEquationFactory factory;
+    private final PointView points;
+
+    /**
+     * The segment tree, with its root at index 1 and the children of node i at 2i and 2i + 1. The leaves, from
+     * index capacity onwards, hold the statistics of each block. Null nodes hold no points.
+     */
+    private MergeableRegressionStatistics[] tree;
+    private int capacity;
+    private int blocks;
+    private boolean valid;
+
+    /**
+     * Creates an index of the inputted points, which is built on its first query.
+     *
+     * @param factory The factory whose statistics are indexed; they must be mergeable.
+     * @param points  The points to index, which are read again whenever the index is rebuilt.
+     */
+    RangeIndex(IncrementalRegressionEquationFactory factory, PointView points) {
+        this.factory = factory;
+        this.points = points;
+    }
+
+    /**
+     * Returns whether the statistics of the inputted factory can be indexed.
+     *
+     * @param factory The factory to check.
+     * @return Whether the factory is incremental, with mergeable statistics.
+     */
+    static boolean supports(RegressionEquationFactory factory) {
+        return factory instanceof IncrementalRegressionEquationFactory incremental
+                && incremental.newStatistics() instanceof MergeableRegressionStatistics;
+    }
+
+    /**
+     * Returns the statistics of every point whose x value lies between fromX and toX, both inclusive.
+     *
+     * @param fromX The lowest x value of the range.
+     * @param toX   The highest x value of the range.
+     * @return New statistics of the points within the range.
+     */
+    MergeableRegressionStatistics query(double fromX, double toX) {
+        if (!valid) {
+            rebuild();
+        }
+
+        int from = points.indexOf(fromX);
+        from = from >= 0 ? from : -from - 1;
+        int to = points.floorIndex(toX) + 1;
+
+        var statistics = newStatistics();
+        if (to <= from) {
+            return statistics;
+        }
+
+        int firstBlock = (from + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int lastBlock = to / BLOCK_SIZE;
+        if (firstBlock >= lastBlock) {
+            accumulate(statistics, from, to);
+            return statistics;
+        }
+
+        accumulate(statistics, from, firstBlock * BLOCK_SIZE);
+        accumulate(statistics, lastBlock * BLOCK_SIZE, to);
+
+        for (int low = firstBlock + capacity, high = lastBlock + capacity; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1) {
+                merge(statistics, tree[low++]);
+            }
+            if ((high & 1) == 1) {
+                merge(statistics, tree[--high]);
+            }
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Updates the index after the y value of the point at the inputted index was replaced.
+     *
+     * @param index    The index of the point.
+     * @param x        The x value of the point.
+     * @param previous The previous y value of the point.
+     * @param y        The new y value of the point.
+     */
+    void replaced(int index, double x, double previous, double y) {
+        if (!valid) {
+            return;
+        }
+
+        int leaf = capacity + index / BLOCK_SIZE;
+        tree[leaf].remove(x, previous);
+        tree[leaf].add(x, y);
+        propagate(leaf);
+    }
+
+    /**
+     * Updates the index after a point was appended after the previously greatest x value.
+     *
+     * @param x The x value of the point.
+     * @param y The y value of the point.
+     */
+    void appended(double x, double y) {
+        if (!valid) {
+            return;
+        }
+
+        int block = (points.size() - 1) / BLOCK_SIZE;
+        if (block >= capacity) {
+            valid = false;
+            return;
+        }
+
+        int leaf = capacity + block;
+        if (block == blocks) {
+            tree[leaf] = newStatistics();
+            blocks++;
+        }
+        tree[leaf].add(x, y);
+        propagate(leaf);
+    }
+
+    /**
+     * Invalidates the index after points were inserted or removed, so that it is rebuilt on the next query.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Helper function which rebuilds the whole index from the points, in O(n).
+     */
+    private void rebuild() {
+        int size = points.size();
+        blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        capacity = Integer.highestOneBit(Math.max(blocks, 1)) << 1;
+        tree = new MergeableRegressionStatistics[capacity << 1];
+
+        for (int block = 0; block < blocks; block++) {
+            var statistics = newStatistics();
+            accumulate(statistics, block * BLOCK_SIZE, Math.min(size, (block + 1) * BLOCK_SIZE));
+            tree[capacity + block] = statistics;
+        }
+
+        for (int node = capacity - 1; node >= 1; node--) {
+            tree[node] = combine(tree[node << 1], tree[(node << 1) + 1]);
+        }
+
+        valid = true;
+    }
+
+    /**
+     * Helper function which recomputes every ancestor of the inputted leaf from its children.
+     */
+    private void propagate(int leaf) {
+        for (int node = leaf >> 1; node >= 1; node >>= 1) {
+            tree[node] = combine(tree[node << 1], tree[(node << 1) + 1]);
+        }
+    }
+
+    private MergeableRegressionStatistics combine(MergeableRegressionStatistics left, MergeableRegressionStatistics right) {
+        if (left == null && right == null) {
+            return null;
+        }
+
+        var statistics = newStatistics();
+        merge(statistics, left);
+        merge(statistics, right);
+        return statistics;
+    }
+
+    private static void merge(MergeableRegressionStatistics statistics, MergeableRegressionStatistics node) {
+        if (node != null) {
+            statistics.merge(node);
+        }
+    }
+
+    private void accumulate(RegressionStatistics statistics, int from, int to) {
+        for (int i = from; i < to; i++) {
+            statistics.add(points.xAt(i), points.yAt(i));
+        }
+    }
+
+    private MergeableRegressionStatistics newStatistics() {
+        return (MergeableRegressionStatistics) factory.newStatistics();
+    }
+}
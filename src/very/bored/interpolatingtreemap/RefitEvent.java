@@ -0,0 +1,50 @@
+package very.bored.interpolatingtreemap;
+
+import jdk.jfr.*;
+
+import java.util.function.Supplier;
+
+/**
+ * The JDK Flight Recorder event committed for every regeneration of a regression function. Enabled by default
+ * in a recording, with no threshold; when no recording is running, it costs next to nothing.
+ */
+@Name("very.bored.interpolatingtreemap.Refit")
+@Label("Regression Refit")
+@Category({"InterpolatingTreeMap"})
+@Description("The regeneration of the regression function of a map")
+@StackTrace(false)
+final class RefitEvent extends Event {
+
+    @Label("Factory")
+    Class<?> factoryType;
+
+    @Label("Dataset Size")
+    int datasetSize;
+
+    /**
+     * Runs the inputted refit, measuring it into the inputted metrics sink and a RefitEvent.
+     *
+     * @param metrics     The sink to measure into.
+     * @param factoryType The type of the factory refitting.
+     * @param datasetSize The number of points being fitted.
+     * @param refit       The refit to run.
+     * @return The result of the refit.
+     */
+    static <T> T measure(MetricsSink metrics, Class<?> factoryType, int datasetSize, Supplier<T> refit) {
+        RefitEvent event = new RefitEvent();
+        event.begin();
+        long start = metrics != MetricsSink.NOOP ? System.nanoTime() : 0L;
+
+        T result = refit.get();
+
+        if (metrics != MetricsSink.NOOP) {
+            metrics.refit(factoryType, datasetSize, System.nanoTime() - start);
+        }
+        if (event.shouldCommit()) {
+            event.factoryType = factoryType;
+            event.datasetSize = datasetSize;
+            event.commit();
+        }
+        return result;
+    }
+}
@@ -1,12 +1,10 @@
 package very.bored.interpolatingtreemap;
 
 import very.bored.regressionfactories.LinRegEquationFactory;
+import very.bored.regressionfactories.PolyRegEquationFactory;
 import very.bored.regressionfactories.QuadRegEquationFactory;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.TreeMap;
-import java.util.function.Function;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * An object that can create a regression equation for a given set of data.
@@ -31,20 +29,22 @@ import java.util.function.Function;
  * @see InterpolatingTreeMap
  * @see LinRegEquationFactory
  * @see QuadRegEquationFactory
+ * @see PolyRegEquationFactory
  */
 public interface RegressionEquationFactory {
 
     /**
-     * Creates the regression equation for the given set of data, passed as a {@link TreeMap}. The equation
-     * is returned as a {@link Function}, which should take an inputted x value and return the corresponding
-     * ŷ value based on the regression line. Both the x and y values are {@link Double Doubles}.
+     * Creates the regression equation for the given set of data, passed as a {@link PointView}. The equation
+     * is returned as a {@link DoubleUnaryOperator}, which should take an inputted x value and return the
+     * corresponding ŷ value based on the regression line. Both the x and y values are primitive doubles, so
+     * that evaluating the equation does not allocate.
      *
      * <p>Function is encouraged to follow the rules above</p>
      *
      * @param dataPoints The data to use to create the regression equation
      * @return The regression equation function
      */
-    Function<Double, Double> equationFrom(Map<Double, Double> dataPoints);
+    DoubleUnaryOperator equationFrom(PointView dataPoints);
 
     /**
      * Returns the coefficient of determination (R²) for the given data. The coefficient of determination
@@ -64,7 +64,7 @@ public interface RegressionEquationFactory {
      * @param dataPoints The data used to calculate the coefficient of determination
      * @return The coefficient of determination
      */
-    double getCoefficientOfDetermination(Map<Double, Double> dataPoints);
+    double getCoefficientOfDetermination(PointView dataPoints);
 
     /**
      * Returns the regression equation in the form of a string. Implementations are encouraged to
@@ -75,7 +75,33 @@ public interface RegressionEquationFactory {
      * @param dataPoints The data used to create the regression equation
      * @return The regression equation in the form of a string
      */
-    String equationAsString(Map<Double, Double> dataPoints);
+    String equationAsString(PointView dataPoints);
+
+    /**
+     * Formats a regression equation created by this factory as a string, in the same format as
+     * {@link #equationAsString(PointView)}. Unlike the latter, nothing is fitted, so an equation can be
+     * formatted long after it was created, and only if it is needed.
+     * <p>
+     * The default implementation returns {@code equation.toString()}.
+     *
+     * @param equation An equation created by {@link #equationFrom(PointView)}
+     * @return The regression equation in the form of a string
+     */
+    default String format(DoubleUnaryOperator equation) {
+        return equation.toString();
+    }
+
+    /**
+     * Fits the regression equation to the given data, and computes all the statistics of the fit in a single
+     * further pass over the data.
+     *
+     * @param dataPoints The data to use to create the regression equation
+     * @return The complete, immutable result of the fit
+     * @see FitResult
+     */
+    default FitResult fit(PointView dataPoints) {
+        return FitResult.of(this, equationFrom(dataPoints), dataPoints);
+    }
 
     /**
      * Returns the minimum number of data points required to create a regression equation.
@@ -0,0 +1,215 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link MetricsSink} which keeps a counter and a latency histogram for every kind of measurement, factory
+ * type and dataset size bucket. Dataset sizes are bucketed by powers of ten (see {@link #sizeBucket(int)}), and
+ * latencies by powers of two nanoseconds. Each factory type has a row of histograms indexed by kind and bucket, so
+ * that recording a measurement is one map lookup, an array read and a few atomic increments, allocating nothing
+ * once its histogram exists.
+ * <p>
+ * Instances of this class are thread-safe, and may be shared by any number of maps.
+ */
+public final class RegressionMetrics implements MetricsSink {
+
+    /**
+     * The kinds of measurement kept.
+     */
+    public enum Kind {
+        REFIT, EVALUATION, COEFFICIENT_OF_DETERMINATION, EVICTION
+    }
+
+    /**
+     * The tags of a histogram.
+     *
+     * @param kind        The kind of measurement.
+     * @param factoryType The type of the factory measured.
+     * @param sizeBucket  The dataset size bucket, as returned by {@link #sizeBucket(int)}.
+     */
+    public record Key(Kind kind, Class<?> factoryType, int sizeBucket) {
+    }
+
+    /**
+     * A counter and a histogram of latencies, in buckets of powers of two nanoseconds.
+     */
+    public static final class Histogram {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+        private void record(long count, long nanos) {
+            this.count.add(count);
+            totalNanos.add(nanos);
+            buckets.addAndGet(Math.min(Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0)), Long.SIZE - 1), 1);
+        }
+
+        /**
+         * Returns the number of events counted: refits, predicted values, computations or evicted points.
+         *
+         * @return The number of events counted.
+         */
+        public long count() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the total time measured, in nanoseconds.
+         *
+         * @return The total time measured, in nanoseconds.
+         */
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * Returns an upper bound of the inputted quantile of the latencies measured, in nanoseconds, accurate to
+         * within a factor of two.
+         *
+         * @param quantile The quantile, between 0 and 1.
+         * @return An upper bound of the quantile, or 0 if nothing was measured.
+         */
+        public long quantileNanos(double quantile) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+
+            long rank = (long) Math.ceil(quantile * total);
+            for (int i = 0; i < buckets.length(); i++) {
+                rank -= buckets.get(i);
+                if (rank <= 0 && total > 0) {
+                    return i == 0 ? 0 : (1L << i) - 1;
+                }
+            }
+            return total > 0 ? Long.MAX_VALUE : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, total=%dns, p50<=%dns, p99<=%dns",
+                    count(), totalNanos(), quantileNanos(0.5), quantileNanos(0.99));
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    /**
+     * The number of size buckets: 0, then every power of ten up to 10^9.
+     */
+    private static final int BUCKETS = 11;
+
+    private final ConcurrentHashMap<Key, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, AtomicReferenceArray<Histogram>> rows = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the dataset size bucket of the inputted size: the greatest power of ten no greater than it, or 0.
+     *
+     * @param datasetSize The dataset size.
+     * @return The bucket of the dataset size.
+     */
+    public static int sizeBucket(int datasetSize) {
+        int bucket = 1;
+        while (bucket <= datasetSize / 10) {
+            bucket *= 10;
+        }
+        return datasetSize > 0 ? bucket : 0;
+    }
+
+    /**
+     * Returns the index of the size bucket of the inputted size, from 0 to BUCKETS - 1.
+     */
+    private static int bucketIndex(int datasetSize) {
+        if (datasetSize <= 0) {
+            return 0;
+        }
+
+        int index = 1;
+        for (int bound = datasetSize / 10; bound > 0; bound /= 10) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns a live, unmodifiable view of every histogram recorded so far.
+     *
+     * @return The histograms recorded so far.
+     */
+    public Map<Key, Histogram> histograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Returns the histogram of the inputted tags, or null if nothing was recorded for them.
+     *
+     * @param kind        The kind of measurement.
+     * @param factoryType The type of the factory measured.
+     * @param datasetSize A dataset size, bucketed with {@link #sizeBucket(int)}.
+     * @return The histogram of the tags, or null.
+     */
+    public Histogram histogram(Kind kind, Class<?> factoryType, int datasetSize) {
+        AtomicReferenceArray<Histogram> row = rows.get(factoryType);
+        return row == null ? null : row.get(kind.ordinal() * BUCKETS + bucketIndex(datasetSize));
+    }
+
+    /**
+     * Discards every histogram recorded so far.
+     */
+    public void reset() {
+        rows.clear();
+        histograms.clear();
+    }
+
+    private void record(Kind kind, Class<?> factoryType, int datasetSize, long count, long nanos) {
+        AtomicReferenceArray<Histogram> row = rows.get(factoryType);
+        if (row == null) {
+            row = rows.computeIfAbsent(factoryType, type -> new AtomicReferenceArray<>(KINDS.length * BUCKETS));
+        }
+
+        int index = kind.ordinal() * BUCKETS + bucketIndex(datasetSize);
+        Histogram histogram = row.get(index);
+        if (histogram == null) {
+            // Registered in the map of every histogram first, so that both agree on the histogram of a key.
+            histogram = histograms.computeIfAbsent(new Key(kind, factoryType, sizeBucket(datasetSize)),
+                    key -> new Histogram());
+            row.set(index, histogram);
+        }
+        histogram.record(count, nanos);
+    }
+
+    @Override
+    public void refit(Class<?> factoryType, int datasetSize, long nanos) {
+        record(Kind.REFIT, factoryType, datasetSize, 1, nanos);
+    }
+
+    @Override
+    public void evaluation(Class<?> factoryType, int datasetSize, int points, long nanos) {
+        record(Kind.EVALUATION, factoryType, datasetSize, points, nanos);
+    }
+
+    @Override
+    public void coefficientOfDetermination(Class<?> factoryType, int datasetSize, long nanos) {
+        record(Kind.COEFFICIENT_OF_DETERMINATION, factoryType, datasetSize, 1, nanos);
+    }
+
+    @Override
+    public void eviction(Class<?> factoryType, int datasetSize, int points) {
+        record(Kind.EVICTION, factoryType, datasetSize, points, 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        histograms.forEach((key, histogram) -> builder
+                .append(key.kind()).append(' ')
+                .append(key.factoryType().getSimpleName()).append(" n>=").append(key.sizeBucket()).append(": ")
+                .append(histogram).append('\n'));
+        return builder.toString();
+    }
+}
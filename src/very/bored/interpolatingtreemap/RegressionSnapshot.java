@@ -0,0 +1,36 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An immutable snapshot of the regression of an {@link InterpolatingTreeMap} at one point in time: the
+ * regression function along with its coefficient of determination and metadata about the dataset it was
+ * generated from.
+ * <p>
+ * Snapshots are what a {@link ConcurrentInterpolatingTreeMap} publishes to its readers. Since a snapshot never
+ * changes, it can be shared freely between threads and read without any synchronization.
+ *
+ * @param equation                   The regression function. For polynomial regressions, this is a
+ *                                   {@link Polynomial} holding the coefficients.
+ * @param coefficientOfDetermination The coefficient of determination (R²) of the regression function.
+ * @param datasetSize                The number of points the regression function was generated from.
+ * @param version                    The number of changes made to the map before this snapshot was taken;
+ *                                   strictly increasing between successive snapshots of the same map.
+ */
+public record RegressionSnapshot(
+        DoubleUnaryOperator equation,
+        double coefficientOfDetermination,
+        int datasetSize,
+        long version
+) {
+
+    /**
+     * Returns the y-hat value for the inputted x value based on the snapshotted regression function.
+     *
+     * @param x The x value to be predicted.
+     * @return The y-hat value for the inputted x value.
+     */
+    public double getAsDouble(double x) {
+        return equation.applyAsDouble(x);
+    }
+}
@@ -0,0 +1,106 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The running sufficient statistics of a dataset, from which a regression equation can be produced
+ * without rescanning the data points.
+ * <p>
+ * Unlike the functions of a {@link RegressionEquationFactory}, instances of this interface are stateful;
+ * each one describes exactly one dataset, and is updated point by point as that dataset is added to or
+ * detracted from. Adding or removing a point is expected to run in constant time, regardless of how many
+ * points have already been accumulated.
+ * <p>
+ * Instances are created by an {@link IncrementalRegressionEquationFactory}, and are generally owned by a
+ * single {@link InterpolatingTreeMap}. Note that usage of this interface is NOT synchronized.
+ *
+ * @see IncrementalRegressionEquationFactory
+ */
+public interface RegressionStatistics {
+
+    /**
+     * Adds the point (x, y) to the accumulated statistics.
+     *
+     * @param x The x value of the point to add.
+     * @param y The y value of the point to add.
+     */
+    void add(double x, double y);
+
+    /**
+     * Removes the point (x, y) from the accumulated statistics. The point is assumed to have been
+     * previously added; removing a point that was never added leaves the statistics in an undefined state.
+     *
+     * @param x The x value of the point to remove.
+     * @param y The y value of the point to remove.
+     */
+    void remove(double x, double y);
+
+    /**
+     * Adds the point (x, y) to the accumulated statistics with the inputted weight, as if it had been added
+     * weight times. Weighted statistics produce weighted least-squares regressions (optional operation).
+     *
+     * @param x      The x value of the point to add.
+     * @param y      The y value of the point to add.
+     * @param weight The positive weight of the point.
+     * @throws UnsupportedOperationException If these statistics do not support weights.
+     */
+    default void add(double x, double y, double weight) {
+        throw new UnsupportedOperationException("Weighted points are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Removes the point (x, y), previously added with the inputted weight, from the accumulated statistics
+     * (optional operation).
+     *
+     * @param x      The x value of the point to remove.
+     * @param y      The y value of the point to remove.
+     * @param weight The weight the point was added with.
+     * @throws UnsupportedOperationException If these statistics do not support weights.
+     */
+    default void remove(double x, double y, double weight) {
+        throw new UnsupportedOperationException("Weighted points are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Multiplies the weight of every accumulated point by the inputted factor, in O(1) regardless of the
+     * number of points. Used to decay old points exponentially (optional operation).
+     *
+     * @param factor The positive factor to multiply every weight by.
+     * @throws UnsupportedOperationException If these statistics do not support weights.
+     */
+    default void scale(double factor) {
+        throw new UnsupportedOperationException("Weighted points are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Returns the number of points currently accumulated, or {@link Integer#MAX_VALUE} if there are more, as there
+     * can be in statistics which are only ever added to, such as those of an exponentially weighted window.
+     *
+     * @return The number of points currently accumulated, saturated at {@link Integer#MAX_VALUE}.
+     */
+    int size();
+
+    /**
+     * Creates the regression equation from the accumulated statistics. The returned {@link DoubleUnaryOperator} is
+     * detached from these statistics; later additions or removals do not affect it.
+     *
+     * @return The regression equation function.
+     */
+    DoubleUnaryOperator equation();
+
+    /**
+     * Returns the coefficient of determination (R²) of the regression equation over the accumulated points,
+     * computed from the statistics alone. See {@link RegressionEquationFactory#getCoefficientOfDetermination}.
+     *
+     * @return The coefficient of determination.
+     */
+    double getCoefficientOfDetermination();
+
+    /**
+     * Returns the regression equation from the accumulated statistics in the form of a string, following
+     * the same conventions as {@link RegressionEquationFactory#equationAsString}.
+     *
+     * @return The regression equation in the form of a string.
+     */
+    String equationAsString();
+}
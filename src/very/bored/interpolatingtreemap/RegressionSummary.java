@@ -0,0 +1,244 @@
+package very.bored.interpolatingtreemap;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A compact, serializable summary of the regression state of a dataset: the type of the factory that produced it,
+ * the number of points, their minimum and maximum x values, and the moments of the factory's
+ * {@link MergeableRegressionStatistics}. A summary takes O(degree) bytes regardless of the number of points.
+ * <p>
+ * Summaries of disjoint datasets, such as the shards of a dataset spread across several JVMs, can be merged with
+ * {@link #merge} without moving any points. The global regression is then recovered by feeding the merged summary
+ * to the same factory, through {@link IncrementalRegressionEquationFactory#statisticsFrom(RegressionSummary)}:
+ * <pre>{@code
+ *  var factory = new QuadRegEquationFactory();
+ *  var merged = RegressionSummary.merge(factory, shardA.summary(), RegressionSummary.readFrom(input));
+ *  var global = factory.statisticsFrom(merged);
+ *  double r2 = global.getCoefficientOfDetermination();
+ * }</pre>
+ * <p>
+ * Instances of this class are immutable.
+ */
+public final class RegressionSummary {
+
+    /**
+     * The magic number which starts every serialized summary, "ITMS".
+     */
+    private static final int MAGIC = 0x49544D53;
+
+    /**
+     * The version of the serialized format. Summaries of any other version are rejected when read.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private final String factoryType;
+    private final int count;
+    private final double minX, maxX;
+    private final double[] moments;
+
+    private RegressionSummary(String factoryType, int count, double minX, double maxX, double[] moments) {
+        this.factoryType = factoryType;
+        this.count = count;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.moments = moments;
+    }
+
+    /**
+     * Helper function which summarizes the inputted statistics.
+     *
+     * @param factory    The factory which created the statistics.
+     * @param statistics The statistics to summarize.
+     * @param minX       The minimum x value of the points accumulated in the statistics.
+     * @param maxX       The maximum x value of the points accumulated in the statistics.
+     * @return The summary of the statistics.
+     * @throws UnsupportedOperationException If the statistics are not {@link MergeableRegressionStatistics}.
+     */
+    static RegressionSummary of(RegressionEquationFactory factory, RegressionStatistics statistics, double minX, double maxX) {
+        if (!(statistics instanceof MergeableRegressionStatistics mergeable))
+            throw new UnsupportedOperationException(factory.getClass().getName() + " does not support summaries");
+
+        return new RegressionSummary(factory.getClass().getName(), statistics.size(), minX, maxX, mergeable.moments());
+    }
+
+    /**
+     * Merges the summaries of disjoint datasets into the summary of their union.
+     *
+     * @param factory   The factory which produced every summary.
+     * @param summaries The summaries to merge.
+     * @return The summary of the union of the datasets.
+     * @throws IllegalArgumentException If any summary was not produced by the same type of factory.
+     * @throws NullPointerException     If the factory or any summary is null.
+     */
+    public static RegressionSummary merge(IncrementalRegressionEquationFactory factory, RegressionSummary... summaries) {
+        MergeableRegressionStatistics statistics = null;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+
+        for (RegressionSummary summary : summaries) {
+            MergeableRegressionStatistics restored = factory.statisticsFrom(summary);
+            if (statistics == null) {
+                statistics = restored;
+            } else {
+                statistics.merge(restored);
+            }
+
+            minX = Math.min(minX, summary.minX);
+            maxX = Math.max(maxX, summary.maxX);
+        }
+
+        return of(factory, statistics != null ? statistics : factory.newStatistics(), minX, maxX);
+    }
+
+    /**
+     * Returns the fully qualified class name of the factory which produced this summary.
+     *
+     * @return The type of the factory which produced this summary.
+     */
+    public String getFactoryType() {
+        return factoryType;
+    }
+
+    /**
+     * Returns the number of points summarized.
+     *
+     * @return The number of points summarized.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the minimum x value of the points summarized, or positive infinity if there are none.
+     *
+     * @return The minimum x value of the points summarized.
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Returns the maximum x value of the points summarized, or negative infinity if there are none.
+     *
+     * @return The maximum x value of the points summarized.
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Returns a copy of the moments of the statistics summarized, in the layout of
+     * {@link MergeableRegressionStatistics#moments()}.
+     *
+     * @return A copy of the moments of the statistics summarized.
+     */
+    public double[] getMoments() {
+        return moments.clone();
+    }
+
+    /**
+     * Writes this summary in its binary format: a magic number and format version, the factory type, the count,
+     * the minimum and maximum x values, and the moments.
+     *
+     * @param out The output to write to.
+     * @throws IOException If the output throws.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(factoryType);
+        out.writeInt(count);
+        out.writeDouble(minX);
+        out.writeDouble(maxX);
+        out.writeInt(moments.length);
+        for (double moment : moments) {
+            out.writeDouble(moment);
+        }
+    }
+
+    /**
+     * Reads a summary written by {@link #writeTo}.
+     *
+     * @param in The input to read from.
+     * @return The summary read.
+     * @throws IOException If the input throws, or does not hold a summary of the current format version.
+     */
+    public static RegressionSummary readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Input is not a regression summary");
+
+        int version = in.readInt();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported regression summary version " + version + ", expected " + FORMAT_VERSION);
+
+        String factoryType = in.readUTF();
+        int count = in.readInt();
+        double minX = in.readDouble();
+        double maxX = in.readDouble();
+
+        int length = in.readInt();
+        if (count < 0 || length < 0 || length > 1 << 16)
+            throw new IOException("Corrupt regression summary");
+
+        double[] moments = new double[length];
+        for (int i = 0; i < length; i++) {
+            moments[i] = in.readDouble();
+        }
+
+        return new RegressionSummary(factoryType, count, minX, maxX, moments);
+    }
+
+    /**
+     * Returns this summary in its binary format.
+     *
+     * @return This summary in its binary format.
+     * @see #writeTo(DataOutput)
+     */
+    public byte[] toByteArray() {
+        var bytes = new ByteArrayOutputStream(48 + factoryType.length() + 8 * moments.length);
+        try (var out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a summary from its binary format.
+     *
+     * @param bytes The summary in its binary format.
+     * @return The summary read.
+     * @throws IllegalArgumentException If the bytes do not hold a summary of the current format version.
+     * @see #readFrom(DataInput)
+     */
+    public static RegressionSummary fromByteArray(byte[] bytes) {
+        try {
+            return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RegressionSummary that
+                && count == that.count
+                && Double.compare(minX, that.minX) == 0
+                && Double.compare(maxX, that.maxX) == 0
+                && factoryType.equals(that.factoryType)
+                && Arrays.equals(moments, that.moments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(factoryType, count, minX, maxX, Arrays.hashCode(moments));
+    }
+
+    @Override
+    public String toString() {
+        return "RegressionSummary[" + factoryType + ", count=" + count + ", x=[" + minX + ", " + maxX + "]]";
+    }
+}
@@ -0,0 +1,368 @@
+package very.bored.interpolatingtreemap;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The primitive backing store of an {@link InterpolatingTreeMap}: two parallel {@code double[]} arrays,
+ * holding the x and y values of every point sorted by ascending x.
+ * <p>
+ * Compared to a {@code TreeMap<Double, Double>}, each point costs 16 bytes rather than a tree node and two
+ * boxed {@link Double Doubles}, and lookups are a binary search over contiguous memory. Inserting or removing
+ * a point in the middle shifts the points after it with a single {@link System#arraycopy}; points appended
+ * after the current greatest x, as with time series, are inserted in amortized O(1).
+ * <p>
+ * A store may also be backed by a pair of {@link DoubleBuffer DoubleBuffers}, typically views of a memory-mapped
+ * file, in which case it is read straight from the buffers and only copied onto the heap on its first modification.
+ * <p>
+ * Stores can share their arrays through {@link #share()}, which is O(1); whichever store is modified next
+ * copies the arrays first (copy-on-write), so that derived maps and read-only views of the same points cost
+ * nothing until they diverge.
+ * <p>
+ * Note that usage of this class is NOT synchronized.
+ */
+final class SortedPointStore implements PointView {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double[] xs;
+    private double[] ys;
+    private int size;
+
+    /**
+     * The buffers backing this store until its first modification, or null if it is backed by xs and ys.
+     */
+    private DoubleBuffer bufferXs, bufferYs;
+
+    /**
+     * Whether xs and ys may be shared with another store, and so must be copied before they are modified.
+     */
+    private boolean shared;
+
+    SortedPointStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    SortedPointStore(int initialCapacity) {
+        xs = new double[Math.max(initialCapacity, 1)];
+        ys = new double[xs.length];
+    }
+
+    /**
+     * Creates a store holding a copy of the given points.
+     *
+     * @param points The points to copy.
+     */
+    SortedPointStore(PointView points) {
+        this(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            xs[i] = points.xAt(i);
+            ys[i] = points.yAt(i);
+        }
+        size = points.size();
+    }
+
+    /**
+     * Creates a store backed by the given buffers, which must hold the same number of points sorted by ascending x.
+     * The buffers are read in place, from their position onwards, until the store is first modified.
+     *
+     * @param xs The x values of the points.
+     * @param ys The y values of the points.
+     */
+    SortedPointStore(DoubleBuffer xs, DoubleBuffer ys) {
+        if (xs.remaining() != ys.remaining())
+            throw new IllegalArgumentException("Column lengths differ: " + xs.remaining() + " and " + ys.remaining());
+
+        this.bufferXs = xs.slice();
+        this.bufferYs = ys.slice();
+        this.size = xs.remaining();
+    }
+
+    /**
+     * Creates a store which shares the points of this one in O(1). Both stores copy the points before they are
+     * next modified, so neither ever observes a modification of the other.
+     *
+     * @return A store holding the same points as this one.
+     */
+    SortedPointStore share() {
+        var copy = new SortedPointStore(0);
+        copy.size = size;
+        if (xs != null) {
+            copy.xs = xs;
+            copy.ys = ys;
+            copy.shared = shared = true;
+        } else {
+            copy.xs = copy.ys = null;
+            copy.bufferXs = bufferXs.duplicate();
+            copy.bufferYs = bufferYs.duplicate();
+        }
+        return copy;
+    }
+
+    /**
+     * Helper function which copies a buffer-backed or shared store into arrays of its own, before it is modified.
+     */
+    private void materialize() {
+        if (bufferXs == null && !shared) {
+            return;
+        }
+
+        int capacity = size + (size >> 1) + 1;
+        if (bufferXs != null) {
+            xs = new double[capacity];
+            ys = new double[capacity];
+            bufferXs.get(0, xs, 0, size);
+            bufferYs.get(0, ys, 0, size);
+            bufferXs = bufferYs = null;
+        } else {
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        shared = false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double xAt(int index) {
+        return xs != null ? xs[Objects.checkIndex(index, size)] : bufferXs.get(Objects.checkIndex(index, size));
+    }
+
+    @Override
+    public double yAt(int index) {
+        return ys != null ? ys[Objects.checkIndex(index, size)] : bufferYs.get(Objects.checkIndex(index, size));
+    }
+
+    @Override
+    public int indexOf(double x) {
+        if (size > 0 && Double.compare(xAt(size - 1), x) < 0) {
+            return -(size + 1);
+        }
+        return xs != null ? Arrays.binarySearch(xs, 0, size, x) : PointView.super.indexOf(x);
+    }
+
+    /**
+     * Replaces the y value of the point at the given index.
+     *
+     * @param index The index of the point.
+     * @param y     The new y value.
+     */
+    void setY(int index, double y) {
+        materialize();
+        ys[Objects.checkIndex(index, size)] = y;
+    }
+
+    /**
+     * Inserts a new point at the given insertion point, as returned by {@link #indexOf}. The caller is
+     * responsible for the insertion point keeping the store sorted.
+     *
+     * @param insertionPoint The index at which to insert the point.
+     * @param x              The x value of the point.
+     * @param y              The y value of the point.
+     */
+    void insert(int insertionPoint, double x, double y) {
+        Objects.checkIndex(insertionPoint, size + 1);
+        materialize();
+
+        if (size == xs.length) {
+            int capacity = xs.length + (xs.length >> 1) + 1;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+
+        int moved = size - insertionPoint;
+        if (moved > 0) {
+            System.arraycopy(xs, insertionPoint, xs, insertionPoint + 1, moved);
+            System.arraycopy(ys, insertionPoint, ys, insertionPoint + 1, moved);
+        }
+
+        xs[insertionPoint] = x;
+        ys[insertionPoint] = y;
+        size++;
+    }
+
+    /**
+     * Adds all the given points, replacing the y value of any x value already present. If several of the given
+     * points share an x value, the last one is kept, as if they had been inserted one after the other.
+     * <p>
+     * Points sorted by strictly ascending x are merged in linear time, and appended with a single
+     * {@link System#arraycopy} if they all lie after the current greatest x. Otherwise, they are first sorted
+     * in O(n log n).
+     *
+     * @param xs       The x values of the points.
+     * @param ys       The y values of the points.
+     * @param length   The number of points, from the start of each array.
+     * @param replaced Accepts every point replaced, with its previous y value.
+     * @param added    Accepts every point added or replaced, with its new y value.
+     */
+    void putAll(double[] xs, double[] ys, int length, PointConsumer replaced, PointConsumer added) {
+        Objects.checkFromIndexSize(0, length, Math.min(xs.length, ys.length));
+
+        if (!isSorted(xs, length)) {
+            int[] order = sortedOrder(xs, length);
+            double[] sortedXs = new double[length];
+            double[] sortedYs = new double[length];
+
+            int n = 0;
+            for (int index : order) {
+                if (n > 0 && Double.compare(sortedXs[n - 1], xs[index]) == 0) {
+                    n--;
+                }
+                sortedXs[n] = xs[index];
+                sortedYs[n] = ys[index];
+                n++;
+            }
+
+            xs = sortedXs;
+            ys = sortedYs;
+            length = n;
+        }
+
+        if (length == 0) {
+            return;
+        }
+
+        if (bufferXs != null) {
+            materialize();
+        }
+
+        if (size == 0 || Double.compare(this.xs[size - 1], xs[0]) < 0) {
+            append(xs, ys, length, added);
+        } else {
+            merge(xs, ys, length, replaced, added);
+        }
+    }
+
+    /**
+     * Helper function which appends points that all lie after the current greatest x.
+     */
+    private void append(double[] xs, double[] ys, int length, PointConsumer added) {
+        if (shared || size + length > this.xs.length) {
+            int capacity = size + length + ((size + length) >> 1) + 1;
+            this.xs = Arrays.copyOf(this.xs, capacity);
+            this.ys = Arrays.copyOf(this.ys, capacity);
+            shared = false;
+        }
+
+        System.arraycopy(xs, 0, this.xs, size, length);
+        System.arraycopy(ys, 0, this.ys, size, length);
+        size += length;
+
+        for (int i = 0; i < length; i++) {
+            added.accept(xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * Helper function which merges sorted points into new arrays, in a single linear pass.
+     */
+    private void merge(double[] xs, double[] ys, int length, PointConsumer replaced, PointConsumer added) {
+        int capacity = size + length + ((size + length) >> 1) + 1;
+        double[] mergedXs = new double[capacity];
+        double[] mergedYs = new double[capacity];
+
+        int i = 0, j = 0, n = 0;
+        while (i < size && j < length) {
+            int cmp = Double.compare(this.xs[i], xs[j]);
+            if (cmp < 0) {
+                mergedXs[n] = this.xs[i];
+                mergedYs[n++] = this.ys[i++];
+                continue;
+            }
+
+            if (cmp == 0) {
+                replaced.accept(this.xs[i], this.ys[i]);
+                i++;
+            }
+            added.accept(xs[j], ys[j]);
+            mergedXs[n] = xs[j];
+            mergedYs[n++] = ys[j++];
+        }
+
+        System.arraycopy(this.xs, i, mergedXs, n, size - i);
+        System.arraycopy(this.ys, i, mergedYs, n, size - i);
+        n += size - i;
+
+        for (int k = j; k < length; k++) {
+            added.accept(xs[k], ys[k]);
+        }
+        System.arraycopy(xs, j, mergedXs, n, length - j);
+        System.arraycopy(ys, j, mergedYs, n, length - j);
+        n += length - j;
+
+        this.xs = mergedXs;
+        this.ys = mergedYs;
+        size = n;
+        shared = false;
+    }
+
+    /**
+     * Helper function which checks whether the first length x values are in strictly ascending order.
+     */
+    private static boolean isSorted(double[] xs, int length) {
+        for (int i = 1; i < length; i++) {
+            if (Double.compare(xs[i - 1], xs[i]) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper function which returns the indices of the first length x values in ascending order of x, by a
+     * stable, bottom-up merge sort; indices of equal x values stay in their original order.
+     */
+    private static int[] sortedOrder(double[] xs, int length) {
+        int[] order = new int[length];
+        int[] buffer = new int[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+
+        for (int width = 1; width < length; width <<= 1) {
+            for (int low = 0; low < length; low += width << 1) {
+                int mid = Math.min(low + width, length);
+                int high = Math.min(low + (width << 1), length);
+
+                int i = low, j = mid, k = low;
+                while (i < mid && j < high) {
+                    buffer[k++] = Double.compare(xs[order[j]], xs[order[i]]) < 0 ? order[j++] : order[i++];
+                }
+                while (i < mid) {
+                    buffer[k++] = order[i++];
+                }
+                while (j < high) {
+                    buffer[k++] = order[j++];
+                }
+            }
+
+            int[] sorted = buffer;
+            buffer = order;
+            order = sorted;
+        }
+
+        return order;
+    }
+
+    /**
+     * Removes the point at the given index.
+     *
+     * @param index The index of the point to remove.
+     */
+    void removeAt(int index) {
+        Objects.checkIndex(index, size);
+        materialize();
+
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(xs, index + 1, xs, index, moved);
+            System.arraycopy(ys, index + 1, ys, index, moved);
+        }
+
+        size--;
+    }
+}
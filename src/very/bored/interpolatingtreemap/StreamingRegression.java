@@ -0,0 +1,431 @@
+package very.bored.interpolatingtreemap;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A regression over an unbounded stream of (x, y) points, of which only the most recent are kept. Unlike an
+ * {@link InterpolatingTreeMap}, the points are not keyed by x, so the same x value may arrive many times, and
+ * old points leave the regression on their own as new ones arrive.
+ * <p>
+ * Three windows are offered:
+ * <ul>
+ *     <li>{@link #countWindow}, which keeps the last n points to arrive.</li>
+ *     <li>{@link #keyRangeWindow}, which keeps the points whose x value is within a range of the greatest x seen.</li>
+ *     <li>{@link #exponentiallyWeighted}, which keeps every point, but halves its weight every time the greatest x
+ *     seen advances by a half-life. No points are stored at all.</li>
+ * </ul>
+ * Every put is O(1) (O(log n) for the key-range window) and allocation free, as the evicted points are removed
+ * from the running {@link RegressionStatistics} of the injected {@link IncrementalRegressionEquationFactory}
+ * instead of the regression being regenerated from the window. The regression function itself is generated
+ * lazily, on the first read after a put.
+ * <p>
+ * Note that usage of this class is NOT synchronized.
+ */
+public final class StreamingRegression {
+
+    /**
+     * The {@link IncrementalRegressionEquationFactory} implementation which is used to generate the
+     * regression line from the window.
+     */
+    private final IncrementalRegressionEquationFactory regressionEquationFactory;
+
+    /**
+     * The running {@link RegressionStatistics} of the points currently in the window.
+     */
+    private final RegressionStatistics statistics;
+
+    /**
+     * The policy deciding which points leave the window as new ones arrive.
+     */
+    private final Window window;
+
+    /**
+     * The generated regression function, or null if the window has changed since it was last generated.
+     */
+    private DoubleUnaryOperator cachedRegressionEquation;
+
+    /**
+     * The sink which the refits, evaluations and evictions are measured into.
+     */
+    private MetricsSink metrics = MetricsSink.NOOP;
+
+    private StreamingRegression(IncrementalRegressionEquationFactory regressionEquationFactory, Window window) {
+        this.regressionEquationFactory = regressionEquationFactory;
+        this.statistics = regressionEquationFactory.newStatistics();
+        this.window = window;
+    }
+
+    /**
+     * Creates a StreamingRegression which keeps only the last capacity points to arrive.
+     *
+     * @param regressionEquationFactory The desired implementation of the IncrementalRegressionEquationFactory.
+     * @param capacity                  The number of points kept in the window.
+     * @return The new StreamingRegression.
+     * @throws IllegalArgumentException If capacity is smaller than the minimum number of entries of the factory.
+     * @throws NullPointerException     If the regressionEquationFactory is null.
+     */
+    public static StreamingRegression countWindow(IncrementalRegressionEquationFactory regressionEquationFactory, int capacity) {
+        Objects.requireNonNull(regressionEquationFactory);
+        if (capacity < regressionEquationFactory.getMinEntries())
+            throw new IllegalArgumentException(
+                    "Window capacity " + capacity + " is smaller than the minimum of " + regressionEquationFactory.getMinEntries());
+
+        return new StreamingRegression(regressionEquationFactory, new CountWindow(capacity));
+    }
+
+    /**
+     * Creates a StreamingRegression which keeps only the points whose x value is no more than range below the
+     * greatest x value seen so far. Points arriving with an x value already outside the window are ignored.
+     *
+     * @param regressionEquationFactory The desired implementation of the IncrementalRegressionEquationFactory.
+     * @param range                     The width of the window, in units of x.
+     * @return The new StreamingRegression.
+     * @throws IllegalArgumentException If range is not positive and finite.
+     * @throws NullPointerException     If the regressionEquationFactory is null.
+     */
+    public static StreamingRegression keyRangeWindow(IncrementalRegressionEquationFactory regressionEquationFactory, double range) {
+        Objects.requireNonNull(regressionEquationFactory);
+        if (!(range > 0) || Double.isInfinite(range))
+            throw new IllegalArgumentException("Window range must be positive and finite, was " + range);
+
+        return new StreamingRegression(regressionEquationFactory, new KeyRangeWindow(range));
+    }
+
+    /**
+     * Creates a StreamingRegression in which each point is weighted by 2^(-(maxX - x) / halfLife), where maxX is
+     * the greatest x value seen so far, so that older points fade out smoothly instead of leaving all at once.
+     * No points are stored; the weights of all points are decayed at once, in O(1), whenever maxX advances.
+     * <p>
+     * Requires that the statistics of the factory support weighted points, as
+     * {@link very.bored.regressionfactories.LinRegEquationFactory},
+     * {@link very.bored.regressionfactories.QuadRegEquationFactory} and
+     * {@link very.bored.regressionfactories.PolyRegEquationFactory} do.
+     *
+     * @param regressionEquationFactory The desired implementation of the IncrementalRegressionEquationFactory.
+     * @param halfLife                  The distance in x over which the weight of a point halves.
+     * @return The new StreamingRegression.
+     * @throws IllegalArgumentException If halfLife is not positive and finite.
+     * @throws NullPointerException     If the regressionEquationFactory is null.
+     */
+    public static StreamingRegression exponentiallyWeighted(IncrementalRegressionEquationFactory regressionEquationFactory, double halfLife) {
+        Objects.requireNonNull(regressionEquationFactory);
+        if (!(halfLife > 0) || Double.isInfinite(halfLife))
+            throw new IllegalArgumentException("Half-life must be positive and finite, was " + halfLife);
+
+        return new StreamingRegression(regressionEquationFactory, new DecayingWindow(halfLife));
+    }
+
+    /**
+     * Adds the point (x, y) to the window, evicting (or decaying) older points as required.
+     *
+     * @param x The x value of the point.
+     * @param y The y value of the point.
+     * @throws IllegalArgumentException If x or y is not finite.
+     */
+    public void put(double x, double y) {
+        if (!Double.isFinite(x) || !Double.isFinite(y))
+            throw new IllegalArgumentException("Point (" + x + ", " + y + ") is not finite");
+
+        int evicted = window.put(statistics, x, y);
+        cachedRegressionEquation = null;
+
+        if (evicted > 0 && metrics != MetricsSink.NOOP) {
+            metrics.eviction(regressionEquationFactory.getClass(), statistics.size(), evicted);
+        }
+    }
+
+    /**
+     * Helper function which returns the cached regression function, generating it first if the window has
+     * changed since it was last generated.
+     *
+     * @return The regression function for the current window.
+     * @throws IllegalStateException If the window holds fewer points than the minimum of the factory.
+     */
+    private DoubleUnaryOperator regressionEquation() {
+        DoubleUnaryOperator equation = cachedRegressionEquation;
+        if (equation == null) {
+            if (datasetSize() < minimumDatasetSize())
+                throw new IllegalStateException(
+                        "Window holds " + datasetSize() + " points, fewer than the minimum of " + minimumDatasetSize());
+
+            equation = cachedRegressionEquation = RefitEvent.measure(
+                    metrics, regressionEquationFactory.getClass(), statistics.size(), statistics::equation);
+        }
+        return equation;
+    }
+
+    /**
+     * Returns the y-hat value for the inputted x value based on the regression function of the current window.
+     *
+     * @param x The x value to be predicted.
+     * @return The y-hat value for the inputted x value.
+     * @throws IllegalStateException If the window holds fewer points than the minimum of the factory.
+     */
+    public double getAsDouble(double x) {
+        if (metrics == MetricsSink.NOOP) {
+            return regressionEquation().applyAsDouble(x);
+        }
+
+        long start = System.nanoTime();
+        double y = regressionEquation().applyAsDouble(x);
+        metrics.evaluation(regressionEquationFactory.getClass(), statistics.size(), 1, System.nanoTime() - start);
+        return y;
+    }
+
+    /**
+     * Sets the sink which the refits, evaluations and evictions of this StreamingRegression are measured into.
+     * Nothing is measured by default.
+     *
+     * @param metrics The sink to measure into, or {@link MetricsSink#NOOP} to stop measuring.
+     * @throws NullPointerException If metrics is null.
+     */
+    public void setMetricsSink(MetricsSink metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Predicts the y-hat value of every x value in xs, writing the y-hat at index i of xs into index i of out.
+     *
+     * @param xs  The x values to be predicted.
+     * @param out The array to write the y-hat values into. Must be at least as long as xs.
+     * @throws IllegalArgumentException If out is shorter than xs.
+     * @throws IllegalStateException    If the window holds fewer points than the minimum of the factory.
+     * @throws NullPointerException     If xs or out is null.
+     * @see InterpolatingTreeMap#get(double[], double[])
+     */
+    public void get(double[] xs, double[] out) {
+        if (out.length < xs.length)
+            throw new IllegalArgumentException(
+                    "Output array of length " + out.length + " is shorter than the input of length " + xs.length);
+
+        DoubleUnaryOperator equation = regressionEquation();
+        if (equation instanceof Polynomial polynomial) {
+            polynomial.evaluate(xs, out);
+        } else {
+            for (int i = 0; i < xs.length; i++) {
+                out[i] = equation.applyAsDouble(xs[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the regression function of the current window as a {@link DoubleUnaryOperator}. The operator is
+     * detached from this StreamingRegression; later puts do not affect it.
+     *
+     * @return The regression {@link DoubleUnaryOperator} of the current window.
+     * @throws IllegalStateException If the window holds fewer points than the minimum of the factory.
+     */
+    public DoubleUnaryOperator getRegressionOperator() {
+        return regressionEquation();
+    }
+
+    /**
+     * Returns the regression function of the current window as a String.
+     *
+     * @return The regression function of the current window as a String.
+     * @throws IllegalStateException If the window holds fewer points than the minimum of the factory.
+     */
+    public String getEquationAsString() {
+        regressionEquation();
+        return statistics.equationAsString();
+    }
+
+    /**
+     * Returns the coefficient of determination (R^2) of the regression function of the current window,
+     * weighted if the window is exponentially weighted.
+     *
+     * @return The coefficient of determination (R^2) of the regression function.
+     * @throws IllegalStateException If the window holds fewer points than the minimum of the factory.
+     */
+    public double getCoefficientOfDetermination() {
+        regressionEquation();
+        return statistics.getCoefficientOfDetermination();
+    }
+
+    /**
+     * Returns the {@link IncrementalRegressionEquationFactory} used to generate the regression function.
+     *
+     * @return The {@link IncrementalRegressionEquationFactory} used to generate the regression function.
+     */
+    public IncrementalRegressionEquationFactory getRegressionEquationFactory() {
+        return regressionEquationFactory;
+    }
+
+    /**
+     * Returns the number of points in the window. For an exponentially weighted window, this is every point
+     * put so far, saturated at {@link Integer#MAX_VALUE}.
+     *
+     * @return The number of points in the window.
+     */
+    public int datasetSize() {
+        return statistics.size();
+    }
+
+    /**
+     * Returns the minimum number of points required in the window to generate a regression function.
+     *
+     * @return The minimum number of points required to generate a regression function.
+     */
+    public int minimumDatasetSize() {
+        return regressionEquationFactory.getMinEntries();
+    }
+
+    /**
+     * The policy deciding which points leave the running statistics as new points are put.
+     */
+    private interface Window {
+        /**
+         * Adds the point to the statistics, and removes the points leaving the window.
+         *
+         * @return The number of points evicted, counting a point ignored for being outside the window.
+         */
+        int put(RegressionStatistics statistics, double x, double y);
+    }
+
+    /**
+     * Keeps the last capacity points in a primitive ring buffer, overwriting (and removing) the oldest one
+     * once it is full.
+     */
+    private static final class CountWindow implements Window {
+        private final double[] xs;
+        private final double[] ys;
+        private int head;
+        private int size;
+
+        private CountWindow(int capacity) {
+            this.xs = new double[capacity];
+            this.ys = new double[capacity];
+        }
+
+        @Override
+        public int put(RegressionStatistics statistics, double x, double y) {
+            int slot, evicted = 0;
+            if (size == xs.length) {
+                evicted = 1;
+                slot = head;
+                statistics.remove(xs[slot], ys[slot]);
+                head = head + 1 == xs.length ? 0 : head + 1;
+            } else {
+                slot = head + size < xs.length ? head + size : head + size - xs.length;
+                size++;
+            }
+
+            xs[slot] = x;
+            ys[slot] = y;
+            statistics.add(x, y);
+            return evicted;
+        }
+    }
+
+    /**
+     * Keeps the points within range of the greatest x seen in a primitive binary min-heap on x, so that the
+     * points falling out of the window are always at the top of the heap, whatever order they arrived in.
+     */
+    private static final class KeyRangeWindow implements Window {
+        private final double range;
+        private double[] xs = new double[16];
+        private double[] ys = new double[16];
+        private int size;
+        private double maxX = Double.NEGATIVE_INFINITY;
+
+        private KeyRangeWindow(double range) {
+            this.range = range;
+        }
+
+        @Override
+        public int put(RegressionStatistics statistics, double x, double y) {
+            maxX = Math.max(maxX, x);
+            double cutoff = maxX - range;
+            if (x < cutoff) {
+                return 1;
+            }
+
+            int evicted = 0;
+            while (size > 0 && xs[0] < cutoff) {
+                statistics.remove(xs[0], ys[0]);
+                pollFirst();
+                evicted++;
+            }
+
+            offer(x, y);
+            statistics.add(x, y);
+            return evicted;
+        }
+
+        private void offer(double x, double y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size << 1);
+                ys = Arrays.copyOf(ys, size << 1);
+            }
+
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (xs[parent] <= x) {
+                    break;
+                }
+                xs[i] = xs[parent];
+                ys[i] = ys[parent];
+                i = parent;
+            }
+            xs[i] = x;
+            ys[i] = y;
+        }
+
+        private void pollFirst() {
+            double x = xs[--size];
+            double y = ys[size];
+
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = (i << 1) + 1;
+                if (child + 1 < size && xs[child + 1] < xs[child]) {
+                    child++;
+                }
+                if (x <= xs[child]) {
+                    break;
+                }
+                xs[i] = xs[child];
+                ys[i] = ys[child];
+                i = child;
+            }
+            xs[i] = x;
+            ys[i] = y;
+        }
+    }
+
+    /**
+     * Decays every point by the same factor whenever the greatest x seen advances, using
+     * {@link RegressionStatistics#scale(double)}, and adds late points with their already decayed weight.
+     */
+    private static final class DecayingWindow implements Window {
+        private final double halfLife;
+        private double maxX = Double.NaN;
+
+        private DecayingWindow(double halfLife) {
+            this.halfLife = halfLife;
+        }
+
+        @Override
+        public int put(RegressionStatistics statistics, double x, double y) {
+            if (Double.isNaN(maxX)) {
+                maxX = x;
+            }
+
+            if (x > maxX) {
+                statistics.scale(Math.pow(2, (maxX - x) / halfLife));
+                maxX = x;
+                statistics.add(x, y, 1.0);
+            } else {
+                double weight = Math.pow(2, (x - maxX) / halfLife);
+                if (weight > 0) {
+                    statistics.add(x, y, weight);
+                }
+            }
+            return 0;
+        }
+    }
+}
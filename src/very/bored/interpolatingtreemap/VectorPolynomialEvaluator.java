@@ -0,0 +1,58 @@
+package very.bored.interpolatingtreemap;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorized bulk evaluation of polynomials with Horner's scheme, using the incubating Vector API.
+ * <p>
+ * The lane width is that of {@link DoubleVector#SPECIES_PREFERRED}, which is chosen by the JVM at runtime
+ * to match the widest vectors supported by the hardware. Each lane performs exactly the same multiply and
+ * add as the scalar loop in {@link PolynomialEvaluator}, without fusing them, so the results are
+ * bit-identical to it.
+ * <p>
+ * This class must only be loaded when the {@code jdk.incubator.vector} module is present; it is only ever
+ * referenced through {@link PolynomialEvaluator}, which checks for it first.
+ */
+final class VectorPolynomialEvaluator {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorPolynomialEvaluator() {
+    }
+
+    /**
+     * Returns the number of doubles processed per vector in this JVM.
+     *
+     * @return The number of lanes of the preferred species.
+     */
+    static int laneCount() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Evaluates the polynomial with the inputted coefficients at the first length values of xs, writing
+     * the results into out. The tail that does not fill a whole vector is evaluated by the scalar loop.
+     *
+     * @param coefficients The coefficients of the polynomial, in ascending order of power.
+     * @param xs           The x values.
+     * @param out          The array to write the values into.
+     * @param length       The number of values to evaluate.
+     */
+    static void evaluate(double[] coefficients, double[] xs, double[] out, int length) {
+        int degree = coefficients.length - 1;
+        int bound = SPECIES.loopBound(length);
+
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, xs, i);
+            DoubleVector result = DoubleVector.broadcast(SPECIES, coefficients[degree]);
+            for (int k = degree - 1; k >= 0; k--) {
+                result = result.mul(x).add(coefficients[k]);
+            }
+            result.intoArray(out, i);
+        }
+
+        PolynomialEvaluator.evaluateScalar(coefficients, xs, out, i, length);
+    }
+}
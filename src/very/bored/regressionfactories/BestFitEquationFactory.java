@@ -0,0 +1,418 @@
+package very.bored.regressionfactories;
+
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.MergeableRegressionStatistics;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.interpolatingtreemap.Polynomial;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Races several candidate factories against each other, and produces the equation of whichever fits the data
+ * best by the chosen {@link Criterion}.
+ * <p>
+ * Rather than fitting every candidate separately, the statistics of every candidate are fed from the same pass
+ * over the data, and a put or remove updates each of them in O(1). The winner is only re-evaluated when the
+ * equation is next requested, from the statistics alone, so an {@link very.bored.interpolatingtreemap.InterpolatingTreeMap}
+ * using this factory switches model as the data changes without ever refitting from scratch:
+ * <pre>{@code
+ *  var factory = new BestFitEquationFactory(BestFitEquationFactory.Criterion.AIC,
+ *          new LinRegEquationFactory(), new QuadRegEquationFactory(), new PolyRegEquationFactory(3));
+ *  var map = new InterpolatingTreeMap(factory, entries);
+ * }</pre>
+ * Each candidate is charged {@link IncrementalRegressionEquationFactory#getMinEntries()} parameters, and is
+ * only considered once there are at least that many points. Interpolating candidates fit every point exactly,
+ * and so always win; they should not be raced against regressions.
+ */
+public class BestFitEquationFactory implements IncrementalRegressionEquationFactory {
+
+    /**
+     * The measure by which candidates are compared. Ties go to the candidate passed first.
+     */
+    public enum Criterion {
+        /**
+         * The highest coefficient of determination wins.
+         */
+        R_SQUARED {
+            @Override
+            double score(double r2, double SST, long n, int parameters) {
+                return r2;
+            }
+        },
+
+        /**
+         * The highest coefficient of determination adjusted for the number of parameters,
+         * 1 - (1 - R²)(n - 1) / (n - p - 1), wins.
+         */
+        ADJUSTED_R_SQUARED {
+            @Override
+            double score(double r2, double SST, long n, int parameters) {
+                return n > parameters + 1
+                        ? 1 - (1 - r2) * (n - 1) / (n - parameters - 1)
+                        : Double.NEGATIVE_INFINITY;
+            }
+        },
+
+        /**
+         * The lowest Akaike information criterion, n·ln(SSE / n) + 2p, wins.
+         */
+        AIC {
+            @Override
+            double score(double r2, double SST, long n, int parameters) {
+                double SSE = Math.max(0, (1 - r2) * SST);
+                return -(n * Math.log(SSE / n) + 2 * parameters);
+            }
+        };
+
+        /**
+         * Scores a candidate such that the highest score wins.
+         */
+        abstract double score(double r2, double SST, long n, int parameters);
+    }
+
+    private final Criterion criterion;
+    private final IncrementalRegressionEquationFactory[] candidates;
+    private final boolean mergeable;
+
+    public BestFitEquationFactory(Criterion criterion, IncrementalRegressionEquationFactory... candidates) {
+        if (criterion == null)
+            throw new NullPointerException("Criterion can not be null");
+        if (candidates.length == 0)
+            throw new IllegalArgumentException("At least one candidate is required");
+
+        this.criterion = criterion;
+        this.candidates = candidates.clone();
+
+        boolean mergeable = true;
+        for (IncrementalRegressionEquationFactory candidate : this.candidates) {
+            mergeable &= candidate.newStatistics() instanceof MergeableRegressionStatistics;
+        }
+        this.mergeable = mergeable;
+    }
+
+    public Criterion getCriterion() {
+        return criterion;
+    }
+
+    public IncrementalRegressionEquationFactory[] getCandidates() {
+        return candidates.clone();
+    }
+
+    /**
+     * Returns the candidate which fits the inputted points best.
+     *
+     * @param dataPoints The points to fit.
+     * @return The winning candidate.
+     */
+    public IncrementalRegressionEquationFactory select(PointView dataPoints) {
+        return candidates[((Statistics) statisticsFrom(dataPoints)).selected()];
+    }
+
+    @Override
+    public DoubleUnaryOperator equationFrom(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equation();
+    }
+
+    @Override
+    public double getCoefficientOfDetermination(PointView dataPoints) {
+        return statisticsFrom(dataPoints).getCoefficientOfDetermination();
+    }
+
+    @Override
+    public String equationAsString(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equationAsString();
+    }
+
+    /**
+     * Formats the inputted equation with the candidate that won when it was created, or returns
+     * {@code equation.toString()} if it was not created by this factory.
+     */
+    @Override
+    public String format(DoubleUnaryOperator equation) {
+        if (equation instanceof SelectedPolynomial selected) {
+            return selected.winner.format(selected);
+        }
+        if (equation instanceof SelectedEquation selected) {
+            return selected.winner().format(selected.equation());
+        }
+        return equation.toString();
+    }
+
+    /**
+     * Helper function which wraps the equation of the winning candidate along with the candidate, so that it is
+     * formatted by the winner however long after, and by any instance of this factory.
+     */
+    private static DoubleUnaryOperator withWinner(DoubleUnaryOperator equation, IncrementalRegressionEquationFactory winner) {
+        return equation instanceof Polynomial polynomial
+                ? new SelectedPolynomial(polynomial, winner)
+                : new SelectedEquation(equation, winner);
+    }
+
+    /**
+     * A polynomial created by a winning candidate, which stays a {@link Polynomial} so that it is still evaluated
+     * in bulk, and its coefficients are still read, wherever it is used.
+     */
+    private static final class SelectedPolynomial extends Polynomial {
+        private final IncrementalRegressionEquationFactory winner;
+
+        SelectedPolynomial(Polynomial polynomial, IncrementalRegressionEquationFactory winner) {
+            super(polynomial);
+            this.winner = winner;
+        }
+    }
+
+    /**
+     * Any other equation created by a winning candidate.
+     */
+    private record SelectedEquation(DoubleUnaryOperator equation, IncrementalRegressionEquationFactory winner)
+            implements DoubleUnaryOperator {
+
+        @Override
+        public double applyAsDouble(double x) {
+            return equation.applyAsDouble(x);
+        }
+
+        @Override
+        public String toString() {
+            return equation.toString();
+        }
+    }
+
+    @Override
+    public RegressionStatistics newStatistics() {
+        return mergeable ? new MergeableStatistics() : new Statistics();
+    }
+
+    @Override
+    public int getMinEntries() {
+        int minEntries = Integer.MAX_VALUE;
+        for (IncrementalRegressionEquationFactory candidate : candidates) {
+            minEntries = Math.min(minEntries, candidate.getMinEntries());
+        }
+        return minEntries;
+    }
+
+    /**
+     * The statistics of every candidate, plus the running weighted mean and SSyy of the y values from which the
+     * SSE of each candidate is recovered. The winner is cached until the next change.
+     */
+    private class Statistics implements RegressionStatistics {
+        final RegressionStatistics[] statistics = new RegressionStatistics[candidates.length];
+        long n;
+        double weight;
+        double meanY, SSyy;
+
+        int winner = -1;
+
+        Statistics() {
+            for (int i = 0; i < candidates.length; i++) {
+                statistics[i] = candidates[i].newStatistics();
+            }
+        }
+
+        int selected() {
+            if (winner >= 0) {
+                return winner;
+            }
+
+            int best = 0;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < statistics.length; i++) {
+                int parameters = candidates[i].getMinEntries();
+                if (n < parameters) {
+                    continue;
+                }
+
+                double score = criterion.score(statistics[i].getCoefficientOfDetermination(), SSyy, n, parameters);
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            return winner = best;
+        }
+
+        @Override
+        public void add(double x, double y) {
+            for (RegressionStatistics s : statistics) {
+                s.add(x, y);
+            }
+            accumulate(y, 1.0);
+        }
+
+        @Override
+        public void add(double x, double y, double w) {
+            for (RegressionStatistics s : statistics) {
+                s.add(x, y, w);
+            }
+            accumulate(y, w);
+        }
+
+        private void accumulate(double y, double w) {
+            n++;
+            weight += w;
+            double dy = y - meanY;
+            meanY += dy * w / weight;
+            SSyy += w * dy * (y - meanY);
+            winner = -1;
+        }
+
+        @Override
+        public void remove(double x, double y) {
+            for (RegressionStatistics s : statistics) {
+                s.remove(x, y);
+            }
+            detract(y, 1.0);
+        }
+
+        @Override
+        public void remove(double x, double y, double w) {
+            for (RegressionStatistics s : statistics) {
+                s.remove(x, y, w);
+            }
+            detract(y, w);
+        }
+
+        private void detract(double y, double w) {
+            winner = -1;
+            if (n <= 1) {
+                n = 0;
+                weight = meanY = SSyy = 0;
+                return;
+            }
+
+            double dy = y - meanY;
+            n--;
+            weight -= w;
+            meanY -= dy * w / weight;
+            SSyy -= w * (y - meanY) * dy;
+        }
+
+        @Override
+        public void scale(double factor) {
+            for (RegressionStatistics s : statistics) {
+                s.scale(factor);
+            }
+            weight *= factor;
+            SSyy *= factor;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(n, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public DoubleUnaryOperator equation() {
+            int winner = selected();
+            return withWinner(statistics[winner].equation(), candidates[winner]);
+        }
+
+        @Override
+        public double getCoefficientOfDetermination() {
+            return statistics[selected()].getCoefficientOfDetermination();
+        }
+
+        @Override
+        public String equationAsString() {
+            return statistics[selected()].equationAsString();
+        }
+    }
+
+    /**
+     * The statistics of candidates which are all mergeable, so that large datasets are accumulated in parallel
+     * and the race can be summarized. The moments are [n, weight, meanY, SSyy], followed by the length and
+     * moments of each candidate in turn.
+     */
+    private final class MergeableStatistics extends Statistics implements MergeableRegressionStatistics {
+
+        @Override
+        public void merge(RegressionStatistics other) {
+            if (!(other instanceof MergeableStatistics that) || that.statistics.length != statistics.length)
+                throw new IllegalArgumentException("Cannot merge " + other.getClass().getName() + " into best fit statistics");
+
+            for (int i = 0; i < statistics.length; i++) {
+                ((MergeableRegressionStatistics) statistics[i]).merge(that.statistics[i]);
+            }
+
+            if (that.n == 0) {
+                return;
+            }
+
+            double total = weight + that.weight;
+            double dy = that.meanY - meanY;
+            SSyy += that.SSyy + dy * dy * weight * that.weight / total;
+            meanY += dy * that.weight / total;
+            n += that.n;
+            weight = total;
+            winner = -1;
+        }
+
+        @Override
+        public double[] moments() {
+            double[][] children = new double[statistics.length][];
+            int length = 4;
+            for (int i = 0; i < statistics.length; i++) {
+                children[i] = ((MergeableRegressionStatistics) statistics[i]).moments();
+                length += 1 + children[i].length;
+            }
+
+            double[] moments = Arrays.copyOf(new double[]{n, weight, meanY, SSyy}, length);
+            int offset = 4;
+            for (double[] child : children) {
+                moments[offset++] = child.length;
+                System.arraycopy(child, 0, moments, offset, child.length);
+                offset += child.length;
+            }
+            return moments;
+        }
+
+        @Override
+        public int momentsInto(double[] destination, int offset) {
+            Objects.checkFromIndexSize(offset, 4 + statistics.length, destination.length);
+            destination[offset] = n;
+            destination[offset + 1] = weight;
+            destination[offset + 2] = meanY;
+            destination[offset + 3] = SSyy;
+
+            int position = offset + 4;
+            for (RegressionStatistics s : statistics) {
+                int length = ((MergeableRegressionStatistics) s).momentsInto(destination, position + 1);
+                destination[position] = length;
+                position += 1 + length;
+            }
+            return position - offset;
+        }
+
+        @Override
+        public void restore(double[] moments) {
+            restore(moments, 0, moments.length);
+        }
+
+        @Override
+        public void restore(double[] moments, int offset, int length) {
+            Objects.checkFromIndexSize(offset, length, moments.length);
+            int end = offset + length;
+            int position = offset + 4;
+            for (RegressionStatistics s : statistics) {
+                int childLength = position < end ? (int) moments[position++] : -1;
+                if (childLength < 0 || position + childLength > end)
+                    throw new IllegalArgumentException("Moments do not match the candidates of these best fit statistics");
+
+                ((MergeableRegressionStatistics) s).restore(moments, position, childLength);
+                position += childLength;
+            }
+            if (position != end)
+                throw new IllegalArgumentException("Moments do not match the candidates of these best fit statistics");
+
+            n = (long) moments[offset];
+            weight = moments[offset + 1];
+            meanY = moments[offset + 2];
+            SSyy = moments[offset + 3];
+            winner = -1;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package very.bored.regressionfactories;
+
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Common base of the factories that interpolate the data points exactly, rather than fitting a regression
+ * through them. Since the equation passes through every point, the coefficient of determination is always 1.
+ */
+abstract class InterpolationEquationFactory implements IncrementalRegressionEquationFactory {
+
+    abstract SplineStatistics createStatistics();
+
+    @Override
+    public DoubleUnaryOperator equationFrom(PointView dataPoints) {
+        SplineStatistics statistics = createStatistics();
+        statistics.fill(dataPoints);
+
+        return statistics.equation();
+    }
+
+    @Override
+    public double getCoefficientOfDetermination(PointView dataPoints) {
+        return 1.0;
+    }
+
+    @Override
+    public RegressionStatistics newStatistics() {
+        return createStatistics();
+    }
+
+    @Override
+    public String equationAsString(PointView dataPoints) {
+        return SplineStatistics.format(createStatistics().describe(), dataPoints.size());
+    }
+
+    @Override
+    public String format(DoubleUnaryOperator equation) {
+        return equation instanceof PiecewiseCubic spline
+                ? SplineStatistics.format(createStatistics().describe(), spline.size())
+                : equation.toString();
+    }
+
+    @Override
+    public int getMinEntries() {
+        return 2;
+    }
+}
@@ -1,103 +1,198 @@
 package very.bored.regressionfactories;
 
-import very.bored.interpolatingtreemap.RegressionEquationFactory;
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.MergeableRegressionStatistics;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.interpolatingtreemap.Polynomial;
+import very.bored.interpolatingtreemap.RegressionStatistics;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.TreeMap;
-import java.util.function.Function;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
 
-public class LinRegEquationFactory implements RegressionEquationFactory {
-    private String equation;
+public class LinRegEquationFactory implements IncrementalRegressionEquationFactory {
 
     @Override
-    public Function<Double, Double> equationFrom(Map<Double, Double> dataPoints) {
-        double SSxx = calcSSxx(dataPoints);
-        double SSxy = calcSSxy(dataPoints);
-        double b = SSxy / SSxx;
-        double a = calcIntercept(SSxx, SSxy, dataPoints);
-
-        equation = String.format("f(x) = %.2f + %.2fx", a, b);
-
-        return x -> (a) + (b * x);
+    public DoubleUnaryOperator equationFrom(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equation();
     }
 
     @Override
-    public double getCoefficientOfDetermination(Map<Double, Double> dataPoints) {
-        double SSE = calcSSE(dataPoints);
-        double SST = calcSST(dataPoints);
-
-        return 1 - SSE / SST;
+    public double getCoefficientOfDetermination(PointView dataPoints) {
+        return statisticsFrom(dataPoints).getCoefficientOfDetermination();
     }
 
-    private double calcIntercept(double SSxx, double SSxy, Map<Double, Double> map) {
-        AvgXY means = AvgXY.from(map);
-        return means.y - (SSxy * means.x / SSxx);
+    @Override
+    public RegressionStatistics newStatistics() {
+        return new Statistics();
     }
 
-    private double calcSSxx(Map<Double, Double> map) {
-        AvgXY means = AvgXY.from(map);
+    /**
+     * Running n, means, SSxx, SSxy and SSyy, updated with (weighted) Welford's method so that each point is
+     * added or removed in O(1) without the cancellation of the naive sum-of-squares formulas, and merged
+     * with Chan's parallel update.
+     */
+    private static final class Statistics implements MergeableRegressionStatistics {
+        private long n;
+        private double weight;
+        private double meanX, meanY;
+        private double SSxx, SSxy, SSyy;
+
+        @Override
+        public void add(double x, double y) {
+            add(x, y, 1.0);
+        }
 
-        double SSxx = 0.0;
-        for (Double x : map.keySet()) {
-            SSxx += (x - means.x) * (x - means.x);
+        @Override
+        public void add(double x, double y, double w) {
+            n++;
+            weight += w;
+            double dx = x - meanX;
+            double dy = y - meanY;
+            meanX += dx * w / weight;
+            meanY += dy * w / weight;
+            SSxx += w * dx * (x - meanX);
+            SSxy += w * dx * (y - meanY);
+            SSyy += w * dy * (y - meanY);
         }
 
-        return SSxx;
-    }
+        @Override
+        public void remove(double x, double y) {
+            remove(x, y, 1.0);
+        }
 
-    private double calcSSxy(Map<Double, Double> map) {
-        AvgXY means = AvgXY.from(map);
+        @Override
+        public void remove(double x, double y, double w) {
+            if (n <= 1) {
+                n = 0;
+                weight = meanX = meanY = SSxx = SSxy = SSyy = 0;
+                return;
+            }
 
-        double SSxy = 0;
-        for (var entry : map.entrySet()) {
-            SSxy += (entry.getKey() - means.x) * (entry.getValue() - means.y);
+            double dx = x - meanX;
+            double dy = y - meanY;
+            n--;
+            weight -= w;
+            meanX -= dx * w / weight;
+            meanY -= dy * w / weight;
+            SSxx -= w * (x - meanX) * dx;
+            SSxy -= w * (x - meanX) * dy;
+            SSyy -= w * (y - meanY) * dy;
         }
 
-        return SSxy;
-    }
+        @Override
+        public void merge(RegressionStatistics other) {
+            if (!(other instanceof Statistics that))
+                throw new IllegalArgumentException("Cannot merge " + other.getClass().getName() + " into linear regression statistics");
 
-    private double calcSSE(Map<Double, Double> map) {
-        var predictor = equationFrom(map);
+            if (that.n == 0) {
+                return;
+            }
 
-        double SSE = 0;
-        for (var entry : map.entrySet()) {
-            SSE += (entry.getValue() - predictor.apply(entry.getKey())) * (entry.getValue() - predictor.apply(entry.getKey()));
+            double total = weight + that.weight;
+            double dx = that.meanX - meanX;
+            double dy = that.meanY - meanY;
+            double f = weight * that.weight / total;
+
+            SSxx += that.SSxx + dx * dx * f;
+            SSxy += that.SSxy + dx * dy * f;
+            SSyy += that.SSyy + dy * dy * f;
+            meanX += dx * that.weight / total;
+            meanY += dy * that.weight / total;
+            n += that.n;
+            weight = total;
         }
 
-        return SSE;
-    }
+        @Override
+        public double[] moments() {
+            return new double[]{n, weight, meanX, meanY, SSxx, SSxy, SSyy};
+        }
 
-    private double calcSST(Map<Double, Double> map) {
-        AvgXY means = AvgXY.from(map);
+        @Override
+        public int momentsInto(double[] destination, int offset) {
+            Objects.checkFromIndexSize(offset, 7, destination.length);
+            destination[offset] = n;
+            destination[offset + 1] = weight;
+            destination[offset + 2] = meanX;
+            destination[offset + 3] = meanY;
+            destination[offset + 4] = SSxx;
+            destination[offset + 5] = SSxy;
+            destination[offset + 6] = SSyy;
+            return 7;
+        }
 
-        double SST = 0;
-        for (var entry : map.entrySet()) {
-            SST += (entry.getValue() - means.y) * (entry.getValue() - means.y);
+        @Override
+        public void restore(double[] moments) {
+            restore(moments, 0, moments.length);
         }
 
-        return SST;
-    }
+        @Override
+        public void restore(double[] moments, int offset, int length) {
+            if (length != 7)
+                throw new IllegalArgumentException("Expected 7 moments for linear regression statistics, got " + length);
+            Objects.checkFromIndexSize(offset, length, moments.length);
+
+            n = (long) moments[offset];
+            weight = moments[offset + 1];
+            meanX = moments[offset + 2];
+            meanY = moments[offset + 3];
+            SSxx = moments[offset + 4];
+            SSxy = moments[offset + 5];
+            SSyy = moments[offset + 6];
+        }
 
-    private record AvgXY(double x, double y) {
-        static AvgXY from(Map<Double, Double> map) {
-            double avgX = 0, avgY = 0;
-            for (var entry : map.entrySet()) {
-                avgX += entry.getKey();
-                avgY += entry.getValue();
-            }
+        @Override
+        public void scale(double factor) {
+            weight *= factor;
+            SSxx *= factor;
+            SSxy *= factor;
+            SSyy *= factor;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(n, Integer.MAX_VALUE);
+        }
 
-            return new AvgXY(avgX / map.size(), avgY / map.size());
+        @Override
+        public DoubleUnaryOperator equation() {
+            double b = SSxy / SSxx;
+            double a = meanY - b * meanX;
+
+            return new Polynomial(a, b);
+        }
+
+        @Override
+        public double getCoefficientOfDetermination() {
+            return (SSxy * SSxy) / (SSxx * SSyy);
         }
+
+        @Override
+        public String equationAsString() {
+            double b = SSxy / SSxx;
+            double a = meanY - b * meanX;
+
+            return format(a, b);
+        }
+    }
+
+    private static String format(double a, double b) {
+        return String.format("f(x) = %.2f + %.2fx", a, b);
+    }
+
+    @Override
+    public String equationAsString(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equationAsString();
     }
 
     @Override
-    public String equationAsString(Map<Double, Double> dataPoints) {
-        return equation;
+    public String format(DoubleUnaryOperator equation) {
+        return equation instanceof Polynomial polynomial
+                ? format(polynomial.coefficient(0), polynomial.coefficient(1))
+                : equation.toString();
     }
 
     @Override
     public int getMinEntries() {
         return 2;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+package very.bored.regressionfactories;
+
+/**
+ * Piecewise linear interpolation between consecutive points, extrapolated linearly beyond the first and
+ * last points. A put or remove recomputes the slopes of at most two segments.
+ */
+public class LinearInterpolationEquationFactory extends InterpolationEquationFactory {
+
+    @Override
+    SplineStatistics createStatistics() {
+        return new Statistics();
+    }
+
+    private static final class Statistics extends SplineStatistics {
+
+        @Override
+        void update(int from, int to) {
+            if (n < 2) {
+                return;
+            }
+
+            for (int k = Math.max(from - 1, 0); k <= Math.min(to, n - 2); k++) {
+                b[k] = secant(k);
+                c[k] = d[k] = 0;
+            }
+
+            b[n - 1] = b[n - 2];
+            c[n - 1] = d[n - 1] = 0;
+        }
+
+        @Override
+        String describe() {
+            return "piecewise linear interpolation";
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package very.bored.regressionfactories;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The equation of a {@link LoessEquationFactory}: at every x, the value at x of a line or quadratic fitted by
+ * least squares to the k points nearest to x, weighted by the tricube kernel (1 - (d/h)³)³ of their distance d
+ * from x, where h is the distance of the farthest of them.
+ * <p>
+ * The neighbours are found by a binary search for x in the sorted knots, and a two-pointer expansion from there
+ * towards whichever side is nearer, so each evaluation costs O(log n + k). The weighted moments of the
+ * neighbourhood are accumulated in the same pass, in u = (x' - x) / h, so that the fitted value at x is the
+ * intercept of the normal equations, and the powers of u stay within [-1, 1].
+ * <p>
+ * If a grid was precomputed, x values between the first and last knots are instead interpolated linearly
+ * between the local fits at the nodes of the grid, in O(1).
+ * <p>
+ * The knots are shared with the statistics that created the function, which copy them before their next
+ * change, so the function never changes once created.
+ */
+final class LocalRegression implements DoubleUnaryOperator {
+    private final double[] xs, ys;
+    private final int size;
+    private final int neighbors, degree;
+
+    /**
+     * The local fits at gridSize evenly spaced nodes from xs[0] to xs[size - 1], or null if there is no grid.
+     */
+    private final double[] grid;
+    private final double step;
+
+    LocalRegression(double[] xs, double[] ys, int size, int neighbors, int degree, int gridSize) {
+        this.xs = xs;
+        this.ys = ys;
+        this.size = size;
+        this.neighbors = Math.min(neighbors, size);
+        this.degree = degree;
+
+        if (gridSize >= 2 && size >= 2) {
+            step = (xs[size - 1] - xs[0]) / (gridSize - 1);
+            grid = new double[gridSize];
+            for (int i = 0; i < gridSize; i++) {
+                grid[i] = fit(i == gridSize - 1 ? xs[size - 1] : xs[0] + i * step);
+            }
+        } else {
+            step = 0;
+            grid = null;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int neighbors() {
+        return neighbors;
+    }
+
+    int degree() {
+        return degree;
+    }
+
+    @Override
+    public double applyAsDouble(double x) {
+        if (size == 0) {
+            return Double.NaN;
+        }
+
+        if (grid != null && xs[0] <= x && x <= xs[size - 1]) {
+            double position = (x - xs[0]) / step;
+            int node = Math.min((int) position, grid.length - 2);
+            double t = position - node;
+            return grid[node] + t * (grid[node + 1] - grid[node]);
+        }
+
+        return fit(x);
+    }
+
+    /**
+     * Fits the local regression at x directly from its neighbourhood.
+     */
+    private double fit(double x) {
+        int index = Arrays.binarySearch(xs, 0, size, x);
+        int lo, hi;
+        if (index >= 0) {
+            lo = index;
+            hi = index + 1;
+        } else {
+            lo = hi = -index - 1;
+        }
+
+        while (hi - lo < neighbors) {
+            if (lo == 0) {
+                hi++;
+            } else if (hi == size || x - xs[lo - 1] <= xs[hi] - x) {
+                lo--;
+            } else {
+                hi++;
+            }
+        }
+
+        double h = Math.max(x - xs[lo], xs[hi - 1] - x);
+        if (!(h > 0)) {
+            return ys[lo];
+        }
+
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double t0 = 0, t1 = 0, t2 = 0;
+        for (int i = lo; i < hi; i++) {
+            double u = (xs[i] - x) / h;
+            double a = 1 - Math.abs(u * u * u);
+            double w = a * a * a;
+            if (!(w > 0)) {
+                continue;
+            }
+
+            double wu = w * u, wu2 = wu * u;
+            s0 += w;
+            s1 += wu;
+            s2 += wu2;
+            t0 += w * ys[i];
+            t1 += wu * ys[i];
+            if (degree == 2) {
+                s3 += wu2 * u;
+                s4 += wu2 * u * u;
+                t2 += wu2 * ys[i];
+            }
+        }
+
+        // The intercept of the normal equations by Cramer's rule, falling back to the weighted mean if the
+        // neighbourhood does not determine a unique line or quadratic.
+        if (degree == 1) {
+            double det = s0 * s2 - s1 * s1;
+            return det > 1e-12 * s0 * s0
+                    ? (t0 * s2 - s1 * t1) / det
+                    : t0 / s0;
+        }
+
+        double m0 = s2 * s4 - s3 * s3;
+        double m1 = s1 * s4 - s3 * s2;
+        double m2 = s1 * s3 - s2 * s2;
+        double det = s0 * m0 - s1 * m1 + s2 * m2;
+        return det > 1e-12 * s0 * s0 * s0
+                ? (t0 * m0 - s1 * (t1 * s4 - s3 * t2) + s2 * (t1 * s3 - s2 * t2)) / det
+                : t0 / s0;
+    }
+}
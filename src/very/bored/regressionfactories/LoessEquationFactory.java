@@ -0,0 +1,219 @@
+package very.bored.regressionfactories;
+
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Local regression (LOESS): rather than a single global fit, the equation at every x is a tricube-weighted
+ * line or quadratic through the k nearest points to x, so that it follows curves whose shape changes along x.
+ * See {@link LocalRegression} for how each value is fitted, in O(log n + k) from the sorted points.
+ * <p>
+ * The statistics keep the points themselves, sorted by x, and share them with the last equation created until
+ * their next change, so creating an equation costs nothing beyond the optional grid. With a grid of g nodes,
+ * creating an equation fits all of them in O(g·(log n + k)), and values between the first and last points
+ * then cost O(1). The coefficient of determination evaluates the equation at every point, and is cached until
+ * the next change.
+ * <p>
+ * The farthest of the k neighbours always has zero weight, so at least degree + 3 neighbours and points are
+ * required to determine a unique fit.
+ */
+public class LoessEquationFactory implements IncrementalRegressionEquationFactory {
+    private final int neighbors;
+    private final int degree;
+    private final int gridSize;
+
+    /**
+     * Creates a factory whose equations fit every value directly, without a grid.
+     *
+     * @param neighbors The number of nearest points each value is fitted to, at least degree + 3.
+     * @param degree    The degree of each local fit, 1 or 2.
+     * @throws IllegalArgumentException If the degree is neither 1 nor 2, or there are fewer than degree + 3
+     *                                  neighbors.
+     */
+    public LoessEquationFactory(int neighbors, int degree) {
+        this(neighbors, degree, 0);
+    }
+
+    /**
+     * Creates a factory whose equations precompute a grid of gridSize nodes, or fit every value directly if
+     * gridSize is 0.
+     *
+     * @param neighbors The number of nearest points each value is fitted to, at least degree + 3.
+     * @param degree    The degree of each local fit, 1 or 2.
+     * @param gridSize  The number of grid nodes, 0 or at least 2.
+     * @throws IllegalArgumentException If the degree is neither 1 nor 2, there are fewer than degree + 3
+     *                                  neighbors, or the grid size is neither 0 nor at least 2.
+     */
+    public LoessEquationFactory(int neighbors, int degree, int gridSize) {
+        if (degree != 1 && degree != 2)
+            throw new IllegalArgumentException("Degree must be 1 or 2, was " + degree);
+        if (neighbors < degree + 3)
+            throw new IllegalArgumentException("Need at least " + (degree + 3) + " neighbors for degree " + degree + ", was " + neighbors);
+        if (gridSize != 0 && gridSize < 2)
+            throw new IllegalArgumentException("Grid size must be 0 or at least 2, was " + gridSize);
+
+        this.neighbors = neighbors;
+        this.degree = degree;
+        this.gridSize = gridSize;
+    }
+
+    public int getNeighbors() {
+        return neighbors;
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    @Override
+    public DoubleUnaryOperator equationFrom(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equation();
+    }
+
+    @Override
+    public double getCoefficientOfDetermination(PointView dataPoints) {
+        return statisticsFrom(dataPoints).getCoefficientOfDetermination();
+    }
+
+    @Override
+    public RegressionStatistics newStatistics() {
+        return new Statistics();
+    }
+
+    @Override
+    public RegressionStatistics statisticsFrom(PointView dataPoints) {
+        Statistics statistics = new Statistics();
+        statistics.fill(dataPoints);
+        return statistics;
+    }
+
+    @Override
+    public String equationAsString(PointView dataPoints) {
+        return format(dataPoints.size());
+    }
+
+    @Override
+    public String format(DoubleUnaryOperator equation) {
+        return equation instanceof LocalRegression loess
+                ? format(loess.size())
+                : equation.toString();
+    }
+
+    private String format(int size) {
+        return "f(x) = LOESS of degree " + degree + " over " + Math.min(neighbors, size) + " of " + size + " points";
+    }
+
+    @Override
+    public int getMinEntries() {
+        return degree + 3;
+    }
+
+    /**
+     * The points, sorted by x, shared with the last equation created and copied before the next change.
+     */
+    private final class Statistics implements RegressionStatistics {
+        private double[] xs = new double[16], ys = new double[16];
+        private int n;
+
+        private boolean shared;
+        private LocalRegression cachedEquation;
+        private double cachedCoefficientOfDetermination = Double.NaN;
+
+        void fill(PointView dataPoints) {
+            n = 0;
+            ensureWritable(dataPoints.size());
+            for (int i = 0; i < dataPoints.size(); i++) {
+                xs[i] = dataPoints.xAt(i);
+                ys[i] = dataPoints.yAt(i);
+            }
+            n = dataPoints.size();
+        }
+
+        @Override
+        public void add(double x, double y) {
+            ensureWritable(n + 1);
+
+            int index = n > 0 && xs[n - 1] < x ? -(n + 1) : Arrays.binarySearch(xs, 0, n, x);
+            if (index < 0) {
+                index = -index - 1;
+                System.arraycopy(xs, index, xs, index + 1, n - index);
+                System.arraycopy(ys, index, ys, index + 1, n - index);
+                xs[index] = x;
+                n++;
+            }
+            ys[index] = y;
+        }
+
+        @Override
+        public void remove(double x, double y) {
+            int index = Arrays.binarySearch(xs, 0, n, x);
+            if (index < 0) {
+                return;
+            }
+
+            ensureWritable(n);
+            System.arraycopy(xs, index + 1, xs, index, n - index - 1);
+            System.arraycopy(ys, index + 1, ys, index, n - index - 1);
+            n--;
+        }
+
+        /**
+         * Copies the points if they are shared with an equation or too small, and drops the cached equation.
+         */
+        private void ensureWritable(int capacity) {
+            if (shared || capacity > xs.length) {
+                int length = Math.max(capacity, shared ? xs.length : xs.length + (xs.length >> 1) + 1);
+                xs = Arrays.copyOf(xs, length);
+                ys = Arrays.copyOf(ys, length);
+                shared = false;
+            }
+            cachedEquation = null;
+            cachedCoefficientOfDetermination = Double.NaN;
+        }
+
+        @Override
+        public int size() {
+            return n;
+        }
+
+        @Override
+        public DoubleUnaryOperator equation() {
+            if (cachedEquation == null) {
+                shared = true;
+                cachedEquation = new LocalRegression(xs, ys, n, neighbors, degree, gridSize);
+            }
+            return cachedEquation;
+        }
+
+        @Override
+        public double getCoefficientOfDetermination() {
+            if (Double.isNaN(cachedCoefficientOfDetermination)) {
+                DoubleUnaryOperator equation = equation();
+                double SSE = 0, SST = 0, meanY = 0;
+                for (int i = 0; i < n; i++) {
+                    double residual = ys[i] - equation.applyAsDouble(xs[i]);
+                    SSE += residual * residual;
+
+                    double dy = ys[i] - meanY;
+                    meanY += dy / (i + 1);
+                    SST += dy * (ys[i] - meanY);
+                }
+                cachedCoefficientOfDetermination = 1 - SSE / SST;
+            }
+            return cachedCoefficientOfDetermination;
+        }
+
+        @Override
+        public String equationAsString() {
+            return format(n);
+        }
+    }
+}
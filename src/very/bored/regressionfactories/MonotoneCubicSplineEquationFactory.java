@@ -0,0 +1,65 @@
+package very.bored.regressionfactories;
+
+/**
+ * Monotone piecewise cubic Hermite interpolation (Fritsch–Carlson), which never overshoots the data: the
+ * interpolant is monotone wherever the points are, and flat at local extrema.
+ * <p>
+ * The tangent at each interior point is the weighted harmonic mean of the adjacent secants (Fritsch–Butland),
+ * or 0 where they differ in sign; the end tangents are the end secants. Since a tangent depends only on its
+ * immediate neighbours, a put or remove recomputes at most four segments.
+ */
+public class MonotoneCubicSplineEquationFactory extends InterpolationEquationFactory {
+
+    @Override
+    SplineStatistics createStatistics() {
+        return new Statistics();
+    }
+
+    private static final class Statistics extends SplineStatistics {
+
+        @Override
+        void update(int from, int to) {
+            if (n < 2) {
+                return;
+            }
+
+            int firstTangent = Math.max(from - 1, 0);
+            int lastTangent = Math.min(to + 1, n - 1);
+            for (int k = firstTangent; k <= lastTangent; k++) {
+                b[k] = tangent(k);
+            }
+
+            for (int k = Math.max(firstTangent - 1, 0); k <= lastTangent; k++) {
+                hermite(k);
+            }
+            hermite(n - 1);
+        }
+
+        private double tangent(int k) {
+            if (k == 0) {
+                return secant(0);
+            }
+            if (k == n - 1) {
+                return secant(n - 2);
+            }
+
+            double left = secant(k - 1);
+            double right = secant(k);
+            if (left * right <= 0) {
+                return 0;
+            }
+
+            double hLeft = xs[k] - xs[k - 1];
+            double hRight = xs[k + 1] - xs[k];
+            double wLeft = 2 * hRight + hLeft;
+            double wRight = hRight + 2 * hLeft;
+
+            return (wLeft + wRight) / (wLeft / left + wRight / right);
+        }
+
+        @Override
+        String describe() {
+            return "monotone cubic spline";
+        }
+    }
+}
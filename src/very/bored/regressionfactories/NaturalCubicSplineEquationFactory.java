@@ -0,0 +1,88 @@
+package very.bored.regressionfactories;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Natural cubic spline interpolation: the C² piecewise cubic through every point with zero curvature at
+ * both ends, extrapolated linearly beyond them.
+ * <p>
+ * Unlike the other interpolations, every second derivative of a cubic spline depends on every point, so a
+ * single put or remove changes all the segments. Puts and removes therefore only mark the coefficients as
+ * stale, and the tridiagonal system is solved once in O(n), by the Thomas algorithm, when the next equation
+ * is created.
+ */
+public class NaturalCubicSplineEquationFactory extends InterpolationEquationFactory {
+
+    @Override
+    SplineStatistics createStatistics() {
+        return new Statistics();
+    }
+
+    private static final class Statistics extends SplineStatistics {
+        private boolean stale;
+        private double[] scratch = new double[0];
+
+        @Override
+        void update(int from, int to) {
+            stale = true;
+        }
+
+        @Override
+        public DoubleUnaryOperator equation() {
+            if (stale) {
+                solve();
+                stale = false;
+            }
+            return super.equation();
+        }
+
+        /**
+         * Solves for the second derivatives M, storing M/2 in c, then derives b and d from them.
+         */
+        private void solve() {
+            if (n < 2) {
+                return;
+            }
+            if (scratch.length < n) {
+                scratch = new double[n];
+            }
+
+            // Forward sweep of the Thomas algorithm; scratch holds the modified super-diagonal.
+            double[] m = c;
+            m[0] = 0;
+            scratch[0] = 0;
+            for (int i = 1; i < n - 1; i++) {
+                double hLeft = xs[i] - xs[i - 1];
+                double hRight = xs[i + 1] - xs[i];
+                double rhs = 6 * (secant(i) - secant(i - 1));
+                double denominator = 2 * (hLeft + hRight) - hLeft * scratch[i - 1];
+
+                scratch[i] = hRight / denominator;
+                m[i] = (rhs - hLeft * m[i - 1]) / denominator;
+            }
+            m[n - 1] = 0;
+
+            for (int i = n - 2; i > 0; i--) {
+                m[i] -= scratch[i] * m[i + 1];
+            }
+
+            for (int k = 0; k < n - 1; k++) {
+                double h = xs[k + 1] - xs[k];
+                b[k] = secant(k) - h * (2 * m[k] + m[k + 1]) / 6;
+                d[k] = (m[k + 1] - m[k]) / (6 * h);
+            }
+            double h = xs[n - 1] - xs[n - 2];
+            b[n - 1] = secant(n - 2) + h * (m[n - 2] + 2 * m[n - 1]) / 6;
+            d[n - 1] = 0;
+
+            for (int k = 0; k < n; k++) {
+                c[k] = m[k] / 2;
+            }
+        }
+
+        @Override
+        String describe() {
+            return "natural cubic spline";
+        }
+    }
+}
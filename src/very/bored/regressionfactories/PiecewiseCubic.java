@@ -0,0 +1,64 @@
+package very.bored.regressionfactories;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A piecewise cubic function through a set of knots, used as the equation of the interpolation factories.
+ * <p>
+ * On segment k, between xs[k] and xs[k + 1], the function is a[k] + b[k]·t + c[k]·t² + d[k]·t³ with
+ * t = x - xs[k]. Beyond the first and last knots it is extrapolated linearly with the slope at that knot,
+ * which is why the coefficients c and d of the last knot must be 0.
+ * <p>
+ * Evaluation finds the segment by binary search, except when the segment of the previous evaluation still
+ * contains x, which is O(1) for queries sweeping along x. The remembered segment is a benign data race when
+ * the function is shared between threads; it only ever holds a valid segment index.
+ * <p>
+ * The arrays are shared with the statistics that created the function, which copy them before their next
+ * change, so the function never changes once created.
+ */
+final class PiecewiseCubic implements DoubleUnaryOperator {
+    private final double[] xs, a, b, c, d;
+    private final int size;
+
+    private int lastSegment;
+
+    PiecewiseCubic(double[] xs, double[] a, double[] b, double[] c, double[] d, int size) {
+        this.xs = xs;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public double applyAsDouble(double x) {
+        if (size == 0) {
+            return Double.NaN;
+        }
+
+        int segment = lastSegment;
+        if (!(xs[segment] <= x && (segment == size - 1 || x < xs[segment + 1]))) {
+            if (x < xs[0]) {
+                return a[0] + (x - xs[0]) * b[0];
+            }
+
+            segment = findSegment(x);
+            lastSegment = segment;
+        }
+
+        double t = x - xs[segment];
+        return a[segment] + t * (b[segment] + t * (c[segment] + t * d[segment]));
+    }
+
+    private int findSegment(double x) {
+        int index = Arrays.binarySearch(xs, 0, size, x);
+        int segment = index >= 0 ? index : -index - 2;
+        return Math.max(0, Math.min(segment, size - 1));
+    }
+}
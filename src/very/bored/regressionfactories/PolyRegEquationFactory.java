@@ -0,0 +1,518 @@
+package very.bored.regressionfactories;
+
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.MergeableRegressionStatistics;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.interpolatingtreemap.Polynomial;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Polynomial regression of any degree, fitted by least squares through the normal equations.
+ * <p>
+ * The statistics keep the power sums Σuᵏ (k ≤ 2·degree) and the centered moment sums Σuᵏ(y - ȳ) (k ≤ degree)
+ * that make up the Gram matrix and right-hand side of the normal equations, where u = (x - center) / scale,
+ * along with the running mean ȳ and Σ(y - ȳ)² of the y values. Adding or removing a point costs O(degree), and
+ * regenerating the equation solves the (degree+1)×(degree+1) system by a Cholesky decomposition in
+ * O(degree³), independently of the number of points.
+ * <p>
+ * Centering y on its running mean, as the linear and quadratic statistics do, keeps the sums of squares that
+ * the coefficient of determination derives from free of the cancellation of Σy² - n·ȳ², which loses every
+ * significant digit once y has a large offset relative to its spread.
+ * <p>
+ * Choosing a center near the middle of the x values and a scale near their spread keeps u within roughly
+ * [-1, 1], which greatly improves the conditioning of the Gram matrix at higher degrees. Without a center, the
+ * statistics center x on the first point they are given, so that the fit stays well conditioned wherever the x
+ * values lie; statistics of different centers are shifted onto a common one when merged. The sums are
+ * accumulated with compensated (Neumaier) summation.
+ */
+public class PolyRegEquationFactory implements IncrementalRegressionEquationFactory {
+    private final int degree;
+    private final double center;
+    private final double scale;
+
+    /**
+     * Creates a factory whose statistics center x on the first point they are given.
+     */
+    public PolyRegEquationFactory(int degree) {
+        this(degree, Double.NaN, 1.0);
+    }
+
+    /**
+     * Creates a factory whose statistics fit in u = (x - center) / scale, or center x on the first point they are
+     * given if center is NaN.
+     */
+    public PolyRegEquationFactory(int degree, double center, double scale) {
+        if (degree < 1)
+            throw new IllegalArgumentException("Degree must be at least 1, was " + degree);
+        if (Double.isInfinite(center))
+            throw new IllegalArgumentException("Center must be finite or NaN, was " + center);
+        if (!(scale > 0) || !Double.isFinite(scale))
+            throw new IllegalArgumentException("Scale must be positive and finite, was " + scale);
+
+        this.degree = degree;
+        this.center = center;
+        this.scale = scale;
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    @Override
+    public DoubleUnaryOperator equationFrom(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equation();
+    }
+
+    @Override
+    public double getCoefficientOfDetermination(PointView dataPoints) {
+        return statisticsFrom(dataPoints).getCoefficientOfDetermination();
+    }
+
+    @Override
+    public RegressionStatistics newStatistics() {
+        return new Statistics(this);
+    }
+
+    @Override
+    public String equationAsString(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equationAsString();
+    }
+
+    @Override
+    public String format(DoubleUnaryOperator equation) {
+        return equation instanceof Polynomial polynomial
+                ? format(polynomial.coefficients())
+                : equation.toString();
+    }
+
+    private static String format(double[] coefficients) {
+        StringBuilder builder = new StringBuilder(String.format("f(x) = %.5f", coefficients[0]));
+        for (int k = 1; k < coefficients.length; k++) {
+            builder.append(String.format(" + %.5fx", coefficients[k]));
+            if (k > 1) {
+                builder.append('^').append(k);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public int getMinEntries() {
+        return degree + 1;
+    }
+
+    /**
+     * Solves the system G·β = b in place for a symmetric positive-definite G, by a Cholesky decomposition
+     * of G after scaling it to a unit diagonal. Returns null if G is not numerically positive-definite,
+     * i.e. the points do not determine a unique polynomial.
+     */
+    static double[] solve(double[][] G, double[] b) {
+        int size = b.length;
+
+        double[] d = new double[size];
+        for (int i = 0; i < size; i++) {
+            if (!(G[i][i] > 0)) {
+                return null;
+            }
+            d[i] = 1 / Math.sqrt(G[i][i]);
+        }
+
+        double[][] L = new double[size][size];
+        for (int j = 0; j < size; j++) {
+            double pivot = 1.0;
+            for (int k = 0; k < j; k++) {
+                pivot -= L[j][k] * L[j][k];
+            }
+            if (!(pivot > 1e-14)) {
+                return null;
+            }
+            L[j][j] = Math.sqrt(pivot);
+
+            for (int i = j + 1; i < size; i++) {
+                double sum = G[i][j] * d[i] * d[j];
+                for (int k = 0; k < j; k++) {
+                    sum -= L[i][k] * L[j][k];
+                }
+                L[i][j] = sum / L[j][j];
+            }
+        }
+
+        double[] z = new double[size];
+        for (int i = 0; i < size; i++) {
+            double sum = b[i] * d[i];
+            for (int k = 0; k < i; k++) {
+                sum -= L[i][k] * z[k];
+            }
+            z[i] = sum / L[i][i];
+        }
+
+        double[] beta = new double[size];
+        for (int i = size - 1; i >= 0; i--) {
+            double sum = z[i];
+            for (int k = i + 1; k < size; k++) {
+                sum -= L[k][i] * beta[k];
+            }
+            beta[i] = sum / L[i][i];
+        }
+
+        for (int i = 0; i < size; i++) {
+            beta[i] *= d[i];
+        }
+        return beta;
+    }
+
+    /**
+     * Returns the sums Σuᵏ·v of some values v, given as the inputted compensated sums Σ(u - delta)ᵏ·v, that is
+     * with every u shifted by delta, through the binomial expansion of (u - delta + delta)ᵏ.
+     */
+    private static double[] shift(double[] sums, double[] compensation, double delta) {
+        double[] shifted = new double[sums.length];
+        for (int k = 0; k < sums.length; k++) {
+            // C(k, j)·deltaᵏ⁻ʲ, from j = k downwards
+            double term = 1;
+            for (int j = k; j >= 0; j--) {
+                shifted[k] += term * (sums[j] + compensation[j]);
+                term *= delta * j / (k - j + 1);
+            }
+        }
+        return shifted;
+    }
+
+    private static final class Statistics implements MergeableRegressionStatistics {
+        private final int degree;
+        private final double scale;
+
+        /**
+         * The center of u, which is NaN until the first point is added if the statistics center on it.
+         */
+        private double center;
+        private final boolean centeredOnFirstPoint;
+
+        private long n;
+        private final double[] powerSums, powerSumsCompensation;
+        private final double[] momentSums, momentSumsCompensation;
+        private double meanY;
+        private final double[] SSyy = new double[1], SSyyCompensation = new double[1];
+
+        /**
+         * The coefficients in u solved from the current sums, or null if the sums changed since.
+         */
+        private double[] cachedBeta;
+
+        Statistics(PolyRegEquationFactory factory) {
+            this.degree = factory.degree;
+            this.center = factory.center;
+            this.scale = factory.scale;
+            this.centeredOnFirstPoint = Double.isNaN(factory.center);
+
+            powerSums = new double[2 * degree + 1];
+            powerSumsCompensation = new double[2 * degree + 1];
+            momentSums = new double[degree + 1];
+            momentSumsCompensation = new double[degree + 1];
+        }
+
+        @Override
+        public void add(double x, double y) {
+            add(x, y, 1.0);
+        }
+
+        @Override
+        public void add(double x, double y, double weight) {
+            if (Double.isNaN(center)) {
+                center = x;
+            }
+            n++;
+            accumulate(x, y, weight);
+        }
+
+        @Override
+        public void remove(double x, double y) {
+            remove(x, y, 1.0);
+        }
+
+        @Override
+        public void remove(double x, double y, double weight) {
+            if (n <= 1) {
+                n = 0;
+                Arrays.fill(powerSums, 0);
+                Arrays.fill(powerSumsCompensation, 0);
+                Arrays.fill(momentSums, 0);
+                Arrays.fill(momentSumsCompensation, 0);
+                meanY = 0;
+                SSyy[0] = SSyyCompensation[0] = 0;
+                if (centeredOnFirstPoint) {
+                    center = Double.NaN;
+                }
+                cachedBeta = null;
+                return;
+            }
+
+            n--;
+            accumulate(x, y, -weight);
+        }
+
+        @Override
+        public void merge(RegressionStatistics other) {
+            if (!(other instanceof Statistics that) || that.degree != degree || that.scale != scale
+                    || !centeredOnFirstPoint && !that.centeredOnFirstPoint && that.center != center)
+                throw new IllegalArgumentException("Cannot merge statistics of a different regression into degree " + degree + " statistics");
+
+            if (that.n == 0) {
+                return;
+            }
+            if (n == 0 && centeredOnFirstPoint) {
+                center = that.center;
+            }
+
+            // The sums of the other statistics, in u about this center.
+            double[] thatPowerSums = that.powerSums, thatPowerSumsCompensation = that.powerSumsCompensation;
+            double[] thatMomentSums = that.momentSums, thatMomentSumsCompensation = that.momentSumsCompensation;
+            if (that.center != center) {
+                double delta = (that.center - center) / scale;
+                thatPowerSums = shift(that.powerSums, that.powerSumsCompensation, delta);
+                thatMomentSums = shift(that.momentSums, that.momentSumsCompensation, delta);
+                thatPowerSumsCompensation = new double[thatPowerSums.length];
+                thatMomentSumsCompensation = new double[thatMomentSums.length];
+            }
+
+            // Chan's update: both sides' centered moment sums are shifted onto the combined mean.
+            double weight = powerSum(0), thatWeight = thatPowerSums[0] + thatPowerSumsCompensation[0];
+            double total = weight + thatWeight;
+            double dy = that.meanY - meanY;
+            double combinedMean = meanY + dy * thatWeight / total;
+
+            for (int k = 0; k < momentSums.length; k++) {
+                compensatedAdd(momentSums, momentSumsCompensation, k, -(combinedMean - meanY) * powerSum(k));
+                compensatedAdd(momentSums, momentSumsCompensation, k, thatMomentSums[k]);
+                compensatedAdd(momentSums, momentSumsCompensation, k, thatMomentSumsCompensation[k]);
+                compensatedAdd(momentSums, momentSumsCompensation, k,
+                        -(combinedMean - that.meanY) * (thatPowerSums[k] + thatPowerSumsCompensation[k]));
+            }
+            for (int k = 0; k < powerSums.length; k++) {
+                compensatedAdd(powerSums, powerSumsCompensation, k, thatPowerSums[k]);
+                compensatedAdd(powerSums, powerSumsCompensation, k, thatPowerSumsCompensation[k]);
+            }
+            compensatedAdd(SSyy, SSyyCompensation, 0, that.SSyy[0]);
+            compensatedAdd(SSyy, SSyyCompensation, 0, that.SSyyCompensation[0]);
+            compensatedAdd(SSyy, SSyyCompensation, 0, dy * dy * weight * thatWeight / total);
+
+            meanY = combinedMean;
+            n += that.n;
+            cachedBeta = null;
+        }
+
+        /**
+         * The degree, center and scale, followed by n and the mean of y, then every sum and its compensation. The
+         * center is NaN for statistics which center on their first point, but have none yet.
+         */
+        @Override
+        public double[] moments() {
+            double[] moments = new double[momentCount()];
+            momentsInto(moments, 0);
+            return moments;
+        }
+
+        @Override
+        public int momentsInto(double[] destination, int offset) {
+            int length = momentCount();
+            Objects.checkFromIndexSize(offset, length, destination.length);
+            destination[offset] = degree;
+            destination[offset + 1] = center;
+            destination[offset + 2] = scale;
+            destination[offset + 3] = n;
+            destination[offset + 4] = meanY;
+
+            int i = offset + 5;
+            i = copy(powerSums, destination, i);
+            i = copy(powerSumsCompensation, destination, i);
+            i = copy(momentSums, destination, i);
+            i = copy(momentSumsCompensation, destination, i);
+            i = copy(SSyy, destination, i);
+            copy(SSyyCompensation, destination, i);
+            return length;
+        }
+
+        @Override
+        public void restore(double[] moments) {
+            restore(moments, 0, moments.length);
+        }
+
+        @Override
+        public void restore(double[] moments, int offset, int length) {
+            Objects.checkFromIndexSize(offset, length, moments.length);
+            if (length != momentCount() || moments[offset] != degree || moments[offset + 2] != scale
+                    || !centeredOnFirstPoint && moments[offset + 1] != center)
+                throw new IllegalArgumentException("Moments were not produced by degree " + degree + " statistics of the same center and scale");
+
+            if (centeredOnFirstPoint) {
+                center = moments[offset + 1];
+            }
+            n = (long) moments[offset + 3];
+            meanY = moments[offset + 4];
+
+            int i = offset + 5;
+            i = copyFrom(moments, i, powerSums);
+            i = copyFrom(moments, i, powerSumsCompensation);
+            i = copyFrom(moments, i, momentSums);
+            i = copyFrom(moments, i, momentSumsCompensation);
+            i = copyFrom(moments, i, SSyy);
+            copyFrom(moments, i, SSyyCompensation);
+            cachedBeta = null;
+        }
+
+        private int momentCount() {
+            return 5 + 2 * (powerSums.length + momentSums.length + 1);
+        }
+
+        private static int copy(double[] array, double[] destination, int offset) {
+            System.arraycopy(array, 0, destination, offset, array.length);
+            return offset + array.length;
+        }
+
+        private static int copyFrom(double[] moments, int offset, double[] array) {
+            System.arraycopy(moments, offset, array, 0, array.length);
+            return offset + array.length;
+        }
+
+        @Override
+        public void scale(double factor) {
+            for (double[] array : new double[][]{powerSums, powerSumsCompensation, momentSums, momentSumsCompensation, SSyy, SSyyCompensation}) {
+                for (int k = 0; k < array.length; k++) {
+                    array[k] *= factor;
+                }
+            }
+            cachedBeta = null;
+        }
+
+        /**
+         * Adds the point with the inputted (possibly negative) weight. The mean of y moves by δ, which shifts every
+         * centered moment sum Σuᵏ(y - ȳ) of the previous points by -δ·Σuᵏ, before the point itself is added
+         * around the new mean.
+         */
+        private void accumulate(double x, double y, double weight) {
+            double u = (x - center) / scale;
+
+            double total = powerSum(0) + weight;
+            double dy = y - meanY;
+            double shift = dy * weight / total;
+            meanY += shift;
+            compensatedAdd(SSyy, SSyyCompensation, 0, weight * dy * (y - meanY));
+
+            double power = weight;
+            for (int k = 0; k < powerSums.length; k++) {
+                if (k <= degree) {
+                    compensatedAdd(momentSums, momentSumsCompensation, k, -shift * powerSum(k));
+                    compensatedAdd(momentSums, momentSumsCompensation, k, power * (y - meanY));
+                }
+                compensatedAdd(powerSums, powerSumsCompensation, k, power);
+                power *= u;
+            }
+
+            cachedBeta = null;
+        }
+
+        private static void compensatedAdd(double[] sums, double[] compensation, int k, double value) {
+            double sum = sums[k];
+            double t = sum + value;
+            compensation[k] += Math.abs(sum) >= Math.abs(value)
+                    ? (sum - t) + value
+                    : (value - t) + sum;
+            sums[k] = t;
+        }
+
+        private double powerSum(int k) {
+            return powerSums[k] + powerSumsCompensation[k];
+        }
+
+        private double momentSum(int k) {
+            return momentSums[k] + momentSumsCompensation[k];
+        }
+
+        /**
+         * Returns the coefficients in u of the fit to the centered y values, y - ȳ. The fit to y itself differs
+         * only in its constant term, which is ȳ higher.
+         */
+        private double[] beta() {
+            if (cachedBeta == null) {
+                double[][] G = new double[degree + 1][degree + 1];
+                double[] b = new double[degree + 1];
+                for (int i = 0; i <= degree; i++) {
+                    for (int j = 0; j <= degree; j++) {
+                        G[i][j] = powerSum(i + j);
+                    }
+                    b[i] = momentSum(i);
+                }
+
+                double[] beta = solve(G, b);
+                if (beta == null) {
+                    beta = new double[degree + 1];
+                    Arrays.fill(beta, Double.NaN);
+                }
+                cachedBeta = beta;
+            }
+            return cachedBeta;
+        }
+
+        /**
+         * Expands Σβₖuᵏ, with u = (x - center) / scale, into the coefficients of a polynomial in x.
+         */
+        private double[] coefficients() {
+            double[] beta = beta().clone();
+            beta[0] += meanY;
+            double[] coefficients = new double[degree + 1];
+
+            // (x - center)^k / scale^k, built up one power at a time
+            double[] term = new double[degree + 1];
+            term[0] = 1;
+            for (int k = 0; k <= degree; k++) {
+                for (int i = 0; i <= k; i++) {
+                    coefficients[i] += beta[k] * term[i];
+                }
+
+                if (k < degree) {
+                    for (int i = k + 1; i >= 0; i--) {
+                        double shifted = i > 0 ? term[i - 1] : 0;
+                        term[i] = (shifted - center * term[i]) / scale;
+                    }
+                }
+            }
+
+            return coefficients;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(n, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public DoubleUnaryOperator equation() {
+            return new Polynomial(coefficients());
+        }
+
+        @Override
+        public double getCoefficientOfDetermination() {
+            double[] beta = beta();
+
+            double explained = 0;
+            for (int k = 0; k <= degree; k++) {
+                explained += beta[k] * momentSum(k);
+            }
+
+            double SST = SSyy[0] + SSyyCompensation[0];
+            double SSE = SST - explained;
+
+            return 1 - SSE / SST;
+        }
+
+        @Override
+        public String equationAsString() {
+            return format(coefficients());
+        }
+    }
+}
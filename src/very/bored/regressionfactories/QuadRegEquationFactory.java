@@ -1,156 +1,240 @@
 package very.bored.regressionfactories;
 
-import very.bored.interpolatingtreemap.RegressionEquationFactory;
+import very.bored.interpolatingtreemap.IncrementalRegressionEquationFactory;
+import very.bored.interpolatingtreemap.MergeableRegressionStatistics;
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.interpolatingtreemap.Polynomial;
+import very.bored.interpolatingtreemap.RegressionStatistics;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.TreeMap;
-import java.util.function.Function;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
 
-public class QuadRegEquationFactory implements RegressionEquationFactory {
-    private String equation;
+public class QuadRegEquationFactory implements IncrementalRegressionEquationFactory {
 
     @Override
-    public Function<Double, Double> equationFrom(Map<Double, Double> dataPoints) {
-        ABC abc = ABC.from(dataPoints);
-
-        equation = String.format("f(x) = %.5f + %.5fx + %.5fx^2", abc.a, abc.b, abc.c);
-
-        return x -> (abc.a) + (abc.b * x) + (abc.c * x * x);
+    public DoubleUnaryOperator equationFrom(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equation();
     }
 
     @Override
-    public double getCoefficientOfDetermination(Map<Double, Double> dataPoints) {
-        double SSE = calcSSE(dataPoints);
-        double SST = calcSST(dataPoints);
+    public double getCoefficientOfDetermination(PointView dataPoints) {
+        return statisticsFrom(dataPoints).getCoefficientOfDetermination();
+    }
 
-        return 1 - (SSE / SST);
+    @Override
+    public RegressionStatistics newStatistics() {
+        return new Statistics();
     }
 
     private record ABC(double a, double b, double c) {
-        public static ABC from(Map<Double, Double> dataPoints) {
-            AvgX2XY.invalidateCache();
-
-            double SSxx = calcSSxx(dataPoints);
-            double SSxy = calcSSxy(dataPoints);
-            double SSxx2 = calcSSxx2(dataPoints);
-            double SSx2x2 = calcSSx2x2(dataPoints);
-            double SSx2y = calcSSx2y(dataPoints);
-            AvgX2XY means = AvgX2XY.from(dataPoints);
-
-            double c = (SSx2y * SSxx - SSxy * SSxx2) / (SSxx * SSx2x2 - SSxx2 * SSxx2);
-            double b = (SSxy * SSx2x2 - SSx2y * SSxx2) / (SSxx * SSx2x2 - SSxx2 * SSxx2);
-            double a = means.y - b * means.x - c * means.x2;
-
-            return new ABC(a, b, c);
-        }
     }
 
-    private static double calcSSxx(Map<Double, Double> map) {
-        AvgX2XY means = AvgX2XY.from(map);
+    /**
+     * Running means of x, x² and y along with their centered co-moments, updated with (weighted) Welford's method
+     * so that each point is added or removed in O(1), and merged with Chan's parallel update. The 3×3 normal equations are solved only from
+     * these moments, so no state is shared between instances.
+     */
+    private static final class Statistics implements MergeableRegressionStatistics {
+        private long n;
+        private double weight;
+        private double meanX, meanX2, meanY;
+        private double SSxx, SSxx2, SSx2x2, SSxy, SSx2y, SSyy;
+
+        @Override
+        public void add(double x, double y) {
+            add(x, y, 1.0);
+        }
 
-        double SSxx = 0.0;
-        for (Double x : map.keySet()) {
-            SSxx += (x - means.x) * (x - means.x);
+        @Override
+        public void add(double x, double y, double w) {
+            double x2 = x * x;
+
+            n++;
+            weight += w;
+            double dx = x - meanX;
+            double dx2 = x2 - meanX2;
+            double dy = y - meanY;
+            meanX += dx * w / weight;
+            meanX2 += dx2 * w / weight;
+            meanY += dy * w / weight;
+
+            SSxx += w * dx * (x - meanX);
+            SSxx2 += w * dx * (x2 - meanX2);
+            SSx2x2 += w * dx2 * (x2 - meanX2);
+            SSxy += w * dx * (y - meanY);
+            SSx2y += w * dx2 * (y - meanY);
+            SSyy += w * dy * (y - meanY);
         }
 
-        return SSxx;
-    }
+        @Override
+        public void remove(double x, double y) {
+            remove(x, y, 1.0);
+        }
 
-    private static double calcSSxy(Map<Double, Double> map) {
-        AvgX2XY means = AvgX2XY.from(map);
+        @Override
+        public void remove(double x, double y, double w) {
+            if (n <= 1) {
+                n = 0;
+                weight = meanX = meanX2 = meanY = 0;
+                SSxx = SSxx2 = SSx2x2 = SSxy = SSx2y = SSyy = 0;
+                return;
+            }
 
-        double SSxy = 0;
-        for (var entry : map.entrySet()) {
-            SSxy += (entry.getKey() - means.x) * (entry.getValue() - means.y);
+            double x2 = x * x;
+
+            double dx = x - meanX;
+            double dx2 = x2 - meanX2;
+            double dy = y - meanY;
+            n--;
+            weight -= w;
+            meanX -= dx * w / weight;
+            meanX2 -= dx2 * w / weight;
+            meanY -= dy * w / weight;
+
+            SSxx -= w * (x - meanX) * dx;
+            SSxx2 -= w * (x - meanX) * dx2;
+            SSx2x2 -= w * (x2 - meanX2) * dx2;
+            SSxy -= w * (x - meanX) * dy;
+            SSx2y -= w * (x2 - meanX2) * dy;
+            SSyy -= w * (y - meanY) * dy;
         }
 
-        return SSxy;
-    }
+        @Override
+        public void merge(RegressionStatistics other) {
+            if (!(other instanceof Statistics that))
+                throw new IllegalArgumentException("Cannot merge " + other.getClass().getName() + " into quadratic regression statistics");
 
-    private static double calcSSxx2(Map<Double, Double> map) {
-        AvgX2XY means = AvgX2XY.from(map);
+            if (that.n == 0) {
+                return;
+            }
 
-        double SSxx2 = 0;
-        for (Double x : map.keySet()) {
-            SSxx2 += (x - means.x) * (x * x - means.x2);
+            double total = weight + that.weight;
+            double dx = that.meanX - meanX;
+            double dx2 = that.meanX2 - meanX2;
+            double dy = that.meanY - meanY;
+            double f = weight * that.weight / total;
+
+            SSxx += that.SSxx + dx * dx * f;
+            SSxx2 += that.SSxx2 + dx * dx2 * f;
+            SSx2x2 += that.SSx2x2 + dx2 * dx2 * f;
+            SSxy += that.SSxy + dx * dy * f;
+            SSx2y += that.SSx2y + dx2 * dy * f;
+            SSyy += that.SSyy + dy * dy * f;
+            meanX += dx * that.weight / total;
+            meanX2 += dx2 * that.weight / total;
+            meanY += dy * that.weight / total;
+            n += that.n;
+            weight = total;
         }
 
-        return SSxx2;
-    }
+        @Override
+        public double[] moments() {
+            return new double[]{n, weight, meanX, meanX2, meanY, SSxx, SSxx2, SSx2x2, SSxy, SSx2y, SSyy};
+        }
 
-    private static double calcSSx2x2(Map<Double, Double> map) {
-        AvgX2XY means = AvgX2XY.from(map);
+        @Override
+        public int momentsInto(double[] destination, int offset) {
+            Objects.checkFromIndexSize(offset, 11, destination.length);
+            destination[offset] = n;
+            destination[offset + 1] = weight;
+            destination[offset + 2] = meanX;
+            destination[offset + 3] = meanX2;
+            destination[offset + 4] = meanY;
+            destination[offset + 5] = SSxx;
+            destination[offset + 6] = SSxx2;
+            destination[offset + 7] = SSx2x2;
+            destination[offset + 8] = SSxy;
+            destination[offset + 9] = SSx2y;
+            destination[offset + 10] = SSyy;
+            return 11;
+        }
 
-        double SSx2x2 = 0;
-        for (Double x : map.keySet()) {
-            SSx2x2 += (x * x - means.x2) * (x * x - means.x2);
+        @Override
+        public void restore(double[] moments) {
+            restore(moments, 0, moments.length);
         }
 
-        return SSx2x2;
-    }
+        @Override
+        public void restore(double[] moments, int offset, int length) {
+            if (length != 11)
+                throw new IllegalArgumentException("Expected 11 moments for quadratic regression statistics, got " + length);
+            Objects.checkFromIndexSize(offset, length, moments.length);
+
+            n = (long) moments[offset];
+            weight = moments[offset + 1];
+            meanX = moments[offset + 2];
+            meanX2 = moments[offset + 3];
+            meanY = moments[offset + 4];
+            SSxx = moments[offset + 5];
+            SSxx2 = moments[offset + 6];
+            SSx2x2 = moments[offset + 7];
+            SSxy = moments[offset + 8];
+            SSx2y = moments[offset + 9];
+            SSyy = moments[offset + 10];
+        }
 
-    private static double calcSSx2y(Map<Double, Double> map) {
-        AvgX2XY means = AvgX2XY.from(map);
+        @Override
+        public void scale(double factor) {
+            weight *= factor;
+            SSxx *= factor;
+            SSxx2 *= factor;
+            SSx2x2 *= factor;
+            SSxy *= factor;
+            SSx2y *= factor;
+            SSyy *= factor;
+        }
 
-        double SSx2y = 0;
-        for (var entry : map.entrySet()) {
-            SSx2y += (entry.getKey() * entry.getKey() - means.x2) * (entry.getValue() - means.y);
+        @Override
+        public int size() {
+            return (int) Math.min(n, Integer.MAX_VALUE);
         }
 
-        return SSx2y;
-    }
+        ABC abc() {
+            double det = SSxx * SSx2x2 - SSxx2 * SSxx2;
 
-    private double calcSSE(Map<Double, Double> dataPoints) {
-        ABC abc = ABC.from(dataPoints);
+            double c = (SSx2y * SSxx - SSxy * SSxx2) / det;
+            double b = (SSxy * SSx2x2 - SSx2y * SSxx2) / det;
+            double a = meanY - b * meanX - c * meanX2;
 
-        double SSE = 0;
-        for (var entry : dataPoints.entrySet()) {
-            SSE += Math.pow(entry.getValue() - abc.a - abc.b * entry.getKey() - abc.c * entry.getKey() * entry.getKey(), 2);
+            return new ABC(a, b, c);
         }
 
-        return SSE;
-    }
-
-    private double calcSST(Map<Double, Double> dataPoints) {
-        AvgX2XY means = AvgX2XY.from(dataPoints);
+        @Override
+        public DoubleUnaryOperator equation() {
+            ABC abc = abc();
 
-        double SST = 0;
-        for (var entry : dataPoints.entrySet()) {
-            SST += (entry.getValue() - means.y) * (entry.getValue() - means.y);
+            return new Polynomial(abc.a, abc.b, abc.c);
         }
 
-        return SST;
-    }
+        @Override
+        public double getCoefficientOfDetermination() {
+            ABC abc = abc();
 
-    private record AvgX2XY(double x2, double x, double y) {
+            return (abc.b * SSxy + abc.c * SSx2y) / SSyy;
+        }
 
-        static AvgX2XY cache = null;
+        @Override
+        public String equationAsString() {
+            ABC abc = abc();
 
-        private static void invalidateCache() {
-            cache = null;
+            return format(abc.a, abc.b, abc.c);
         }
+    }
 
-        static AvgX2XY from(Map<Double, Double> map) {
-            if (cache != null) {
-                return cache;
-            }
-
-            double avgX2 = 0, avgX = 0, avgY = 0;
-            for (var entry : map.entrySet()) {
-                avgX2 += entry.getKey() * entry.getKey();
-                avgX += entry.getKey();
-                avgY += entry.getValue();
-            }
+    private static String format(double a, double b, double c) {
+        return String.format("f(x) = %.5f + %.5fx + %.5fx^2", a, b, c);
+    }
 
-            return cache =
-                    new AvgX2XY(avgX2 / map.size(), avgX / map.size(), avgY / map.size());
-        }
+    @Override
+    public String equationAsString(PointView dataPoints) {
+        return statisticsFrom(dataPoints).equationAsString();
     }
 
     @Override
-    public String equationAsString(Map<Double, Double> dataPoints) {
-        return equation;
+    public String format(DoubleUnaryOperator equation) {
+        return equation instanceof Polynomial polynomial
+                ? format(polynomial.coefficient(0), polynomial.coefficient(1), polynomial.coefficient(2))
+                : equation.toString();
     }
 
     @Override
@@ -0,0 +1,140 @@
+package very.bored.regressionfactories;
+
+import very.bored.interpolatingtreemap.PointView;
+import very.bored.interpolatingtreemap.RegressionStatistics;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The statistics of the interpolation factories: the knots themselves, sorted by x, along with the
+ * coefficients of the {@link PiecewiseCubic} through them in primitive arrays.
+ * <p>
+ * A put or remove updates the knots, then calls {@link #update(int, int)} with the range of knots whose
+ * neighbourhood changed, so that subclasses recompute only the coefficients that depend on them. The arrays
+ * are shared with the last equation created, and copied before the next change (copy-on-write), since
+ * that equation must not change.
+ */
+abstract class SplineStatistics implements RegressionStatistics {
+    double[] xs = new double[16], a = new double[16], b = new double[16], c = new double[16], d = new double[16];
+    int n;
+
+    private boolean shared;
+
+    void fill(PointView dataPoints) {
+        n = 0;
+        ensureWritable(dataPoints.size());
+        for (int i = 0; i < dataPoints.size(); i++) {
+            xs[i] = dataPoints.xAt(i);
+            a[i] = dataPoints.yAt(i);
+        }
+        n = dataPoints.size();
+        update(0, n - 1);
+    }
+
+    /**
+     * Recomputes the coefficients depending on the knots between from and to (both inclusive), whose x or y
+     * values or neighbours changed. Indices may be out of range, and should be clamped.
+     */
+    abstract void update(int from, int to);
+
+    abstract String describe();
+
+    @Override
+    public void add(double x, double y) {
+        ensureWritable(n + 1);
+
+        int index = Arrays.binarySearch(xs, 0, n, x);
+        if (index < 0) {
+            index = -index - 1;
+            shift(index, index + 1, n - index);
+            xs[index] = x;
+            n++;
+        }
+        a[index] = y;
+
+        update(index, index);
+    }
+
+    @Override
+    public void remove(double x, double y) {
+        int index = Arrays.binarySearch(xs, 0, n, x);
+        if (index < 0) {
+            return;
+        }
+
+        ensureWritable(n);
+        shift(index + 1, index, n - index - 1);
+        n--;
+
+        update(index - 1, index);
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(xs, from, xs, to, length);
+        System.arraycopy(a, from, a, to, length);
+        System.arraycopy(b, from, b, to, length);
+        System.arraycopy(c, from, c, to, length);
+        System.arraycopy(d, from, d, to, length);
+    }
+
+    private void ensureWritable(int capacity) {
+        if (shared || capacity > xs.length) {
+            int length = Math.max(capacity, shared ? xs.length : xs.length + (xs.length >> 1) + 1);
+            xs = Arrays.copyOf(xs, length);
+            a = Arrays.copyOf(a, length);
+            b = Arrays.copyOf(b, length);
+            c = Arrays.copyOf(c, length);
+            d = Arrays.copyOf(d, length);
+            shared = false;
+        }
+    }
+
+    /**
+     * Returns the slope of the secant of segment k.
+     */
+    double secant(int k) {
+        return (a[k + 1] - a[k]) / (xs[k + 1] - xs[k]);
+    }
+
+    /**
+     * Sets c and d of segment k to those of the cubic Hermite interpolant between knots k and k + 1, given
+     * the tangents already in b. The last knot gets c = d = 0 for linear extrapolation.
+     */
+    void hermite(int k) {
+        if (k == n - 1) {
+            c[k] = d[k] = 0;
+            return;
+        }
+
+        double h = xs[k + 1] - xs[k];
+        double secant = secant(k);
+        c[k] = (3 * secant - 2 * b[k] - b[k + 1]) / h;
+        d[k] = (b[k] + b[k + 1] - 2 * secant) / (h * h);
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public DoubleUnaryOperator equation() {
+        shared = true;
+        return new PiecewiseCubic(xs, a, b, c, d, n);
+    }
+
+    @Override
+    public double getCoefficientOfDetermination() {
+        return 1.0;
+    }
+
+    @Override
+    public String equationAsString() {
+        return format(describe(), n);
+    }
+
+    static String format(String description, int size) {
+        return "f(x) = " + description + " through " + size + " points";
+    }
+}